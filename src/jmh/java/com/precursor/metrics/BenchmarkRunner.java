@@ -0,0 +1,90 @@
+package com.precursor.metrics;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * mvn -Pbenchmark verify 진입점
+ * 스레드 수를 1, 2, 4, ... N 으로 늘려 가며 같은 벤치마크를 실행하고 (N 은 CPU 수 또는 지정값),
+ * gc 프로파일러 결과(gc.alloc.rate.norm = 연산당 할당 바이트)를 포함해 JSON 으로 남긴다.
+ * ExporterScalingBenchmark 는 메서드별 @Threads 그대로 따로 실행하고 1 스레드 대비 확장 효율을 출력한다.
+ *
+ * 인자: [include 정규식] [최대 스레드 수, 0 이면 CPU 수] [결과 파일]
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*Benchmark";
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        String resultFile = args.length > 2 ? args[2] : "target/jmh-result.json";
+        if (maxThreads <= 0) {
+            maxThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads <<= 1) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        String eventPath = EventPathBenchmark.class.getName();
+        String scaling = ExporterScalingBenchmark.class.getName();
+        for (int threads : threadCounts) {
+            // scrape 지연은 단일 스레드에서만 재고, 2 스레드 이상은 이벤트 경로만 반복
+            if (threads > 1 && !eventPath.matches(include)) {
+                break;
+            }
+            Options options = new OptionsBuilder()
+                    .include(threads == 1 ? include : eventPath)
+                    .exclude(scaling)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultFile.replace(".json", "-" + threads + "t.json"))
+                    .build();
+            new Runner(options).run();
+        }
+
+        if (scaling.matches(include)) {
+            Options options = new OptionsBuilder()
+                    .include(scaling)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(resultFile.replace(".json", "-scaling.json"))
+                    .build();
+            printScaling(new Runner(options).run());
+        }
+    }
+
+    /**
+     * 스레드 수별 처리량과 1 스레드 대비 효율 (처리량 / (스레드 수 * 1 스레드 처리량))
+     */
+    private static void printScaling(Collection<RunResult> results) {
+        Map<Integer, Double> scores = new TreeMap<>();
+        String unit = "";
+        for (RunResult result : results) {
+            scores.put(result.getParams().getThreads(), result.getPrimaryResult().getScore());
+            unit = result.getPrimaryResult().getScoreUnit();
+        }
+        Double single = scores.get(1);
+        if (single == null || single <= 0) return;
+        System.out.println("Exporter scaling (create(session) + onEvent):");
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            System.out.printf("  threads=%-3d %10.3f %s  efficiency=%5.1f%%%n", entry.getKey(), entry.getValue(), unit,
+                    100.0 * entry.getValue() / (entry.getKey() * single));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.CollectorRegistry;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MetricsEventListenerProvider.onEvent 처리량 (이벤트 타입 = record 메서드별)
+ * 스레드 수는 BenchmarkRunner 가 1..N 으로 바꿔 가며 실행하고, gc 프로파일러로 이벤트당 할당량을 함께 잰다.
+ * counterBackend 파라미터로 simpleclient / striped 카운터를 같은 경합 조건에서 비교한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventPathBenchmark {
+
+    private static final int CLIENTS = 32;
+
+    @Param({"LOGIN", "LOGIN_ERROR", "CLIENT_LOGIN", "CLIENT_LOGIN_ERROR", "REGISTER", "REGISTER_ERROR",
+            "REFRESH_TOKEN", "REFRESH_TOKEN_ERROR", "CODE_TO_TOKEN", "CODE_TO_TOKEN_ERROR", "LOGOUT"})
+    public String eventType;
+
+    // true 면 링 버퍼에 넣기까지만 측정 (버퍼가 차면 drop 으로 집계)
+    @Param({"false", "true"})
+    public boolean async;
+
+    // 카운터 저장 방식 A/B 비교 (CounterBackend)
+    @Param({"simpleclient", "striped"})
+    public String counterBackend;
+
+    private PrometheusExporter exporter;
+    private AsyncEventProcessor asyncProcessor;
+    private MetricsEventListenerProvider provider;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        exporter = new PrometheusExporter(new CollectorRegistry(), CounterBackend.parse(counterBackend));
+        if (async) {
+            asyncProcessor = new AsyncEventProcessor(16384, AsyncEventProcessor.OverflowPolicy.DROP, exporter);
+            asyncProcessor.start();
+        }
+        KeycloakSession session = Stubs.session(Stubs.realm("bench-id", "bench"));
+        provider = new MetricsEventListenerProvider(session, exporter, asyncProcessor, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (asyncProcessor != null) {
+            asyncProcessor.close();
+        }
+        exporter.close();
+    }
+
+    /**
+     * 스레드마다 client_id 가 다른 이벤트를 돌아가며 보낸다 (반복 조합에서의 child 캐시 적중 경로)
+     */
+    @State(Scope.Thread)
+    public static class Events {
+        private Event[] events;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(EventPathBenchmark benchmark) {
+            EventType type = EventType.valueOf(benchmark.eventType);
+            events = new Event[CLIENTS];
+            for (int i = 0; i < CLIENTS; i++) {
+                events[i] = Stubs.event(type, "bench-id", "client-" + i, "session-" + Thread.currentThread().threadId() + "-" + i);
+            }
+        }
+
+        Event next() {
+            Event event = events[next];
+            next = (next + 1) & (CLIENTS - 1);
+            return event;
+        }
+    }
+
+    @Benchmark
+    public void onEvent(Events events) {
+        provider.onEvent(events.next());
+    }
+}
@@ -0,0 +1,106 @@
+package com.precursor.metrics;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * factory 가 소유한 exporter 로 세션마다 provider 를 만들어 이벤트를 기록하는 경로의 스레드 수별 처리량
+ * (Keycloak 이 요청마다 하는 것처럼 create(session) 후 onEvent)
+ * 메서드마다 @Threads 가 달라 한 번 실행으로 1 / 2 / 4 / 8 스레드 결과가 나오고,
+ * BenchmarkRunner 가 1 스레드 대비 확장 효율을 출력한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExporterScalingBenchmark {
+
+    private static final int CLIENTS = 32;
+
+    private MetricsEventListenerProviderFactory factory;
+    private KeycloakSession session;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        factory = new MetricsEventListenerProviderFactory();
+        factory.init(Stubs.config(Map.of("jvmMetrics", "false", "cacheMetrics", "false",
+                "sessionStatsIntervalSeconds", "0")));
+        session = Stubs.session(Stubs.realm("bench-id", "bench"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        factory.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Events {
+        private Event[] events;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            events = new Event[CLIENTS];
+            for (int i = 0; i < CLIENTS; i++) {
+                events[i] = Stubs.event(i % 4 == 0 ? EventType.LOGIN_ERROR : EventType.LOGIN, "bench-id",
+                        "client-" + i, "session-" + Thread.currentThread().threadId() + "-" + i);
+            }
+        }
+
+        Event next() {
+            Event event = events[next];
+            next = (next + 1) & (CLIENTS - 1);
+            return event;
+        }
+    }
+
+    private void onEvent(Events events) {
+        EventListenerProvider provider = factory.create(session);
+        provider.onEvent(events.next());
+        provider.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads1(Events events) {
+        onEvent(events);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void threads2(Events events) {
+        onEvent(events);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads4(Events events) {
+        onEvent(events);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void threads8(Events events) {
+        onEvent(events);
+    }
+}
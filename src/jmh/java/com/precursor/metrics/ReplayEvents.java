@@ -0,0 +1,332 @@
+package com.precursor.metrics;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * ReplayHarness 가 스레드별로 꺼내 쓰는 이벤트 흐름
+ * 기록된 NDJSON trace (EventTap 의 ndjson 포맷) 또는 설정한 비율의 합성 이벤트를 만든다.
+ * 이벤트 시각은 재생 시점으로 바꾼다 (인증 흐름 TTL, 로그인 비율 윈도우가 실제처럼 동작하도록).
+ */
+abstract class ReplayEvents {
+
+    /**
+     * @param thread 0..threads-1
+     * @return 다음 이벤트, 끝났으면 null
+     */
+    abstract Event next(int thread);
+
+    // === 합성 이벤트 ===
+
+    /**
+     * 타입 비율을 따르고, realm / client / IP / username 은 앞쪽 값일수록 자주 나오도록 치우친 분포로 고른다.
+     */
+    static final class Synthetic extends ReplayEvents {
+        private static final String[] KNOWN_ERRORS = {"invalid_user_credentials", "user_not_found",
+                "invalid_client_credentials", "invalid_code", "code_already_used", "expired_code",
+                "invalid_token", "user_disabled", "user_temporarily_disabled", "invalid_redirect_uri"};
+
+        private final EventType[] types;
+        private final double[] cumulativeWeights;
+        private final int realms;
+        private final int clients;
+        private final int users;
+        private final int ipAddresses;
+        private final String[] errors;
+        private final long eventsPerThread;
+        private final SplittableRandom[] randoms;
+        private final long[] emitted;
+
+        /**
+         * @param mix 타입별 가중치, 예) LOGIN:50,LOGIN_ERROR:5,CODE_TO_TOKEN:25
+         * @param clients realm 당 client 수
+         * @param events 전체 이벤트 수 (0 이면 끝없이)
+         */
+        Synthetic(String mix, int realms, int clients, int users, int ipAddresses, int errors, long events,
+                  long seed, int threads) {
+            Map<EventType, Double> weights = parseMix(mix);
+            this.types = weights.keySet().toArray(new EventType[0]);
+            this.cumulativeWeights = new double[types.length];
+            double sum = 0;
+            for (int i = 0; i < types.length; i++) {
+                sum += weights.get(types[i]);
+                cumulativeWeights[i] = sum;
+            }
+            for (int i = 0; i < types.length; i++) {
+                cumulativeWeights[i] /= sum;
+            }
+            this.realms = Math.max(1, realms);
+            this.clients = Math.max(1, clients);
+            this.users = Math.max(1, users);
+            this.ipAddresses = Math.max(1, ipAddresses);
+            this.errors = new String[Math.max(1, errors)];
+            for (int i = 0; i < this.errors.length; i++) {
+                this.errors[i] = i < KNOWN_ERRORS.length ? KNOWN_ERRORS[i] : "error_" + i;
+            }
+            this.eventsPerThread = events > 0 ? Math.max(1, events / threads) : 0;
+            this.randoms = new SplittableRandom[threads];
+            SplittableRandom root = new SplittableRandom(seed);
+            for (int i = 0; i < threads; i++) {
+                randoms[i] = root.split();
+            }
+            this.emitted = new long[threads * 8]; // 스레드별 카운터 사이 간격 (false sharing 방지)
+        }
+
+        static Map<EventType, Double> parseMix(String mix) {
+            Map<EventType, Double> weights = new LinkedHashMap<>();
+            for (String entry : mix.split(",")) {
+                if (entry.isBlank()) continue;
+                int colon = entry.indexOf(':');
+                EventType type = EventType.valueOf((colon < 0 ? entry : entry.substring(0, colon)).trim());
+                double weight = colon < 0 ? 1 : Double.parseDouble(entry.substring(colon + 1).trim());
+                if (weight > 0) weights.merge(type, weight, Double::sum);
+            }
+            if (weights.isEmpty()) {
+                throw new IllegalArgumentException("Empty event mix: " + mix);
+            }
+            return weights;
+        }
+
+        @Override
+        Event next(int thread) {
+            if (eventsPerThread > 0 && emitted[thread * 8]++ >= eventsPerThread) return null;
+            SplittableRandom random = randoms[thread];
+
+            EventType type = types[pick(random)];
+            int realm = skewed(random, realms);
+            Event event = new Event();
+            event.setType(type);
+            event.setRealmId("realm-" + realm);
+            event.setClientId("client-" + skewed(random, clients));
+            String user = "user-" + skewed(random, users);
+            event.setUserId(user);
+            event.setSessionId("session-" + random.nextInt(users * 4));
+            event.setIpAddress(ipAddress(skewed(random, ipAddresses)));
+            event.setTime(System.currentTimeMillis());
+            event.setDetails(Map.of("username", user));
+            if (type.name().endsWith("_ERROR")) {
+                event.setError(errors[skewed(random, errors.length)]);
+            }
+            return event;
+        }
+
+        private int pick(SplittableRandom random) {
+            double u = random.nextDouble();
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (u < cumulativeWeights[i]) return i;
+            }
+            return cumulativeWeights.length - 1;
+        }
+
+        /**
+         * 0..n-1 중 앞쪽에 몰린 값 (u^3 분포, 상위 10% 값이 절반 가까이 차지)
+         */
+        private static int skewed(SplittableRandom random, int n) {
+            double u = random.nextDouble();
+            return (int) (n * u * u * u);
+        }
+
+        private static String ipAddress(int index) {
+            return "10." + ((index >>> 16) & 0xFF) + "." + ((index >>> 8) & 0xFF) + "." + (index & 0xFF);
+        }
+    }
+
+    // === 기록된 trace ===
+
+    /**
+     * NDJSON 파일 전체를 읽어 두고 스레드마다 threads 간격으로 나눠 재생 (loop 면 처음부터 반복)
+     */
+    static final class Trace extends ReplayEvents {
+        private record Template(EventType type, String realmId, String clientId, String userId, String sessionId,
+                                String ipAddress, String error, Map<String, String> details) {}
+
+        private final Template[] templates;
+        private final boolean loop;
+        private final int threads;
+        private final long[] positions;
+
+        Trace(Path file, boolean loop, int threads) throws IOException {
+            List<Template> loaded = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                int number = 0;
+                while ((line = reader.readLine()) != null) {
+                    number++;
+                    if (line.isBlank()) continue;
+                    try {
+                        loaded.add(template(new JsonReader(line).object()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(file + ":" + number + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+            if (loaded.isEmpty()) {
+                throw new IOException("No events in " + file);
+            }
+            this.templates = loaded.toArray(new Template[0]);
+            this.loop = loop;
+            this.threads = threads;
+            this.positions = new long[threads * 8];
+            for (int i = 0; i < threads; i++) {
+                positions[i * 8] = i;
+            }
+        }
+
+        int size() {
+            return templates.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Template template(Map<String, Object> json) {
+            Object type = json.get("type");
+            if (!(type instanceof String name)) {
+                throw new IllegalArgumentException("Missing event type");
+            }
+            Map<String, String> details = new HashMap<>();
+            if (json.get("details") instanceof Map<?, ?> map) {
+                ((Map<String, Object>) map).forEach((key, value) -> details.put(key, value != null ? value.toString() : null));
+            }
+            return new Template(EventType.valueOf(name), string(json, "realmId"), string(json, "clientId"),
+                    string(json, "userId"), string(json, "sessionId"), string(json, "ipAddress"),
+                    string(json, "error"), details);
+        }
+
+        private static String string(Map<String, Object> json, String key) {
+            Object value = json.get(key);
+            return value != null ? value.toString() : null;
+        }
+
+        @Override
+        Event next(int thread) {
+            long position = positions[thread * 8];
+            if (position >= templates.length) {
+                if (!loop) return null;
+                position %= templates.length;
+            }
+            positions[thread * 8] = position + threads;
+
+            Template template = templates[(int) position];
+            Event event = new Event();
+            event.setType(template.type());
+            event.setRealmId(template.realmId());
+            event.setClientId(template.clientId());
+            event.setUserId(template.userId());
+            event.setSessionId(template.sessionId());
+            event.setIpAddress(template.ipAddress());
+            event.setError(template.error());
+            event.setDetails(template.details());
+            event.setTime(System.currentTimeMillis());
+            return event;
+        }
+    }
+
+    /**
+     * trace 한 줄 (객체 / 문자열 / 숫자 / true / false / null 만 사용하는 평평한 JSON) 파서
+     */
+    static final class JsonReader {
+        private final String text;
+        private int position;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+                char c = text.charAt(position++);
+                if (c == '}') return object;
+                if (c != ',') throw error("Expected , or }");
+            }
+        }
+
+        private Object value() {
+            skipWhitespace();
+            char c = peek();
+            if (c == '{') return object();
+            if (c == '"') return string();
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) position++;
+            String literal = text.substring(start, position);
+            return switch (literal) {
+                case "null" -> null;
+                case "true" -> Boolean.TRUE;
+                case "false" -> Boolean.FALSE;
+                default -> {
+                    if (literal.isEmpty()) throw error("Expected a value");
+                    yield literal;
+                }
+            };
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) throw error("Unterminated string");
+                char c = text.charAt(position++);
+                if (c == '"') return value.toString();
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            }
+        }
+
+        private void expect(char c) {
+            skipWhitespace();
+            if (position >= text.length() || text.charAt(position) != c) throw error("Expected " + c);
+            position++;
+        }
+
+        private char peek() {
+            if (position >= text.length()) throw error("Unexpected end of line");
+            return text.charAt(position);
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (position + 1));
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.exporter.common.TextFormat;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 기록된 trace 또는 합성 이벤트를 목표 속도로 N 스레드에서 재생하는 부하 도구
+ * (mvn -Pbenchmark compile exec:exec@replay -Dreplay.options="threads=4 rate=50000 duration=120")
+ * 이벤트는 MetricsEventListenerProviderFactory.create(stub 세션) 으로 만든 provider 의 onEvent 로 보내고,
+ * 보고 주기마다 처리량, onEvent 지연 분위수, 힙 증가량, 시리즈 수, scrape 시간 / 크기를 출력한다.
+ *
+ * 옵션 (key=value, 공백 구분):
+ * <ul>
+ *     <li>trace: EventTap 이 남긴 ndjson 파일, 없으면 합성 이벤트</li>
+ *     <li>loop: trace 를 끝까지 재생한 뒤 처음부터 반복 (기본 false)</li>
+ *     <li>threads: 재생 스레드 수 (기본 CPU 수)</li>
+ *     <li>rate: 전체 목표 초당 이벤트 수, 0 이면 최대 속도 (기본 0)</li>
+ *     <li>duration: 최대 실행 시간 초 (기본 60)</li>
+ *     <li>report: 보고 주기 초 (기본 5)</li>
+ *     <li>events: 합성 이벤트 수, 0 이면 duration 까지 (기본 0)</li>
+ *     <li>mix: 합성 이벤트 타입 비율 (기본 LOGIN:40,CODE_TO_TOKEN:30,REFRESH_TOKEN:20,LOGIN_ERROR:5,LOGOUT:5)</li>
+ *     <li>realms / clients / users / ips / errors: 합성 이벤트의 값 종류 수 (기본 5 / 50 / 10000 / 5000 / 10, clients 는 realm 당)</li>
+ *     <li>seed: 합성 이벤트 난수 seed (기본 42)</li>
+ *     <li>spi.&lt;option&gt;: factory 설정, 예) spi.async=true spi.counterBackend=striped spi.clientIdCardinalityLimit=0</li>
+ * </ul>
+ */
+public final class ReplayHarness {
+
+    private static final String DEFAULT_MIX = "LOGIN:40,CODE_TO_TOKEN:30,REFRESH_TOKEN:20,LOGIN_ERROR:5,LOGOUT:5";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ReplayEvents events;
+    private final int threads;
+    private final long rate;
+    private final long durationNanos;
+    private final long reportNanos;
+    private final MetricsEventListenerProviderFactory factory;
+    private final KeycloakSession session;
+    private final LatencyHistogram[] latencies;
+    private final PrintStream out;
+
+    private volatile boolean stopped;
+
+    private ReplayHarness(ReplayEvents events, int threads, long rate, long durationNanos, long reportNanos,
+                          MetricsEventListenerProviderFactory factory, PrintStream out) {
+        this.events = events;
+        this.threads = threads;
+        this.rate = rate;
+        this.durationNanos = durationNanos;
+        this.reportNanos = reportNanos;
+        this.factory = factory;
+        this.out = out;
+        // trace 의 realmId 마다 이름이 같은 stub realm
+        Map<String, RealmModel> realms = new ConcurrentHashMap<>();
+        this.session = Stubs.session(id -> id == null ? null : realms.computeIfAbsent(id, key -> Stubs.realm(key, key)));
+        this.latencies = new LatencyHistogram[threads];
+        for (int i = 0; i < threads; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int threads = intOption(options, "threads", Runtime.getRuntime().availableProcessors());
+
+        ReplayEvents events;
+        String trace = options.get("trace");
+        if (trace != null) {
+            ReplayEvents.Trace loaded = new ReplayEvents.Trace(Path.of(trace),
+                    Boolean.parseBoolean(options.getOrDefault("loop", "false")), threads);
+            System.out.printf("Loaded %d events from %s%n", loaded.size(), trace);
+            events = loaded;
+        } else {
+            events = new ReplayEvents.Synthetic(options.getOrDefault("mix", DEFAULT_MIX),
+                    intOption(options, "realms", 5),
+                    intOption(options, "clients", 50),
+                    intOption(options, "users", 10000),
+                    intOption(options, "ips", 5000),
+                    intOption(options, "errors", 10),
+                    longOption(options, "events", 0),
+                    longOption(options, "seed", 42),
+                    threads);
+        }
+
+        Map<String, String> spi = new HashMap<>();
+        options.forEach((key, value) -> {
+            if (key.startsWith("spi.")) spi.put(key.substring(4), value);
+        });
+        MetricsEventListenerProviderFactory factory = new MetricsEventListenerProviderFactory();
+        factory.init(Stubs.config(spi));
+        try {
+            new ReplayHarness(events, threads, longOption(options, "rate", 0),
+                    TimeUnit.SECONDS.toNanos(longOption(options, "duration", 60)),
+                    TimeUnit.SECONDS.toNanos(Math.max(1, longOption(options, "report", 5))),
+                    factory, System.out).run();
+        } finally {
+            factory.close();
+        }
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            // exec 플러그인은 replay.options 를 인자 하나로 넘기므로 공백으로 다시 나눈다
+            for (String option : arg.trim().split("\\s+")) {
+                if (option.isEmpty()) continue;
+                int eq = option.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Expected key=value but got '" + option + "'");
+                }
+                options.put(option.substring(0, eq), option.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static long longOption(Map<String, String> options, String key, long defaultValue) {
+        String value = options.get(key);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    private void run() throws InterruptedException, IOException {
+        PrometheusExporter exporter = factory.exporter();
+        long baselineHeap = usedHeapAfterGc();
+        out.printf(Locale.ROOT, "Replaying on %d threads, target %s events/s, baseline heap %.1f MB%n",
+                threads, rate > 0 ? Long.toString(rate) : "max", baselineHeap / 1e6);
+        out.printf(Locale.ROOT, "%8s %12s %9s %9s %9s %9s %9s %10s %10s %9s %10s %10s%n",
+                "time(s)", "events/s", "p50(us)", "p90(us)", "p99(us)", "p999(us)", "max(us)",
+                "heap(MB)", "+heap(MB)", "series", "scrape(ms)", "scrape(KB)");
+
+        AtomicInteger running = new AtomicInteger(threads);
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    replay(thread, start);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }, "replay-" + i);
+            workers[i].start();
+        }
+
+        long[] previous = LatencyHistogram.newSnapshot();
+        long previousTime = start;
+        long deadline = start + durationNanos;
+        while (running.get() > 0 && System.nanoTime() < deadline) {
+            long untilReport = previousTime + reportNanos - System.nanoTime();
+            if (untilReport > 0) {
+                LockSupport.parkNanos(Math.min(untilReport, TimeUnit.MILLISECONDS.toNanos(100)));
+                continue;
+            }
+            long now = System.nanoTime();
+            long[] current = snapshot();
+            report(exporter, now - start, now - previousTime, current, previous, baselineHeap);
+            previous = current;
+            previousTime = now;
+        }
+
+        stopped = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        // 마지막 보고 이후 남은 구간
+        long now = System.nanoTime();
+        long[] current = snapshot();
+        if (LatencyHistogram.total(current) > LatencyHistogram.total(previous)) {
+            report(exporter, now - start, now - previousTime, current, previous, baselineHeap);
+        }
+
+        long end = now;
+        long[] all = current;
+        long total = LatencyHistogram.total(all);
+        out.printf(Locale.ROOT, "%nTotal: %d events in %.1f s (%.0f events/s)%n",
+                total, (end - start) / 1e9, total / ((end - start) / 1e9));
+        out.printf(Locale.ROOT, "onEvent latency (us): p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                LatencyHistogram.quantile(all, null, 0.5) / 1e3, LatencyHistogram.quantile(all, null, 0.9) / 1e3,
+                LatencyHistogram.quantile(all, null, 0.99) / 1e3, LatencyHistogram.quantile(all, null, 0.999) / 1e3,
+                LatencyHistogram.max(all, null) / 1e3);
+        out.printf(Locale.ROOT, "Heap retained after GC: +%.1f MB, series: %d%n",
+                (usedHeapAfterGc() - baselineHeap) / 1e6, seriesCount(exporter));
+    }
+
+    /**
+     * 스레드마다 전체 목표 속도의 1/threads 로 이벤트 재생 (뒤처지면 쉬지 않고 따라잡음)
+     */
+    private void replay(int thread, long start) {
+        LatencyHistogram latency = latencies[thread];
+        long intervalNanos = rate > 0 ? Math.max(1, TimeUnit.SECONDS.toNanos(threads) / rate) : 0;
+        long deadline = start + durationNanos;
+        long sent = 0;
+        while (!stopped) {
+            if (intervalNanos > 0) {
+                long due = start + sent * intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            if (System.nanoTime() >= deadline) return;
+            Event event = events.next(thread);
+            if (event == null) return;
+
+            // Keycloak 과 같이 세션(요청)마다 provider 를 만든다
+            EventListenerProvider provider = factory.create(session);
+            long begin = System.nanoTime();
+            provider.onEvent(event);
+            latency.record(System.nanoTime() - begin);
+            provider.close();
+            sent++;
+        }
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = LatencyHistogram.newSnapshot();
+        for (LatencyHistogram latency : latencies) {
+            latency.addTo(snapshot);
+        }
+        return snapshot;
+    }
+
+    private void report(PrometheusExporter exporter, long elapsedNanos, long intervalNanos, long[] current,
+                        long[] previous, long baselineHeap) throws IOException {
+        long events = LatencyHistogram.total(current) - LatencyHistogram.total(previous);
+        double[] quantiles = new double[QUANTILES.length];
+        for (int i = 0; i < QUANTILES.length; i++) {
+            quantiles[i] = LatencyHistogram.quantile(current, previous, QUANTILES[i]) / 1e3;
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+
+        CountingOutputStream scrape = new CountingOutputStream();
+        long scrapeStart = System.nanoTime();
+        exporter.export(scrape, TextFormat.CONTENT_TYPE_004);
+        long scrapeNanos = System.nanoTime() - scrapeStart;
+
+        out.printf(Locale.ROOT, "%8.1f %12.0f %9.2f %9.2f %9.2f %9.2f %9.2f %10.1f %10.1f %9d %10.2f %10.1f%n",
+                elapsedNanos / 1e9, events / (intervalNanos / 1e9),
+                quantiles[0], quantiles[1], quantiles[2], quantiles[3],
+                LatencyHistogram.max(current, previous) / 1e3,
+                heap / 1e6, (heap - baselineHeap) / 1e6,
+                seriesCount(exporter), scrapeNanos / 1e6, scrape.count / 1e3);
+    }
+
+    private static long seriesCount(PrometheusExporter exporter) {
+        long series = count(exporter.globalChildCaches());
+        for (RealmMetrics shard : exporter.shards()) {
+            series += count(shard.childCaches());
+        }
+        return series;
+    }
+
+    private static long count(List<? extends LabelChildCache<?>> caches) {
+        long series = 0;
+        for (LabelChildCache<?> cache : caches) {
+            series += cache.size();
+        }
+        return series;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
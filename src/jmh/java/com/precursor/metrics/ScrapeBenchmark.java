@@ -0,0 +1,90 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MetricsResource.metrics() 렌더링 지연과 scrape 당 할당량 (시리즈 수별)
+ * 응답 본문은 바이트 수만 세는 스트림으로 흘려보낸다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScrapeBenchmark {
+
+    private static final String REALM = "bench";
+
+    @Param({"1000", "10000", "100000"})
+    public int series;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private PrometheusExporter exporter;
+    private MetricsResource resource;
+    private final CountingOutputStream out = new CountingOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        exporter = new PrometheusExporter(new CollectorRegistry());
+        // 시리즈 수를 맞추기 위해 client_id 카디널리티 제한 해제
+        exporter.configureCardinalityLimits(0, 0);
+        // LOGIN 한 번에 login_attempts / logins 두 시리즈
+        for (int i = 0; i < series / 2; i++) {
+            exporter.recordEvent(EventType.LOGIN, REALM, "keycloak", "client-" + i, "unknown", 0L, 0L, null, null);
+        }
+        KeycloakSession session = Stubs.session(Stubs.realm("bench-id", REALM));
+        resource = new MetricsResource(session, exporter, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        exporter.close();
+    }
+
+    @Benchmark
+    public long metrics() throws IOException {
+        Response response = resource.metrics(TextFormat.CONTENT_TYPE_004, gzip ? "gzip" : null, null);
+        out.count = 0;
+        ((StreamingOutput) response.getEntity()).write(out);
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.precursor.metrics;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.core.UriInfo;
+import org.keycloak.Config;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 벤치마크용 Keycloak 객체 stub (필요한 메서드만 응답하는 동적 프록시)
+ */
+final class Stubs {
+
+    private Stubs() {}
+
+    static RealmModel realm(String id, String name) {
+        return proxy(RealmModel.class, (method, args) -> switch (method) {
+            case "getId" -> id;
+            case "getName" -> name;
+            default -> null;
+        });
+    }
+
+    /**
+     * @param realm getRealm(id) 와 세션 context 가 돌려줄 realm
+     */
+    static KeycloakSession session(RealmModel realm) {
+        RealmProvider realms = proxy(RealmProvider.class, (method, args) ->
+                method.equals("getRealm") ? realm : null);
+        KeycloakContext context = proxy(KeycloakContext.class, (method, args) ->
+                method.equals("getRealm") ? realm : null);
+        return proxy(KeycloakSession.class, (method, args) -> switch (method) {
+            case "realms" -> realms;
+            case "getContext" -> context;
+            default -> null;
+        });
+    }
+
+    /**
+     * @param realms realm id -> realm (RealmProvider.getRealm 조회, context realm 은 없음)
+     */
+    static KeycloakSession session(Function<String, RealmModel> realms) {
+        RealmProvider provider = proxy(RealmProvider.class, (method, args) ->
+                method.equals("getRealm") ? realms.apply((String) args[0]) : null);
+        return proxy(KeycloakSession.class, (method, args) ->
+                method.equals("realms") ? provider : null);
+    }
+
+    /**
+     * factory init 에 넘길 설정 (없는 키는 기본값)
+     */
+    static Config.Scope config(Map<String, String> values) {
+        return proxy(Config.Scope.class, (method, args) -> {
+            String value = args != null && args.length > 0 && args[0] instanceof String key ? values.get(key) : null;
+            Object fallback = args != null && args.length > 1 ? args[1] : null;
+            return switch (method) {
+                case "get" -> value != null ? value : fallback;
+                case "getInt" -> value != null ? Integer.valueOf(value) : fallback;
+                case "getLong" -> value != null ? Long.valueOf(value) : fallback;
+                case "getBoolean" -> value != null ? Boolean.valueOf(value) : fallback;
+                case "getArray" -> value != null ? value.split(",") : null;
+                case "getPropertyNames" -> values.keySet();
+                default -> null;
+            };
+        });
+    }
+
+    /**
+     * realmName 은 비워 두어 실제 환경처럼 realm 이름 캐시 / RealmProvider 조회를 거치게 한다
+     */
+    static Event event(EventType type, String realmId, String clientId, String sessionId) {
+        Event event = new Event();
+        event.setType(type);
+        event.setRealmId(realmId);
+        event.setClientId(clientId);
+        event.setSessionId(sessionId);
+        event.setTime(System.currentTimeMillis());
+        event.setDetails(Map.of("username", "bench-user"));
+        if (type.name().endsWith("_ERROR")) {
+            event.setError("invalid_user_credentials");
+        }
+        return event;
+    }
+
+    /**
+     * 요청 필터용 context (property 는 맵에 보관, 경로와 메서드만 응답)
+     */
+    static ContainerRequestContext requestContext(String method, String path) {
+        UriInfo uriInfo = proxy(UriInfo.class, (name, args) -> name.equals("getPath") ? path : null);
+        Map<String, Object> properties = new HashMap<>();
+        return proxy(ContainerRequestContext.class, (name, args) -> switch (name) {
+            case "getMethod" -> method;
+            case "getUriInfo" -> uriInfo;
+            case "getProperty" -> properties.get((String) args[0]);
+            case "setProperty" -> properties.put((String) args[0], args[1]);
+            case "removeProperty" -> properties.remove((String) args[0]);
+            default -> null;
+        });
+    }
+
+    static ContainerResponseContext responseContext(int status) {
+        return proxy(ContainerResponseContext.class, (name, args) -> name.equals("getStatus") ? status : null);
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Answer answer) {
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> type.getSimpleName() + "Stub";
+                    default -> {
+                        Object value = answer.answer(method.getName(), args);
+                        if (value == null && method.getReturnType() == boolean.class) yield false;
+                        if (value == null && method.getReturnType().isPrimitive()
+                                && method.getReturnType() != void.class) yield 0;
+                        yield value;
+                    }
+                });
+    }
+}
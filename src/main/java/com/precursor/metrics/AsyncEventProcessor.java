@@ -0,0 +1,142 @@
+package com.precursor.metrics;
+
+import org.jboss.logging.Logger;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.OperationType;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 비동기 모드: 요청 스레드는 링 버퍼에 필드만 복사하고,
+ * 단일 drain 스레드가 PrometheusExporter 에 배치로 반영
+ */
+final class AsyncEventProcessor implements EventRingBuffer.Sink {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncEventProcessor.class);
+
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 버퍼가 가득 찼을 때의 처리 방식
+     */
+    enum OverflowPolicy {
+        DROP,
+        BLOCK;
+
+        static OverflowPolicy parse(String value) {
+            if (value == null) return DROP;
+            return OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final EventRingBuffer buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final PrometheusExporter exporter;
+    private final Thread drainThread;
+
+    private volatile boolean running = true;
+
+    AsyncEventProcessor(int capacity, OverflowPolicy overflowPolicy, PrometheusExporter exporter) {
+        this.buffer = new EventRingBuffer(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.exporter = exporter;
+        this.drainThread = new Thread(this::drainLoop, "metrics-event-drain");
+        this.drainThread.setDaemon(true);
+    }
+
+    void start() {
+        drainThread.start();
+        LOGGER.infof("Async event processing started (capacity=%d, overflow=%s)", buffer.capacity(), overflowPolicy);
+    }
+
+    void submitUserEvent(EventType type, String realm, String provider, String clientId, String error,
+                         long sessionKey, long time, String ipAddress, String username) {
+        submit(EventRingBuffer.KIND_USER, type.ordinal(), realm, provider, clientId, error, sessionKey, time,
+                ipAddress, username);
+    }
+
+    void submitAdminEvent(OperationType type, String realm, String resourceType) {
+        submit(EventRingBuffer.KIND_ADMIN, type.ordinal(), realm, resourceType, null, null, 0L, 0L, null, null);
+    }
+
+    /**
+     * 앞서 큐에 넣은 이벤트가 반영된 뒤 realm 샤드를 제거하도록 큐에 넣음
+     * 제거를 놓치면 샤드가 남으므로 버퍼가 가득 차 있으면 정책과 관계없이 기다린다.
+     */
+    void submitRealmRemoval(String realm) {
+        while (!buffer.offer(EventRingBuffer.KIND_REMOVE_REALM, 0, realm, null, null, null, 0L, 0L, null, null)) {
+            if (!running) {
+                exporter.removeRealmShard(realm);
+                return;
+            }
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+    }
+
+    private void submit(byte kind, int type, String realm, String provider, String clientId, String error,
+                        long sessionKey, long time, String ipAddress, String username) {
+        if (buffer.offer(kind, type, realm, provider, clientId, error, sessionKey, time, ipAddress, username)) {
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            while (running) {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                if (buffer.offer(kind, type, realm, provider, clientId, error, sessionKey, time, ipAddress, username)) {
+                    return;
+                }
+            }
+        }
+        exporter.recordDroppedEvent();
+    }
+
+    private void drainLoop() {
+        while (running) {
+            int drained = buffer.drain(this, DRAIN_BATCH_SIZE);
+            exporter.setEventQueueDepth(buffer.size());
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        // 종료 시 남은 이벤트 반영
+        while (buffer.drain(this, DRAIN_BATCH_SIZE) > 0) {
+            // continue
+        }
+        exporter.setEventQueueDepth(0);
+    }
+
+    @Override
+    public void accept(byte kind, int type, String realm, String provider, String clientId, String error,
+                       long sessionKey, long time, String ipAddress, String username) {
+        try {
+            if (kind == EventRingBuffer.KIND_USER) {
+                exporter.recordEvent(EVENT_TYPES[type], realm, provider, clientId, error, sessionKey, time,
+                        ipAddress, username);
+            } else if (kind == EventRingBuffer.KIND_ADMIN) {
+                exporter.recordAdminEvent(OPERATION_TYPES[type], realm, provider);
+            } else {
+                exporter.removeRealmShard(realm);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to apply queued event", e);
+        }
+    }
+
+    void close() {
+        running = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Async event processing stopped.");
+    }
+}
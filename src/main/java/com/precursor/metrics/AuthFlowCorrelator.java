@@ -0,0 +1,165 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+import org.keycloak.events.EventType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LOGIN -> CODE_TO_TOKEN 이벤트를 세션 ID 로 짝지어 인증 코드 교환까지 걸린 시간을 계산
+ * 세션 ID 를 64비트 키로 해시해 고정 크기 open addressing 테이블(세그먼트별 락)에 시작 시각만 저장하므로,
+ * 진행 중인 세션 수와 무관하게 메모리는 capacity 로 고정된다.
+ * 짝이 맞지 않고 TTL 이 지났거나 자리가 없어 밀려난 항목은 orphan 으로 집계한다.
+ * 조용한 realm 에서도 집계가 밀리지 않도록 만료 항목은 IdleSeriesSweeper 가 주기마다 expire 로 치운다.
+ */
+final class AuthFlowCorrelator {
+
+    private static final int SEGMENTS = 16;
+    private static final int MAX_PROBES = 8;
+    private static final long EMPTY = 0L;
+
+    private static final class Segment {
+        final long[] keys;
+        final long[] startTimes;
+        final int mask;
+
+        Segment(int size) {
+            keys = new long[size];
+            startTimes = new long[size];
+            mask = size - 1;
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlMillis;
+    private final Counter orphaned;
+
+    /**
+     * @param capacity 동시에 추적할 최대 흐름 수 (세그먼트 크기는 2의 거듭제곱으로 올림)
+     */
+    AuthFlowCorrelator(int capacity, long ttlSeconds, Counter orphaned) {
+        int segmentSize = Math.max(MAX_PROBES, Integer.highestOneBit(Math.max(1, capacity / SEGMENTS - 1)) << 1);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.orphaned = orphaned;
+    }
+
+    /**
+     * @return 흐름 추적에 쓰이는 이벤트 타입인지 (그 외 이벤트는 세션 키를 계산하지 않음)
+     */
+    static boolean tracks(EventType type) {
+        return type == EventType.LOGIN || type == EventType.CODE_TO_TOKEN;
+    }
+
+    /**
+     * 세션 ID -> 0 이 아닌 64비트 키 (null 이면 0)
+     */
+    static long key(String sessionId) {
+        if (sessionId == null) return EMPTY;
+        // FNV-1a 64
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sessionId.length(); i++) {
+            hash ^= sessionId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // FNV 상위 비트는 비슷한 ID 끼리 잘 섞이지 않으므로 세그먼트 선택 전에 한 번 더 섞음 (murmur3 fmix64)
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    /**
+     * LOGIN 시각 기록
+     */
+    void start(long key, long time) {
+        if (key == EMPTY) return;
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            int base = (int) key & segment.mask;
+            int target = -1;
+            int free = -1;
+            int oldest = -1;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int index = (base + probe) & segment.mask;
+                long current = segment.keys[index];
+                if (current == key) {
+                    target = index;
+                    break;
+                }
+                if (current == EMPTY || time - segment.startTimes[index] > ttlMillis) {
+                    if (free < 0) free = index;
+                } else if (oldest < 0 || segment.startTimes[index] < segment.startTimes[oldest]) {
+                    oldest = index;
+                }
+            }
+            if (target < 0) {
+                // 빈 자리 또는 만료된 자리를 우선 사용하고, 없으면 가장 오래된 흐름을 밀어냄
+                target = free >= 0 ? free : oldest;
+                if (segment.keys[target] != EMPTY) {
+                    orphan(segment, target);
+                }
+            }
+            segment.keys[target] = key;
+            segment.startTimes[target] = time;
+        }
+    }
+
+    /**
+     * CODE_TO_TOKEN 에서 짝이 되는 LOGIN 을 찾아 제거
+     * @return LOGIN 시각, 없거나 만료되었으면 -1
+     */
+    long complete(long key, long time) {
+        if (key == EMPTY) return -1;
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            int base = (int) key & segment.mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int index = (base + probe) & segment.mask;
+                if (segment.keys[index] == key) {
+                    long startTime = segment.startTimes[index];
+                    if (time - startTime > ttlMillis) {
+                        orphan(segment, index);
+                        return -1;
+                    }
+                    segment.keys[index] = EMPTY;
+                    return startTime;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * TTL 이 지난 LOGIN 흐름을 모두 orphan 으로 집계하고 비움
+     * @param now 현재 시각 (epoch millis, 이벤트 시각과 같은 기준)
+     * @return 치운 흐름 수
+     */
+    int expire(long now) {
+        int expired = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int index = 0; index < segment.keys.length; index++) {
+                    if (segment.keys[index] != EMPTY && now - segment.startTimes[index] > ttlMillis) {
+                        orphan(segment, index);
+                        expired++;
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void orphan(Segment segment, int index) {
+        segment.keys[index] = EMPTY;
+        if (orphaned != null) orphaned.inc();
+    }
+
+    private Segment segmentOf(long key) {
+        return segments[(int) (key >>> 60) & (SEGMENTS - 1)];
+    }
+}
@@ -0,0 +1,48 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CardinalityLimiter 상태를 scrape 시점에 노출
+ */
+final class CardinalityCollector extends Collector {
+
+    private static final List<String> LABEL_NAMES = Arrays.asList("realm", "metric", "label");
+
+    private final String realm;
+    private final List<CardinalityLimiter> limiters;
+
+    CardinalityCollector(String realm, List<CardinalityLimiter> limiters) {
+        this.realm = realm;
+        this.limiters = limiters;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        GaugeMetricFamily trackedValues = new GaugeMetricFamily(
+                "keycloak_metrics_cardinality_tracked_values",
+                "Label values kept as their own series by the cardinality limiter",
+                LABEL_NAMES);
+        GaugeMetricFamily foldedValues = new GaugeMetricFamily(
+                "keycloak_metrics_cardinality_folded_values",
+                "Estimated number of distinct label values folded into \"other\"",
+                LABEL_NAMES);
+        CounterMetricFamily foldedEvents = new CounterMetricFamily(
+                "keycloak_metrics_cardinality_folded_events",
+                "Events whose label value was folded into \"other\"",
+                LABEL_NAMES);
+
+        for (CardinalityLimiter limiter : limiters) {
+            List<String> labelValues = Arrays.asList(realm, limiter.metric(), limiter.label());
+            trackedValues.addMetric(labelValues, limiter.trackedValues());
+            foldedValues.addMetric(labelValues, limiter.foldedValues());
+            foldedEvents.addMetric(labelValues, limiter.foldedEvents());
+        }
+        return Arrays.asList(trackedValues, foldedValues, foldedEvents);
+    }
+}
@@ -0,0 +1,270 @@
+package com.precursor.metrics;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 메트릭 하나의 라벨 하나(client_id, error 등)에 대한 카디널리티 제한
+ * 빈도 상위 limit 개 값만 실제 시리즈로 두고 나머지는 "other" 로 접는다.
+ * 추적 중이 아닌 값의 빈도는 count-min sketch 로 추정하며,
+ * 추정치가 추적 중인 최소 빈도를 넘으면 그 값과 교체한다 (space-saving 방식).
+ * sketch 와 추적 중인 빈도는 decayInterval 마다 절반으로 감쇠해 오래된 빈도가 순위를 고정하지 않도록 한다.
+ * 밀려난 값의 시리즈는 등록된 eviction listener (LabelChildCache) 가 제거한다.
+ */
+final class CardinalityLimiter {
+
+    static final String OTHER = "other";
+    static final long DEFAULT_DECAY_SECONDS = 300;
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 2048;
+    // 접힌 값의 종류 수 추정용 linear counting 비트맵 크기
+    private static final int FOLDED_BITMAP_BITS = 16384;
+
+    private static final class Tracked {
+        final String value;
+        final LongAdder count = new LongAdder();
+        // 힙 정렬 기준: 마지막으로 읽은 count (lock 안에서만 접근, 실제 count 이하)
+        long rank;
+
+        Tracked(String value, long initial) {
+            this.value = value;
+            this.count.add(initial);
+            this.rank = initial;
+        }
+    }
+
+    private final String metric;
+    private final String label;
+    private volatile int limit;
+
+    private final ConcurrentHashMap<String, Tracked> tracked = new ConcurrentHashMap<>();
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    // 이하 lock 으로 보호: 추적 값 교체, 감쇠
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Tracked> minHeap = new PriorityQueue<>(Comparator.comparingLong(t -> t.rank));
+    private final long decayIntervalNanos;
+    private long lastDecayNanos;
+
+    // 교체 시도 기준 (lock 밖에서 읽음): 마지막으로 확인한 최소 빈도, 다음 감쇠 시각
+    private volatile long minTrackedCount;
+    private volatile long nextDecayNanos;
+
+    private final LongAdder foldedEvents = new LongAdder();
+    private final AtomicLongArray foldedBitmap = new AtomicLongArray(FOLDED_BITMAP_BITS / Long.SIZE);
+
+    CardinalityLimiter(String metric, String label, int limit) {
+        this(metric, label, limit, DEFAULT_DECAY_SECONDS);
+    }
+
+    /**
+     * @param decaySeconds 이 주기마다 빈도를 절반으로 감쇠
+     */
+    CardinalityLimiter(String metric, String label, int limit, long decaySeconds) {
+        this.metric = metric;
+        this.label = label;
+        this.limit = limit;
+        this.decayIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(1, decaySeconds));
+        this.lastDecayNanos = System.nanoTime();
+        this.nextDecayNanos = lastDecayNanos + decayIntervalNanos;
+    }
+
+    String metric() {
+        return metric;
+    }
+
+    String label() {
+        return label;
+    }
+
+    /**
+     * @param limit 0 이하이면 제한하지 않음
+     */
+    void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * 추적 대상에서 밀려난 값을 받을 콜백 등록 (교체한 스레드에서 lock 밖에서 호출)
+     */
+    void onEviction(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * @return 실제 시리즈로 쓸 라벨 값 (value 또는 "other")
+     */
+    String admit(String value) {
+        int max = limit;
+        if (max <= 0) return value;
+
+        Tracked entry = tracked.get(value);
+        if (entry != null) {
+            entry.count.increment();
+            return value;
+        }
+
+        long estimate = sketch.add(value, 1);
+        if ((tracked.size() < max || estimate > minTrackedCount || System.nanoTime() - nextDecayNanos >= 0)
+                && promote(value, max)) {
+            return value;
+        }
+
+        fold(value);
+        return OTHER;
+    }
+
+    /**
+     * 체크포인트 복원 시 value 를 빈도 count 로 바로 추적 대상에 넣음 (이미 추적 중이면 빈도만 더함)
+     * @return 추적 대상이 되었으면 true, 자리가 없으면 false
+     */
+    boolean seed(String value, long count) {
+        int max = limit;
+        if (max <= 0) return true;
+        lock.lock();
+        try {
+            Tracked entry = tracked.get(value);
+            if (entry != null) {
+                entry.count.add(count);
+                return true;
+            }
+            if (tracked.size() >= max) return false;
+            track(value, count, max);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean promote(String value, int max) {
+        // 자리가 남아 있을 때는 기다리고, 교체가 필요할 때는 다른 스레드가 교체 중이면 이번 이벤트만 other 로 접는다
+        if (tracked.size() < max) {
+            lock.lock();
+        } else if (!lock.tryLock()) {
+            return false;
+        }
+
+        String evicted = null;
+        try {
+            decayIfDue();
+
+            Tracked existing = tracked.get(value);
+            if (existing != null) {
+                existing.count.increment();
+                return true;
+            }
+
+            long estimate = sketch.estimate(value);
+            if (tracked.size() >= max) {
+                Tracked min = refreshMin();
+                if (min == null || estimate <= min.rank) {
+                    minTrackedCount = min != null ? min.rank : 0;
+                    return false;
+                }
+                minHeap.poll();
+                tracked.remove(min.value);
+                evicted = min.value;
+            }
+            track(value, estimate, max);
+        } finally {
+            lock.unlock();
+        }
+
+        if (evicted != null) {
+            for (Consumer<String> listener : evictionListeners) {
+                listener.accept(evicted);
+            }
+        }
+        return true;
+    }
+
+    // lock 안에서 호출
+    private void track(String value, long count, int max) {
+        Tracked entry = new Tracked(value, count);
+        tracked.put(value, entry);
+        minHeap.add(entry);
+        Tracked min = tracked.size() < max ? null : refreshMin();
+        minTrackedCount = min != null ? min.rank : 0;
+    }
+
+    /**
+     * 힙 맨 위 항목의 rank 가 현재 count 와 같아질 때까지 갱신 (count 는 감쇠 외에는 늘기만 하므로 그때의 맨 위가 최소)
+     * lock 안에서 호출
+     */
+    private Tracked refreshMin() {
+        Tracked top;
+        while ((top = minHeap.peek()) != null) {
+            long current = top.count.sum();
+            if (current <= top.rank) return top;
+            minHeap.poll();
+            top.rank = current;
+            minHeap.add(top);
+        }
+        return null;
+    }
+
+    /**
+     * 지난 감쇠 이후 흐른 주기 수만큼 sketch 와 추적 중인 빈도를 절반씩 감쇠 (0.5^(경과/주기))
+     * lock 안에서 호출
+     */
+    private void decayIfDue() {
+        long now = System.nanoTime();
+        long periods = (now - lastDecayNanos) / decayIntervalNanos;
+        if (periods <= 0) return;
+
+        int halvings = (int) Math.min(periods, Long.SIZE - 1);
+        lastDecayNanos = periods >= Long.SIZE - 1 ? now : lastDecayNanos + periods * decayIntervalNanos;
+        nextDecayNanos = lastDecayNanos + decayIntervalNanos;
+
+        sketch.decay(halvings);
+        minHeap.clear();
+        for (Tracked entry : tracked.values()) {
+            long sum = entry.count.sum();
+            // 감쇠 중에 들어온 증가분은 그대로 남음
+            entry.count.add((sum >> halvings) - sum);
+            entry.rank = entry.count.sum();
+            minHeap.add(entry);
+        }
+        minTrackedCount = 0;
+    }
+
+    private void fold(String value) {
+        foldedEvents.increment();
+        int bit = (value.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(FOLDED_BITMAP_BITS));
+        int word = bit >>> 6;
+        long mask = 1L << (bit & 63);
+        if ((foldedBitmap.get(word) & mask) == 0) {
+            foldedBitmap.getAndUpdate(word, w -> w | mask);
+        }
+    }
+
+    int trackedValues() {
+        return tracked.size();
+    }
+
+    long foldedEvents() {
+        return foldedEvents.sum();
+    }
+
+    /**
+     * @return "other" 로 접힌 서로 다른 값의 추정 개수 (linear counting)
+     */
+    double foldedValues() {
+        int zeros = 0;
+        for (int i = 0; i < foldedBitmap.length(); i++) {
+            zeros += Long.SIZE - Long.bitCount(foldedBitmap.get(i));
+        }
+        if (zeros == 0) return FOLDED_BITMAP_BITS;
+        return Math.round(-FOLDED_BITMAP_BITS * Math.log((double) zeros / FOLDED_BITMAP_BITS));
+    }
+}
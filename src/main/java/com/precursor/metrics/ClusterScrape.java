@@ -0,0 +1,142 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.exporter.common.TextFormat;
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 이 노드와 다른 Keycloak 노드의 exposition 을 합친 클러스터 전체 scrape (/metrics/cluster)
+ * peer 마다 가상 스레드에서 /metrics (또는 /metrics/all) 를 요청하고, 응답 스트림을 읽는 대로 시리즈별로 합친다.
+ * 제한 시간 안에 응답하지 않거나 실패한 peer 는 빠진 채로 내보내고 keycloak_metrics_cluster_peer_up 에 0 으로 남긴다.
+ */
+final class ClusterScrape {
+
+    private static final Logger LOGGER = Logger.getLogger(ClusterScrape.class);
+
+    static final long DEFAULT_PEER_TIMEOUT_MILLIS = 2000;
+
+    private final PrometheusExporter exporter;
+    private final PeerDiscovery discovery;
+    private final long timeoutNanos;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client;
+
+    /**
+     * @param timeoutMillis peer 하나의 연결부터 응답 본문을 다 읽을 때까지의 제한 시간
+     */
+    ClusterScrape(PrometheusExporter exporter, PeerDiscovery discovery, long timeoutMillis) {
+        this.exporter = exporter;
+        this.discovery = discovery;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(Math.max(1, timeoutMillis)))
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * 로컬 + 모든 peer 를 합쳐 text 0.0.4 로 기록
+     * @param realm 합칠 realm 샤드 (null 이면 전역 메트릭 + 전체 realm)
+     * @param authorization peer 의 /metrics/all 도 인증이 필요하므로 호출자의 Authorization 헤더를 그대로 전달 (없으면 null)
+     */
+    void write(OutputStream out, String realm, String authorization) throws IOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        List<URI> peers = discovery.peers();
+        List<Future<ExpositionMerger>> pending = new ArrayList<>(peers.size());
+        for (URI peer : peers) {
+            pending.add(executor.submit(() -> fetch(peer, realm, authorization)));
+        }
+
+        // peer 응답을 기다리는 동안 로컬 샤드를 먼저 합침
+        ExpositionMerger merged = new ExpositionMerger();
+        TextFormat.write004(merged, realm == null ? exporter.metricFamilySamples() : exporter.realmFamilySamples(realm));
+        merged.flush();
+
+        for (int i = 0; i < peers.size(); i++) {
+            URI peer = peers.get(i);
+            Future<ExpositionMerger> future = pending.get(i);
+            boolean up = false;
+            try {
+                merged.addAll(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                up = true;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                LOGGER.debugf("Peer %s did not answer within %dms", peer, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+            } catch (ExecutionException e) {
+                LOGGER.debugf("Failed to scrape peer %s: %s", peer, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.forEach(remaining -> remaining.cancel(true));
+                throw new IOException("Interrupted while waiting for peers", e);
+            }
+            merged.addGauge("keycloak_metrics_cluster_peer_up",
+                    "Whether the peer answered the last cluster scrape in time",
+                    "peer", peer.toString(), up ? 1 : 0);
+        }
+
+        ExpositionWriter writer = ExpositionWriter.acquire(out);
+        try {
+            merged.writeTo(writer);
+            writer.flush();
+        } finally {
+            writer.release();
+        }
+    }
+
+    private ExpositionMerger fetch(URI peer, String realm, String authorization)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(metricsUri(peer, realm))
+                .timeout(Duration.ofNanos(timeoutNanos))
+                .header("Accept", TextFormat.CONTENT_TYPE_004)
+                .GET();
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode());
+            }
+            ExpositionMerger merger = new ExpositionMerger();
+            new InputStreamReader(body, StandardCharsets.UTF_8).transferTo(merger);
+            merger.flush();
+            return merger;
+        }
+    }
+
+    static URI metricsUri(URI peer, String realm) {
+        String path = realm == null
+                ? "/realms/" + encode(Config.getAdminRealm()) + "/metrics/all"
+                : "/realms/" + encode(realm) + "/metrics";
+        return URI.create(peer.toString() + path);
+    }
+
+    private static String encode(String segment) {
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    void close() {
+        executor.shutdownNow();
+        client.shutdownNow();
+    }
+}
@@ -0,0 +1,75 @@
+package com.precursor.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 고정 메모리 빈도 추정용 count-min sketch (lock-free, 과대 추정만 발생)
+ */
+final class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final AtomicLongArray table;
+
+    /**
+     * @param width 행 너비, 2의 거듭제곱으로 올림
+     */
+    CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.mask = this.width - 1;
+        this.table = new AtomicLongArray(depth * this.width);
+    }
+
+    /**
+     * @return 더한 후의 추정 빈도
+     */
+    long add(String value, long count) {
+        int hash = value.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long updated = table.addAndGet(index(hash, row), count);
+            if (updated < estimate) estimate = updated;
+        }
+        return estimate;
+    }
+
+    long estimate(String value) {
+        int hash = value.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long current = table.get(index(hash, row));
+            if (current < estimate) estimate = current;
+        }
+        return estimate;
+    }
+
+    /**
+     * 모든 칸을 절반으로 줄여 오래된 빈도의 영향을 감쇠
+     */
+    void decay() {
+        decay(1);
+    }
+
+    /**
+     * 모든 칸을 halvings 번 절반으로 줄임 (감쇠 주기를 여러 번 건너뛴 경우)
+     */
+    void decay(int halvings) {
+        int shift = Math.min(halvings, Long.SIZE - 1);
+        if (shift <= 0) return;
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) != 0) {
+                table.updateAndGet(i, count -> count >> shift);
+            }
+        }
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * 0x9E3779B9 + row * 0x85EBCA6B;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        return row * width + (h & mask);
+    }
+}
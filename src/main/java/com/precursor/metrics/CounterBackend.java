@@ -0,0 +1,42 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.SimpleCollector;
+
+import java.util.Locale;
+
+/**
+ * 이벤트 / 응답 카운터 저장 방식 (counterBackend 설정)
+ * SIMPLECLIENT: simpleclient Counter (child 마다 DoubleAdder)
+ * STRIPED: StripedCounter (라벨 조합 id + stripe 별 long 배열)
+ * 두 방식 모두 Counter.Child 를 돌려주므로 LabelChildCache, 체크포인트, 유휴 시리즈 제거는 그대로 동작한다.
+ */
+enum CounterBackend {
+    SIMPLECLIENT {
+        @Override
+        SimpleCollector<Counter.Child> create(String name, String help, String... labelNames) {
+            return Counter.build().name(name).help(help).labelNames(labelNames).create();
+        }
+    },
+    STRIPED {
+        @Override
+        SimpleCollector<Counter.Child> create(String name, String help, String... labelNames) {
+            return StripedCounter.build().name(name).help(help).labelNames(labelNames).create();
+        }
+    };
+
+    /**
+     * @return registry 에 등록하지 않은 라벨 카운터
+     */
+    abstract SimpleCollector<Counter.Child> create(String name, String help, String... labelNames);
+
+    static CounterBackend parse(String value) {
+        if (value == null) return SIMPLECLIENT;
+        return CounterBackend.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    static boolean isCounter(Collector collector) {
+        return collector instanceof Counter || collector instanceof StripedCounter;
+    }
+}
@@ -0,0 +1,394 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+import org.jboss.logging.Logger;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * 카운터 값을 메모리 맵 파일에 주기적으로 기록하고 재시작 시 복원
+ * 파일은 헤더 뒤에 같은 크기의 슬롯 두 개를 두고 번갈아 기록한다 (double buffering).
+ * 슬롯은 payload -> 길이/CRC -> generation 순서로 쓰고 각 단계 사이에 force 하므로,
+ * 기록 중 프로세스가 죽어도 다른 슬롯의 직전 체크포인트는 그대로 남는다.
+ *
+ * <pre>
+ * 파일 헤더 (16B): magic, version, slotBytes, reserved
+ * 슬롯 헤더 (24B): generation(8), payloadLength(4), recordCount(4), crc32c(4), reserved(4)
+ * 레코드: nameLength(2) name labelCount(1) [valueLength(2) value]* count(8, double)
+ * </pre>
+ * 문자열은 맵 버퍼에 바로 UTF-8 로 인코딩하므로 체크포인트마다 직렬화용 버퍼를 만들지 않는다.
+ * 비정상 종료 후에는 마지막 체크포인트 값으로 돌아가므로 Prometheus 는 이를 카운터 리셋으로 본다
+ * (복원된 시리즈의 _created 는 복원 시각).
+ */
+final class CounterCheckpoint {
+
+    private static final Logger LOGGER = Logger.getLogger(CounterCheckpoint.class);
+
+    private static final int MAGIC = 0x4B434D43; // "KCMC"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 16;
+    private static final int SLOT_HEADER_BYTES = 24;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final int OFFSET_GENERATION = 0;
+    private static final int OFFSET_LENGTH = 8;
+    private static final int OFFSET_COUNT = 12;
+    private static final int OFFSET_CRC = 16;
+
+    private final Path file;
+    private final int slotBytes;
+    private final long intervalSeconds;
+    private final PrometheusExporter exporter;
+
+    private final String[] labelValues = new String[4];
+    private final CRC32C crc = new CRC32C();
+    // checkpoint() 의 forEach 콜백 (매번 람다를 만들지 않도록 필드로 유지)
+    private final LabelChildCache.ChildVisitor<Counter.Child> writer = this::writeRecord;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private ScheduledExecutorService scheduler;
+    private long generation;
+
+    // 기록 중인 슬롯 상태 (체크포인트 스레드 전용)
+    private String currentName;
+    private int writeBase;
+    private int writePosition;
+    private int writeLimit;
+    private int recordCount;
+    private boolean truncated;
+    private boolean truncationLogged;
+
+    /**
+     * @param slotBytes 슬롯 하나의 크기 (파일 크기는 헤더 + 슬롯 2개)
+     */
+    CounterCheckpoint(Path file, int slotBytes, long intervalSeconds, PrometheusExporter exporter) {
+        this.file = file;
+        this.slotBytes = Math.max(slotBytes, SLOT_HEADER_BYTES + 64);
+        this.intervalSeconds = Math.max(1, intervalSeconds);
+        this.exporter = exporter;
+    }
+
+    /**
+     * 기존 체크포인트를 복원한 뒤 주기적인 기록 시작
+     */
+    synchronized void start() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            channel = raf.getChannel();
+            restore();
+            long fileBytes = FILE_HEADER_BYTES + 2L * slotBytes;
+            if (raf.length() != fileBytes) {
+                raf.setLength(0);
+                raf.setLength(fileBytes);
+            }
+            // 매핑은 채널을 닫아도 유지된다
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+            channel = null;
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slotBytes);
+        buffer.putInt(12, 0);
+        buffer.force();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        LOGGER.infof("Counter checkpointing started (file=%s, interval=%ds, slotBytes=%d)", file, intervalSeconds, slotBytes);
+    }
+
+    /**
+     * 예약된 기록을 멈추고 마지막 체크포인트를 남긴 뒤 파일 매핑 해제
+     */
+    void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        checkpointQuietly();
+        synchronized (this) {
+            if (buffer != null) {
+                unmap(buffer);
+                buffer = null;
+            }
+        }
+        LOGGER.info("Counter checkpointing stopped.");
+    }
+
+    /**
+     * 매핑은 GC 가 버퍼를 회수할 때까지 남으므로 (팩토리 재초기화 때 같은 파일이 두 번 매핑됨) 바로 해제
+     * 해제 뒤에는 버퍼에 접근하지 않아야 한다.
+     */
+    private static void unmap(ByteBuffer mapped) {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            ((Unsafe) field.get(null)).invokeCleaner(mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debugf("Could not unmap counter checkpoint buffer, leaving it to GC: %s", e.toString());
+        }
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to write counter checkpoint", e);
+        }
+    }
+
+    /**
+     * 현재 카운터 값을 비활성 슬롯에 기록하고 활성 슬롯으로 전환
+     */
+    synchronized void checkpoint() {
+        if (buffer == null) return;
+
+        long nextGeneration = generation + 1;
+        int slot = FILE_HEADER_BYTES + (int) (nextGeneration & 1) * slotBytes;
+
+        // 기록이 끝나기 전에는 이 슬롯이 유효하게 보이지 않도록 generation 부터 지움
+        buffer.putLong(slot + OFFSET_GENERATION, 0L);
+
+        writeBase = slot + SLOT_HEADER_BYTES;
+        writePosition = writeBase;
+        writeLimit = slot + slotBytes;
+        recordCount = 0;
+        truncated = false;
+
+        for (LabelChildCache<Counter.Child> counter : exporter.globalCounters()) {
+            writeFamily(counter);
+        }
+        for (RealmMetrics shard : exporter.shards()) {
+            for (LabelChildCache<Counter.Child> counter : shard.counters()) {
+                writeFamily(counter);
+            }
+        }
+
+        int length = writePosition - writeBase;
+        buffer.putInt(slot + OFFSET_LENGTH, length);
+        buffer.putInt(slot + OFFSET_COUNT, recordCount);
+        buffer.putInt(slot + OFFSET_CRC, checksum(writeBase, length));
+        buffer.force();
+
+        buffer.putLong(slot + OFFSET_GENERATION, nextGeneration);
+        buffer.force();
+        generation = nextGeneration;
+
+        if (truncated && !truncationLogged) {
+            truncationLogged = true;
+            LOGGER.warnf("Counter checkpoint exceeded %d bytes, remaining series were not saved", slotBytes);
+        }
+    }
+
+    private void writeFamily(LabelChildCache<Counter.Child> counter) {
+        if (truncated) return;
+        currentName = counter.name();
+        counter.forEach(labelValues, writer);
+    }
+
+    private void writeRecord(String[] values, int labelCount, Counter.Child child) {
+        if (truncated) return;
+        int start = writePosition;
+        if (!writeString(currentName) || !writeByte(labelCount)) {
+            rollback(start);
+            return;
+        }
+        for (int i = 0; i < labelCount; i++) {
+            if (!writeString(values[i])) {
+                rollback(start);
+                return;
+            }
+        }
+        if (writeLimit - writePosition < Double.BYTES) {
+            rollback(start);
+            return;
+        }
+        buffer.putDouble(writePosition, child.get());
+        writePosition += Double.BYTES;
+        recordCount++;
+    }
+
+    private void rollback(int start) {
+        writePosition = start;
+        truncated = true;
+    }
+
+    private boolean writeByte(int value) {
+        if (writePosition >= writeLimit) return false;
+        buffer.put(writePosition++, (byte) value);
+        return true;
+    }
+
+    /**
+     * 길이(2B) + UTF-8 바이트
+     */
+    private boolean writeString(String value) {
+        int lengthPosition = writePosition;
+        if (writeLimit - lengthPosition < 2) return false;
+        int position = lengthPosition + 2;
+        for (int i = 0; i < value.length(); i++) {
+            int cp = value.charAt(i);
+            if (Character.isHighSurrogate((char) cp) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                cp = Character.toCodePoint((char) cp, value.charAt(++i));
+            } else if (Character.isSurrogate((char) cp)) {
+                cp = '?';
+            }
+            if (writeLimit - position < 4) return false;
+            if (cp < 0x80) {
+                buffer.put(position++, (byte) cp);
+            } else if (cp < 0x800) {
+                buffer.put(position++, (byte) (0xC0 | (cp >> 6)));
+                buffer.put(position++, (byte) (0x80 | (cp & 0x3F)));
+            } else if (cp < 0x10000) {
+                buffer.put(position++, (byte) (0xE0 | (cp >> 12)));
+                buffer.put(position++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (cp & 0x3F)));
+            } else {
+                buffer.put(position++, (byte) (0xF0 | (cp >> 18)));
+                buffer.put(position++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (cp & 0x3F)));
+            }
+        }
+        int length = position - lengthPosition - 2;
+        if (length > MAX_STRING_BYTES) return false;
+        buffer.putShort(lengthPosition, (short) length);
+        writePosition = position;
+        return true;
+    }
+
+    private int checksum(int offset, int length) {
+        crc.reset();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    // === 복원 ===
+
+    /**
+     * 두 슬롯 중 CRC 가 맞는 최신 슬롯의 값을 카운터에 더한다
+     */
+    private void restore() throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_BYTES) return;
+
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        try {
+            restore(mapped, size);
+        } finally {
+            unmap(mapped);
+        }
+    }
+
+    private void restore(ByteBuffer mapped, long size) {
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            LOGGER.warnf("Ignoring unrecognized counter checkpoint file %s", file);
+            return;
+        }
+        int storedSlotBytes = mapped.getInt(8);
+        if (storedSlotBytes <= SLOT_HEADER_BYTES || FILE_HEADER_BYTES + 2L * storedSlotBytes > size) {
+            LOGGER.warnf("Ignoring truncated counter checkpoint file %s", file);
+            return;
+        }
+
+        int best = -1;
+        long bestGeneration = 0;
+        for (int i = 0; i < 2; i++) {
+            int slot = FILE_HEADER_BYTES + i * storedSlotBytes;
+            long slotGeneration = mapped.getLong(slot + OFFSET_GENERATION);
+            if (slotGeneration > bestGeneration && isValid(mapped, slot, storedSlotBytes)) {
+                best = slot;
+                bestGeneration = slotGeneration;
+            }
+        }
+        if (best < 0) {
+            LOGGER.warnf("No valid slot in counter checkpoint file %s", file);
+            return;
+        }
+
+        int restored = restoreSlot(mapped, best);
+        generation = bestGeneration;
+        LOGGER.infof("Restored %d counter series from checkpoint generation %d", restored, bestGeneration);
+    }
+
+    private boolean isValid(ByteBuffer mapped, int slot, int storedSlotBytes) {
+        int length = mapped.getInt(slot + OFFSET_LENGTH);
+        if (length < 0 || length > storedSlotBytes - SLOT_HEADER_BYTES) return false;
+        crc.reset();
+        crc.update(mapped.slice(slot + SLOT_HEADER_BYTES, length));
+        return (int) crc.getValue() == mapped.getInt(slot + OFFSET_CRC);
+    }
+
+    private record StoredSeries(String name, String[] labelValues, double value) {}
+
+    private int restoreSlot(ByteBuffer mapped, int slot) {
+        int length = mapped.getInt(slot + OFFSET_LENGTH);
+        int count = mapped.getInt(slot + OFFSET_COUNT);
+        ByteBuffer in = mapped.slice(slot + SLOT_HEADER_BYTES, length);
+        String[] values = new String[4];
+        List<StoredSeries> stored = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            int labelCount = in.get() & 0xFF;
+            for (int j = 0; j < labelCount; j++) {
+                String value = readString(in);
+                if (j < values.length) values[j] = value;
+            }
+            double value = in.getDouble();
+            if (labelCount == 0 || labelCount > values.length || value <= 0) continue;
+            stored.add(new StoredSeries(name, Arrays.copyOf(values, labelCount), value));
+        }
+
+        // 값이 큰 시리즈부터 카디널리티 제한기에 심어, 제한이 줄었을 때도 파일 순서와 무관하게 같은 값이 남도록 함
+        stored.sort(Comparator.comparingDouble(StoredSeries::value).reversed());
+        int restored = 0;
+        for (StoredSeries series : stored) {
+            LabelChildCache<Counter.Child> counter = exporter.counterFamily(series.name(), series.labelValues()[0]);
+            if (counter == null) {
+                LOGGER.debugf("Skipping checkpointed series of unknown counter %s", series.name());
+                continue;
+            }
+            counter.restore(series.labelValues(), series.labelValues().length, (long) series.value())
+                    .inc(series.value());
+            restored++;
+        }
+        return restored;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
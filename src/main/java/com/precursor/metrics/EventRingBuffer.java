@@ -0,0 +1,139 @@
+package com.precursor.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 이벤트 필드를 미리 할당된 슬롯에 복사해 두는 bounded lock-free MPSC 링 버퍼
+ * (여러 요청 스레드가 offer, 단일 drain 스레드가 drain)
+ */
+final class EventRingBuffer {
+
+    static final byte KIND_USER = 1;
+    static final byte KIND_ADMIN = 2;
+    // 삭제된 realm 의 샤드 제거 (realm 필드만 사용)
+    static final byte KIND_REMOVE_REALM = 3;
+
+    /**
+     * drain 스레드가 슬롯 내용을 넘겨받는 콜백
+     */
+    interface Sink {
+        void accept(byte kind, int type, String realm, String provider, String clientId, String error,
+                    long sessionKey, long time, String ipAddress, String username);
+    }
+
+    private final int capacity;
+    private final int mask;
+
+    // 슬롯별 시퀀스: pos 이면 쓰기 가능, pos + 1 이면 읽기 가능
+    private final AtomicLongArray sequences;
+
+    private final byte[] kinds;
+    private final int[] types;
+    private final String[] realms;
+    private final String[] providers;
+    private final String[] clientIds;
+    private final String[] errors;
+    private final long[] sessionKeys;
+    private final long[] times;
+    private final String[] ipAddresses;
+    private final String[] usernames;
+
+    private final AtomicLong tail = new AtomicLong();
+    // drain 스레드 전용 커서
+    private volatile long head;
+
+    EventRingBuffer(int requestedCapacity) {
+        this.capacity = roundUpToPowerOfTwo(requestedCapacity);
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.kinds = new byte[capacity];
+        this.types = new int[capacity];
+        this.realms = new String[capacity];
+        this.providers = new String[capacity];
+        this.clientIds = new String[capacity];
+        this.errors = new String[capacity];
+        this.sessionKeys = new long[capacity];
+        this.times = new long[capacity];
+        this.ipAddresses = new String[capacity];
+        this.usernames = new String[capacity];
+    }
+
+    /**
+     * @return 버퍼가 가득 차서 넣지 못하면 false
+     */
+    boolean offer(byte kind, int type, String realm, String provider, String clientId, String error,
+                  long sessionKey, long time, String ipAddress, String username) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    kinds[index] = kind;
+                    types[index] = type;
+                    realms[index] = realm;
+                    providers[index] = provider;
+                    clientIds[index] = clientId;
+                    errors[index] = error;
+                    sessionKeys[index] = sessionKey;
+                    times[index] = time;
+                    ipAddresses[index] = ipAddress;
+                    usernames[index] = username;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 최대 maxBatch 개의 슬롯을 sink 로 넘긴다. drain 스레드에서만 호출해야 한다.
+     */
+    int drain(Sink sink, int maxBatch) {
+        long pos = head;
+        int drained = 0;
+        while (drained < maxBatch) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                break;
+            }
+            sink.accept(kinds[index], types[index], realms[index], providers[index], clientIds[index], errors[index],
+                    sessionKeys[index], times[index], ipAddresses[index], usernames[index]);
+            realms[index] = null;
+            providers[index] = null;
+            clientIds[index] = null;
+            errors[index] = null;
+            ipAddresses[index] = null;
+            usernames[index] = null;
+            sequences.set(index, pos + capacity);
+            pos++;
+            drained++;
+        }
+        head = pos;
+        return drained;
+    }
+
+    int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        if (value < 2) return 2;
+        if (value > (1 << 30)) return 1 << 30;
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,357 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+import org.jboss.logging.Logger;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 이벤트를 로컬 파일에 구조화된 레코드로 남기는 비동기 탭 (요청마다 INFO 로그를 찍는 대신 사용)
+ * 요청 스레드는 샘플링/상한을 통과한 이벤트의 필드만 복사해 큐에 넣고,
+ * 단일 writer 스레드가 NDJSON 또는 길이 접두 바이너리로 기록하며 파일 크기에 따라 회전한다.
+ * 큐가 가득 차면 기다리지 않고 버린다.
+ */
+final class EventTap {
+
+    private static final Logger LOGGER = Logger.getLogger(EventTap.class);
+
+    private static final int BINARY_MAGIC = 0x4B434554; // "KCET"
+    private static final short BINARY_VERSION = 1;
+    private static final int MAX_STRING_CHARS = 8192;
+    private static final int WRITE_BATCH_SIZE = 256;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long POLL_MILLIS = 200;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 파일 포맷
+     * NDJSON: 한 줄에 JSON 객체 하나
+     * BINARY: 파일 머리 (magic, version) 뒤에 [int 길이][레코드] 반복, 문자열은 DataOutput.writeUTF (없으면 presence 0)
+     */
+    enum Format {
+        NDJSON("ndjson"),
+        BINARY("bin");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        static Format parse(String value) {
+            if (value == null) return NDJSON;
+            return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * 요청 스레드에서 복사한 이벤트 필드
+     */
+    record Entry(long time, EventType type, String realmId, String clientId, String userId, String sessionId,
+                 String ipAddress, String error, Map<String, String> details) {
+
+        static Entry of(Event event) {
+            Map<String, String> details = event.getDetails();
+            return new Entry(event.getTime(), event.getType(), event.getRealmId(), event.getClientId(),
+                    event.getUserId(), event.getSessionId(), event.getIpAddress(), event.getError(),
+                    details == null || details.isEmpty() ? Map.of() : new HashMap<>(details));
+        }
+    }
+
+    private final Path directory;
+    private final Format format;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final EventTapSampler sampler;
+    private final ArrayBlockingQueue<Entry> queue;
+    private final Counter.Child rateLimited;
+    private final Counter.Child queueFull;
+    private final Counter.Child writeErrors;
+    private final Thread writerThread;
+
+    // writer 스레드 전용
+    private final StringBuilder line = new StringBuilder(512);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(512);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private DataOutputStream out;
+    // 이어 쓰기로 연 파일에 이미 있던 바이트 수 (out.size() 는 이번에 연 뒤 쓴 양만 센다)
+    private long existingBytes;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param directory 기록할 디렉터리 (없으면 생성)
+     * @param maxFileBytes 현재 파일이 이 크기를 넘으면 회전
+     * @param maxFiles 회전된 파일을 몇 개까지 남길지 (events.ndjson.1 .. .maxFiles)
+     */
+    EventTap(Path directory, Format format, long maxFileBytes, int maxFiles, int queueSize,
+             EventTapSampler sampler, PrometheusExporter exporter) {
+        this.directory = directory;
+        this.format = format;
+        // DataOutputStream.size() 가 int 이므로 2 GiB 미만으로 제한
+        this.maxFileBytes = Math.max(BUFFER_SIZE, Math.min(maxFileBytes, Integer.MAX_VALUE - BUFFER_SIZE));
+        this.maxFiles = Math.max(0, maxFiles);
+        this.sampler = sampler;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.rateLimited = exporter.eventTapDrops("rate_limited");
+        this.queueFull = exporter.eventTapDrops("queue_full");
+        this.writeErrors = exporter.eventTapDrops("write_error");
+        this.writerThread = new Thread(this::writeLoop, "metrics-event-tap");
+        this.writerThread.setDaemon(true);
+    }
+
+    void start() throws IOException {
+        Files.createDirectories(directory);
+        // 이전 실행이 남긴 파일은 덮어쓰지 않고 먼저 회전 (실패하면 그 뒤에 이어서 기록)
+        Path previous = currentFile();
+        if (Files.exists(previous) && Files.size(previous) > 0) {
+            try {
+                shiftFiles();
+            } catch (IOException e) {
+                LOGGER.warnf("Failed to rotate previous event tap file %s, appending to it: %s", previous, e.getMessage());
+            }
+        }
+        out = open();
+        writerThread.start();
+        LOGGER.infof("Event tap started (file=%s, maxFileBytes=%d, maxFiles=%d)", currentFile(), maxFileBytes, maxFiles);
+    }
+
+    /**
+     * 요청 스레드에서 호출: 샘플링에 뽑히고 상한 안이면 큐에 넣는다
+     */
+    void offer(Event event) {
+        if (!sampler.sampled(event.getType())) return;
+        if (!sampler.acquire(System.currentTimeMillis())) {
+            rateLimited.inc();
+            return;
+        }
+        if (!queue.offer(Entry.of(event))) {
+            queueFull.inc();
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        closeQuietly();
+    }
+
+    private void write(List<Entry> batch) {
+        for (Entry entry : batch) {
+            try {
+                if (format == Format.NDJSON) {
+                    writeJson(entry);
+                } else {
+                    writeBinary(entry);
+                }
+                if (existingBytes + out.size() >= maxFileBytes) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                writeErrors.inc();
+                LOGGER.debugf(e, "Failed to write tapped event");
+            }
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            LOGGER.warnf("Failed to flush event tap file %s: %s", currentFile(), e.getMessage());
+        }
+    }
+
+    private void writeJson(Entry entry) throws IOException {
+        line.setLength(0);
+        line.append("{\"time\":").append(entry.time())
+                .append(",\"type\":\"").append(entry.type().name()).append('"');
+        jsonField("realmId", entry.realmId());
+        jsonField("clientId", entry.clientId());
+        jsonField("userId", entry.userId());
+        jsonField("sessionId", entry.sessionId());
+        jsonField("ipAddress", entry.ipAddress());
+        jsonField("error", entry.error());
+        if (!entry.details().isEmpty()) {
+            line.append(",\"details\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> detail : entry.details().entrySet()) {
+                if (!first) line.append(',');
+                first = false;
+                jsonString(detail.getKey());
+                line.append(':');
+                if (detail.getValue() == null) {
+                    line.append("null");
+                } else {
+                    jsonString(detail.getValue());
+                }
+            }
+            line.append('}');
+        }
+        line.append("}\n");
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void jsonField(String name, String value) {
+        if (value == null) return;
+        line.append(",\"").append(name).append("\":");
+        jsonString(value);
+    }
+
+    private void jsonString(String value) {
+        line.append('"');
+        int length = Math.min(value.length(), MAX_STRING_CHARS);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    private void writeBinary(Entry entry) throws IOException {
+        record.reset();
+        recordOut.writeLong(entry.time());
+        recordOut.writeUTF(entry.type().name());
+        binaryString(entry.realmId());
+        binaryString(entry.clientId());
+        binaryString(entry.userId());
+        binaryString(entry.sessionId());
+        binaryString(entry.ipAddress());
+        binaryString(entry.error());
+        recordOut.writeShort(Math.min(entry.details().size(), Short.MAX_VALUE));
+        int written = 0;
+        for (Map.Entry<String, String> detail : entry.details().entrySet()) {
+            if (written++ == Short.MAX_VALUE) break;
+            binaryString(detail.getKey());
+            binaryString(detail.getValue());
+        }
+        out.writeInt(record.size());
+        record.writeTo(out);
+    }
+
+    private void binaryString(String value) throws IOException {
+        if (value == null) {
+            recordOut.writeByte(0);
+            return;
+        }
+        recordOut.writeByte(1);
+        // writeUTF 는 64KB 까지만 허용
+        recordOut.writeUTF(value.length() > MAX_STRING_CHARS ? value.substring(0, MAX_STRING_CHARS) : value);
+    }
+
+    private Path currentFile() {
+        return directory.resolve("events." + format.extension);
+    }
+
+    private Path rotatedFile(int index) {
+        return directory.resolve("events." + format.extension + "." + index);
+    }
+
+    /**
+     * 현재 파일을 이어 쓰기로 연다 (회전에 성공했다면 파일이 없으므로 새로 만들어진다)
+     * BINARY 는 빈 파일일 때만 머리를 쓴다.
+     */
+    private DataOutputStream open() throws IOException {
+        Path file = currentFile();
+        long existing = Files.exists(file) ? Files.size(file) : 0;
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                BUFFER_SIZE));
+        if (format == Format.BINARY && existing == 0) {
+            stream.writeInt(BINARY_MAGIC);
+            stream.writeShort(BINARY_VERSION);
+        }
+        existingBytes = existing;
+        return stream;
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        try {
+            shiftFiles();
+        } finally {
+            // 회전에 실패하면 남아 있는 현재 파일 뒤에 이어서 기록
+            out = open();
+        }
+    }
+
+    /**
+     * events.x -> events.x.1 -> ... -> events.x.maxFiles (가장 오래된 파일은 삭제)
+     */
+    private void shiftFiles() throws IOException {
+        if (maxFiles == 0) {
+            Files.deleteIfExists(currentFile());
+            return;
+        }
+        Files.deleteIfExists(rotatedFile(maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = rotatedFile(i);
+            if (Files.exists(source)) {
+                Files.move(source, rotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(currentFile(), rotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void closeQuietly() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOGGER.warnf("Failed to close event tap file %s: %s", currentFile(), e.getMessage());
+        }
+    }
+
+    /**
+     * 큐에 남은 이벤트까지 기록하고 writer 스레드 종료
+     * (FileChannel 이 interrupt 로 닫히므로 깨우지 않고 poll 주기 안에 끝나기를 기다림)
+     */
+    void close() {
+        running = false;
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Event tap stopped.");
+    }
+}
@@ -0,0 +1,71 @@
+package com.precursor.metrics;
+
+import org.keycloak.events.EventType;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 이벤트 탭에 남길 이벤트를 고르는 타입별 샘플링 + 초당 상한
+ * 요청 스레드에서 호출되므로 할당 없이 배열 조회와 CAS 한 번으로 끝난다.
+ */
+final class EventTapSampler {
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    // EventType ordinal -> 샘플링 비율 (0..1)
+    private final double[] rates;
+    // 0 이면 상한 없음
+    private final int maxPerSecond;
+    // (epoch 초 << 32) | 이번 초에 통과한 수
+    private final AtomicLong window = new AtomicLong();
+
+    /**
+     * @param defaultRate sampleRates 에 없는 타입의 비율
+     * @param sampleRates "LOGIN=0.1,REFRESH_TOKEN=0.01" 형식 (null 이면 모두 defaultRate)
+     * @param maxPerSecond 초당 최대 기록 수 (0 이면 상한 없음)
+     */
+    EventTapSampler(double defaultRate, String sampleRates, int maxPerSecond) {
+        this.rates = new double[EventType.values().length];
+        Arrays.fill(rates, clamp(defaultRate));
+        if (sampleRates != null && !sampleRates.isBlank()) {
+            for (String entry : sampleRates.split(",")) {
+                int eq = entry.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected TYPE=rate but got '" + entry.trim() + "'");
+                }
+                EventType type = EventType.valueOf(entry.substring(0, eq).trim().toUpperCase(Locale.ROOT));
+                rates[type.ordinal()] = clamp(Double.parseDouble(entry.substring(eq + 1).trim()));
+            }
+        }
+        this.maxPerSecond = Math.max(0, maxPerSecond);
+    }
+
+    private static double clamp(double rate) {
+        return Math.max(0.0, Math.min(1.0, rate));
+    }
+
+    /**
+     * @return 샘플링에 뽑혔는지 (상한은 따로 acquire 로 확인)
+     */
+    boolean sampled(EventType type) {
+        double rate = rates[type.ordinal()];
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * @return 이번 초의 상한 안이면 true
+     */
+    boolean acquire(long nowMillis) {
+        if (maxPerSecond == 0) return true;
+        long second = nowMillis / 1000;
+        while (true) {
+            long current = window.get();
+            long count = (current >>> 32) == second ? current & COUNT_MASK : 0;
+            if (count >= maxPerSecond) return false;
+            if (window.compareAndSet(current, (second << 32) | (count + 1))) return true;
+        }
+    }
+}
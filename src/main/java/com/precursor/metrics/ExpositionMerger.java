@@ -0,0 +1,260 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * text 0.0.4 exposition 을 줄 단위로 읽어 시리즈별 값으로 합치는 Writer
+ * 로컬 렌더링(TextFormat.write004)과 peer 응답 스트림을 같은 경로로 흘려 넣으므로 전체 텍스트를 들고 있지 않는다.
+ * counter / histogram (및 summary 의 _count, _sum) 은 더하고, _created 는 가장 이른 값,
+ * 그 외 (gauge, summary quantile, untyped) 는 먼저 들어온 값을 유지한다.
+ */
+final class ExpositionMerger extends Writer {
+
+    private static final class Family {
+        final String name;
+        String help;
+        String type;
+        // 시리즈 키 (이름 + 라벨, 끝 쉼표 제외) -> 값
+        final LinkedHashMap<String, double[]> series = new LinkedHashMap<>();
+
+        Family(String name) {
+            this.name = name;
+        }
+    }
+
+    private final LinkedHashMap<String, Family> families = new LinkedHashMap<>();
+    private final StringBuilder line = new StringBuilder(256);
+    // 마지막 # TYPE 줄의 family (그 뒤의 샘플이 속하는 family)
+    private Family current;
+
+    @Override
+    public void write(char[] chars, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                parseLine();
+                line.setLength(0);
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    /**
+     * 줄바꿈 없이 끝난 마지막 줄까지 반영하고 다음 입력을 새 exposition 으로 취급
+     */
+    @Override
+    public void flush() {
+        if (line.length() > 0) {
+            parseLine();
+            line.setLength(0);
+        }
+        current = null;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void parseLine() {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(--length);
+        }
+        if (length == 0) return;
+
+        if (line.charAt(0) == '#') {
+            parseComment();
+            return;
+        }
+
+        int nameEnd = 0;
+        while (nameEnd < length && line.charAt(nameEnd) != '{' && line.charAt(nameEnd) != ' ') nameEnd++;
+        int keyEnd = nameEnd;
+        if (keyEnd < length && line.charAt(keyEnd) == '{') {
+            keyEnd = labelsEnd(keyEnd + 1);
+            if (keyEnd < 0) return;
+        }
+        int valueStart = keyEnd;
+        while (valueStart < length && line.charAt(valueStart) == ' ') valueStart++;
+        int valueEnd = valueStart;
+        while (valueEnd < length && line.charAt(valueEnd) != ' ') valueEnd++;
+        if (valueStart == valueEnd) return;
+
+        double value;
+        try {
+            value = parseValue(line.substring(valueStart, valueEnd));
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        String sampleName = line.substring(0, nameEnd);
+        Family family = current != null && belongsTo(current, sampleName) ? current : family(sampleName);
+        merge(family, seriesKey(nameEnd, keyEnd), value);
+    }
+
+    /**
+     * 이름이 family 이름으로 시작하는 것만으로는 부족하다 (TYPE 줄 없는 foo_ratio 가 counter foo 에 섞여 더해짐)
+     * family 이름 그대로이거나 타입이 붙이는 접미사일 때만 같은 family 로 본다.
+     */
+    private static boolean belongsTo(Family family, String sampleName) {
+        if (!sampleName.startsWith(family.name)) return false;
+        String suffix = sampleName.substring(family.name.length());
+        if (suffix.isEmpty()) return true;
+        return switch (family.type == null ? "untyped" : family.type) {
+            case "counter" -> suffix.equals("_total") || suffix.equals("_created");
+            case "histogram" -> suffix.equals("_bucket") || suffix.equals("_count") || suffix.equals("_sum")
+                    || suffix.equals("_created");
+            case "summary" -> suffix.equals("_count") || suffix.equals("_sum") || suffix.equals("_created");
+            case "gauge" -> suffix.equals("_info");
+            default -> false;
+        };
+    }
+
+    /**
+     * @return 라벨을 닫는 '}' 다음 위치, 닫히지 않았으면 -1
+     */
+    private int labelsEnd(int from) {
+        boolean quoted = false;
+        for (int i = from; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '\\') i++;
+                else if (c == '"') quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == '}') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * a{x="1",} 와 a{x="1"} 를 같은 시리즈로 취급
+     */
+    private String seriesKey(int nameEnd, int keyEnd) {
+        if (keyEnd - nameEnd >= 3 && line.charAt(keyEnd - 2) == ',') {
+            return line.substring(0, keyEnd - 2) + '}';
+        }
+        if (keyEnd - nameEnd == 2) {
+            return line.substring(0, nameEnd);
+        }
+        return line.substring(0, keyEnd);
+    }
+
+    private void parseComment() {
+        // "# HELP name text" / "# TYPE name type"
+        if (line.length() < 7 || line.charAt(1) != ' ') return;
+        boolean help = line.indexOf("HELP ", 2) == 2;
+        boolean type = line.indexOf("TYPE ", 2) == 2;
+        if (!help && !type) return;
+
+        int nameEnd = line.indexOf(" ", 7);
+        String name = line.substring(7, nameEnd < 0 ? line.length() : nameEnd);
+        String text = nameEnd < 0 ? "" : line.substring(nameEnd + 1);
+        Family family = family(name);
+        if (help) {
+            if (family.help == null) family.help = text;
+        } else {
+            if (family.type == null) family.type = text;
+            current = family;
+        }
+    }
+
+    private Family family(String name) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(name);
+            families.put(name, family);
+        }
+        return family;
+    }
+
+    private static void merge(Family family, String key, double value) {
+        double[] existing = family.series.get(key);
+        if (existing == null) {
+            family.series.put(key, new double[]{value});
+        } else if (key.startsWith("_created", family.name.length()) || family.name.endsWith("_created")) {
+            existing[0] = Math.min(existing[0], value);
+        } else if (summed(family, key)) {
+            existing[0] += value;
+        }
+    }
+
+    private static boolean summed(Family family, String key) {
+        if ("counter".equals(family.type) || "histogram".equals(family.type)) return true;
+        return "summary".equals(family.type)
+                && (key.startsWith("_count", family.name.length()) || key.startsWith("_sum", family.name.length()));
+    }
+
+    private static double parseValue(String value) {
+        return switch (value) {
+            case "+Inf" -> Double.POSITIVE_INFINITY;
+            case "-Inf" -> Double.NEGATIVE_INFINITY;
+            case "NaN" -> Double.NaN;
+            default -> Double.parseDouble(value);
+        };
+    }
+
+    /**
+     * 다른 merger 에 모은 시리즈를 합침
+     */
+    void addAll(ExpositionMerger other) {
+        for (Family source : other.families.values()) {
+            Family family = family(source.name);
+            if (family.help == null) family.help = source.help;
+            if (family.type == null) family.type = source.type;
+            for (Map.Entry<String, double[]> entry : source.series.entrySet()) {
+                merge(family, entry.getKey(), entry.getValue()[0]);
+            }
+        }
+    }
+
+    /**
+     * 라벨 하나짜리 gauge 시리즈 추가
+     */
+    void addGauge(String name, String help, String labelName, String labelValue, double value) {
+        Family family = family(name);
+        if (family.help == null) family.help = help;
+        if (family.type == null) family.type = "gauge";
+        merge(family, name + '{' + labelName + "=\"" + escapeLabelValue(labelValue) + "\"}", value);
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * 합친 결과를 text 0.0.4 로 기록
+     */
+    void writeTo(Writer out) throws IOException {
+        for (Family family : families.values()) {
+            if (family.series.isEmpty()) continue;
+            if (family.help != null) {
+                out.write("# HELP ");
+                out.write(family.name);
+                out.write(' ');
+                out.write(family.help);
+                out.write('\n');
+            }
+            out.write("# TYPE ");
+            out.write(family.name);
+            out.write(' ');
+            out.write(family.type != null ? family.type : "untyped");
+            out.write('\n');
+            for (Map.Entry<String, double[]> entry : family.series.entrySet()) {
+                out.write(entry.getKey());
+                out.write(' ');
+                out.write(Collector.doubleToGoString(entry.getValue()[0]));
+                out.write('\n');
+            }
+        }
+    }
+}
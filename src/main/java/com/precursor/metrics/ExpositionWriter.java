@@ -0,0 +1,127 @@
+package com.precursor.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * exposition 출력을 재사용 버퍼에서 바로 UTF-8 로 인코딩해 OutputStream 으로 흘려보내는 Writer
+ * scrape 마다 전체 텍스트를 String 으로 만들지 않기 위해 사용하며, 버퍼는 작은 풀에서 재사용한다.
+ */
+final class ExpositionWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int POOL_SIZE = 8;
+    private static final ArrayBlockingQueue<ExpositionWriter> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private char highSurrogate;
+    private OutputStream out;
+
+    private ExpositionWriter() {}
+
+    static ExpositionWriter acquire(OutputStream out) {
+        ExpositionWriter writer = POOL.poll();
+        if (writer == null) {
+            writer = new ExpositionWriter();
+        }
+        writer.out = out;
+        writer.position = 0;
+        writer.highSurrogate = 0;
+        return writer;
+    }
+
+    /**
+     * 대상 스트림과의 연결을 끊고 풀에 반환 (대상 스트림은 닫지 않음)
+     */
+    void release() {
+        out = null;
+        position = 0;
+        POOL.offer(this);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            encode(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            encode(str.charAt(i));
+        }
+    }
+
+    private void encode(char c) throws IOException {
+        if (c < 0x80 && highSurrogate == 0) {
+            if (position == buffer.length) flushBuffer();
+            buffer[position++] = (byte) c;
+            return;
+        }
+        // 서로게이트 쌍은 write 호출 경계를 넘어 나뉘어 들어올 수 있음
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                writeCodePoint(Character.toCodePoint(high, c));
+                return;
+            }
+            writeCodePoint('?');
+        }
+        if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else {
+            writeCodePoint(Character.isLowSurrogate(c) ? '?' : c);
+        }
+    }
+
+    private void writeCodePoint(int cp) throws IOException {
+        if (buffer.length - position < 4) flushBuffer();
+        if (cp < 0x80) {
+            buffer[position++] = (byte) cp;
+        } else if (cp < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (cp >> 6));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            buffer[position++] = (byte) (0xE0 | (cp >> 12));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            buffer[position++] = (byte) (0xF0 | (cp >> 18));
+            buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            writeCodePoint('?');
+        }
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
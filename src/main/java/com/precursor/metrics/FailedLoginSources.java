@@ -0,0 +1,90 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * realm 하나의 로그인 실패 상위 IP / username (credential stuffing 추적용)
+ * IP 와 username (오타 난 비밀번호가 들어 있기도 함) 자체는 인증된 /metrics/offenders 에서만 돌려주고,
+ * scrape 에는 값 없이 종류별 집계 (가장 많은 source 의 실패 수, 상위 topK 합계) 만 stats() 로 노출한다.
+ */
+final class FailedLoginSources {
+
+    static final String KIND_IP = "ip";
+    static final String KIND_USERNAME = "username";
+
+    private static final List<String> LABEL_NAMES = Arrays.asList("realm", "kind");
+
+    private final String realm;
+    private volatile HeavyHitterTracker ipAddresses;
+    private volatile HeavyHitterTracker usernames;
+
+    /**
+     * @param topK 종류별 상위 몇 개를 유지할지 (0 이면 사용 안 함)
+     */
+    FailedLoginSources(String realm, int topK, long decaySeconds) {
+        this.realm = realm;
+        configure(topK, decaySeconds);
+    }
+
+    void configure(int topK, long decaySeconds) {
+        ipAddresses = topK > 0 ? new HeavyHitterTracker(topK, decaySeconds) : null;
+        usernames = topK > 0 ? new HeavyHitterTracker(topK, decaySeconds) : null;
+    }
+
+    void record(String ipAddress, String username) {
+        HeavyHitterTracker ips = ipAddresses;
+        HeavyHitterTracker users = usernames;
+        if (ips != null) ips.record(ipAddress);
+        if (users != null) users.record(username);
+    }
+
+    List<HeavyHitterTracker.Entry> topIpAddresses() {
+        HeavyHitterTracker ips = ipAddresses;
+        return ips != null ? ips.snapshot() : List.of();
+    }
+
+    List<HeavyHitterTracker.Entry> topUsernames() {
+        HeavyHitterTracker users = usernames;
+        return users != null ? users.snapshot() : List.of();
+    }
+
+    /**
+     * @return source 값 라벨 없이 집계만 내보내는 collector
+     */
+    Collector stats() {
+        return new Collector() {
+            @Override
+            public List<MetricFamilySamples> collect() {
+                GaugeMetricFamily max = new GaugeMetricFamily(
+                        "keycloak_failed_login_max_source_failures",
+                        "Estimated recent failed logins of the single most frequent source IP or username (decays over time)",
+                        LABEL_NAMES);
+                GaugeMetricFamily topK = new GaugeMetricFamily(
+                        "keycloak_failed_login_top_k_failures",
+                        "Estimated recent failed logins summed over the most frequent source IPs or usernames (decays over time)",
+                        LABEL_NAMES);
+                addAggregates(max, topK, KIND_IP, topIpAddresses());
+                addAggregates(max, topK, KIND_USERNAME, topUsernames());
+                return List.of(max, topK);
+            }
+        };
+    }
+
+    private void addAggregates(GaugeMetricFamily max, GaugeMetricFamily topK, String kind,
+                               List<HeavyHitterTracker.Entry> entries) {
+        if (entries.isEmpty()) return;
+        long sum = 0;
+        long highest = 0;
+        for (HeavyHitterTracker.Entry entry : entries) {
+            sum += entry.count();
+            highest = Math.max(highest, entry.count());
+        }
+        List<String> labelValues = Arrays.asList(realm, kind);
+        max.addMetric(labelValues, highest);
+        topK.addMetric(labelValues, sum);
+    }
+}
@@ -0,0 +1,120 @@
+package com.precursor.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 고정 메모리로 빈도 상위 K 개 값을 추적 (count-min sketch + top-K)
+ * 빈도는 sketch 에만 누적하고 top-K 는 멤버십만 유지하므로, 이미 상위에 있는 값은 락 없이 기록된다.
+ * 주기마다 sketch 를 절반으로 줄여 오래된 빈도는 점점 사라진다 (기록이 멈춰도 조회 시점에 밀린 주기만큼 감쇠).
+ */
+final class HeavyHitterTracker {
+
+    /**
+     * @param count 감쇠가 반영된 추정 빈도
+     */
+    record Entry(String value, long count) {}
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1024;
+
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    // 상위 K 개 값 (빈도는 sketch 에서 조회)
+    private final ConcurrentHashMap<String, Boolean> top = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final long decayIntervalMillis;
+    private final AtomicLong nextDecayAt;
+    // top 이 가득 찼을 때 그 안의 최소 추정 빈도 (가득 차지 않았으면 0)
+    private volatile long minTopCount;
+
+    HeavyHitterTracker(int capacity, long decayIntervalSeconds) {
+        this.capacity = capacity;
+        this.decayIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(1, decayIntervalSeconds));
+        this.nextDecayAt = new AtomicLong(System.currentTimeMillis() + decayIntervalMillis);
+    }
+
+    void record(String value) {
+        if (value == null || value.isEmpty()) return;
+        maybeDecay();
+
+        long estimate = sketch.add(value, 1);
+        if (top.containsKey(value)) return;
+        if (estimate > minTopCount) {
+            promote(value, estimate);
+        }
+    }
+
+    private synchronized void promote(String value, long estimate) {
+        if (top.containsKey(value)) return;
+        if (top.size() < capacity) {
+            top.put(value, Boolean.TRUE);
+        } else {
+            String weakest = null;
+            long weakestCount = Long.MAX_VALUE;
+            for (String candidate : top.keySet()) {
+                long count = sketch.estimate(candidate);
+                if (count < weakestCount) {
+                    weakest = candidate;
+                    weakestCount = count;
+                }
+            }
+            if (weakest == null || estimate <= weakestCount) {
+                minTopCount = weakestCount;
+                return;
+            }
+            top.remove(weakest);
+            top.put(value, Boolean.TRUE);
+        }
+        updateMin();
+    }
+
+    private void updateMin() {
+        if (top.size() < capacity) {
+            minTopCount = 0;
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        for (String candidate : top.keySet()) {
+            min = Math.min(min, sketch.estimate(candidate));
+        }
+        minTopCount = min;
+    }
+
+    /**
+     * 지난 감쇠 이후 흐른 주기 수만큼 절반씩 감쇠 (0.5^(경과/주기))
+     */
+    private void maybeDecay() {
+        long now = System.currentTimeMillis();
+        long due = nextDecayAt.get();
+        if (now < due) return;
+        long periods = (now - due) / decayIntervalMillis + 1;
+        if (!nextDecayAt.compareAndSet(due, due + periods * decayIntervalMillis)) return;
+
+        sketch.decay((int) Math.min(periods, Long.SIZE - 1));
+        synchronized (this) {
+            // 감쇠로 0 이 된 값은 상위 목록에서 제외
+            top.keySet().removeIf(candidate -> sketch.estimate(candidate) == 0);
+            updateMin();
+        }
+    }
+
+    /**
+     * @return 추정 빈도 내림차순 상위 목록 (빈도 0 제외)
+     */
+    List<Entry> snapshot() {
+        maybeDecay();
+        List<Entry> entries = new ArrayList<>(top.size());
+        for (String value : top.keySet()) {
+            long count = sketch.estimate(value);
+            if (count > 0) {
+                entries.add(new Entry(value, count));
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::count).reversed());
+        return entries;
+    }
+}
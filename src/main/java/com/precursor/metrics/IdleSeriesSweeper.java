@@ -0,0 +1,120 @@
+package com.precursor.metrics;
+
+import org.jboss.logging.Logger;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 일정 시간 이벤트가 없던 라벨 조합(삭제된 client, 한 번뿐인 error 문자열 등)의 시리즈를 주기적으로 제거
+ * 주기마다 LabelChildCache 의 시계를 전진시키고, family 별 TTL 을 넘긴 child 를 지운다.
+ * 제거된 뒤 같은 조합이 다시 들어오면 0 부터 새 시리즈가 만들어진다 (Prometheus 에서는 카운터 리셋).
+ * 같은 주기에 만료된 LOGIN -> CODE_TO_TOKEN 흐름도 orphan 으로 집계한다.
+ */
+final class IdleSeriesSweeper {
+
+    private static final Logger LOGGER = Logger.getLogger(IdleSeriesSweeper.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final PrometheusExporter exporter;
+    private final long defaultTtlSeconds;
+    // family 이름 -> TTL (0 이면 제거하지 않음)
+    private final Map<String, Long> ttlOverrides;
+    private final long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param defaultTtlSeconds ttlOverrides 에 없는 family 의 TTL (0 이면 제거하지 않음)
+     */
+    IdleSeriesSweeper(PrometheusExporter exporter, long defaultTtlSeconds, Map<String, Long> ttlOverrides,
+                      long intervalMillis) {
+        this.exporter = exporter;
+        this.defaultTtlSeconds = defaultTtlSeconds;
+        this.ttlOverrides = Map.copyOf(ttlOverrides);
+        this.intervalMillis = Math.max(1000, intervalMillis);
+    }
+
+    /**
+     * "keycloak_response_total=3600,keycloak_logins_total=0" 형식 (이름은 _total 접미사 없이도 가능)
+     */
+    static Map<String, Long> parseTtlOverrides(String value) {
+        Map<String, Long> overrides = new HashMap<>();
+        if (value == null || value.isBlank()) return overrides;
+        for (String entry : value.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected family=seconds but got '" + entry.trim() + "'");
+            }
+            String name = entry.substring(0, eq).trim();
+            if (name.endsWith("_total")) {
+                name = name.substring(0, name.length() - "_total".length());
+            }
+            overrides.put(name, Long.parseLong(entry.substring(eq + 1).trim()));
+        }
+        return overrides;
+    }
+
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-series-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        LOGGER.infof("Idle series eviction started (ttl=%ds, overrides=%s, interval=%dms)",
+                defaultTtlSeconds, ttlOverrides, intervalMillis);
+    }
+
+    private void run() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Idle series sweep failed", e);
+        }
+    }
+
+    /**
+     * @return 이번에 제거한 시리즈 수
+     */
+    int sweep() {
+        long now = System.currentTimeMillis();
+        exporter.expireAuthFlows(now);
+        LabelChildCache.advanceClock(now / 1000);
+        int evicted = sweep(exporter.globalChildCaches());
+        for (RealmMetrics shard : exporter.shards()) {
+            evicted += sweep(shard.childCaches());
+        }
+        return evicted;
+    }
+
+    private int sweep(List<? extends LabelChildCache<?>> caches) {
+        int evicted = 0;
+        for (LabelChildCache<?> cache : caches) {
+            long ttl = ttlOverrides.getOrDefault(cache.name(), defaultTtlSeconds);
+            if (ttl <= 0) continue;
+            int count = cache.evictIdle(ttl);
+            if (count > 0) {
+                exporter.recordEvictedSeries(cache.name(), count);
+                evicted += count;
+            }
+        }
+        return evicted;
+    }
+
+    void close() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Idle series eviction stopped.");
+    }
+}
@@ -0,0 +1,109 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import org.jboss.logging.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keycloak 의 Infinispan 캐시 (realms, users, authorization, sessions 등) 통계를 노출
+ * 캐시를 순회하지 않고 Infinispan 이 JMX 로 공개하는 Statistics 컴포넌트의 누적 카운터만 읽는다.
+ * 캐시 통계가 꺼져 있으면 (statistics / jmx 비활성) MBean 이 없으므로 아무것도 내보내지 않는다.
+ */
+final class InfinispanCacheCollector extends Collector {
+
+    private static final Logger LOGGER = Logger.getLogger(InfinispanCacheCollector.class);
+
+    private static final String STATISTICS_PATTERN = "org.infinispan:type=Cache,component=Statistics,*";
+    private static final String[] ATTRIBUTES = {"Hits", "Misses", "Evictions", "ApproximateEntries"};
+    private static final List<String> LABEL_NAMES = Arrays.asList("cache", "mode", "manager");
+
+    private final MBeanServer server;
+    private final ObjectName pattern;
+
+    InfinispanCacheCollector() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    InfinispanCacheCollector(MBeanServer server) {
+        this.server = server;
+        try {
+            this.pattern = new ObjectName(STATISTICS_PATTERN);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        CounterMetricFamily hits = new CounterMetricFamily(
+                "keycloak_cache_hits",
+                "Cache read hits",
+                LABEL_NAMES);
+        CounterMetricFamily misses = new CounterMetricFamily(
+                "keycloak_cache_misses",
+                "Cache read misses",
+                LABEL_NAMES);
+        CounterMetricFamily evictions = new CounterMetricFamily(
+                "keycloak_cache_evictions",
+                "Cache entries evicted",
+                LABEL_NAMES);
+        GaugeMetricFamily entries = new GaugeMetricFamily(
+                "keycloak_cache_entries",
+                "Approximate number of entries in the cache",
+                LABEL_NAMES);
+
+        Set<ObjectName> names = server.queryNames(pattern, null);
+        for (ObjectName name : names) {
+            List<String> labelValues = labelValues(name);
+            try {
+                AttributeList values = server.getAttributes(name, ATTRIBUTES);
+                for (Attribute attribute : values.asList()) {
+                    if (!(attribute.getValue() instanceof Number number) || number.longValue() < 0) continue;
+                    switch (attribute.getName()) {
+                        case "Hits" -> hits.addMetric(labelValues, number.doubleValue());
+                        case "Misses" -> misses.addMetric(labelValues, number.doubleValue());
+                        case "Evictions" -> evictions.addMetric(labelValues, number.doubleValue());
+                        case "ApproximateEntries" -> entries.addMetric(labelValues, number.doubleValue());
+                        default -> { }
+                    }
+                }
+            } catch (JMException e) {
+                // 캐시가 중지/제거되는 중이면 건너뜀
+                LOGGER.debugf("Failed to read cache statistics of %s: %s", name, e.getMessage());
+            }
+        }
+        return Arrays.asList(hits, misses, evictions, entries);
+    }
+
+    /**
+     * name="realms(local)" -> cache=realms, mode=local
+     */
+    static List<String> labelValues(ObjectName name) {
+        String cache = unquote(name.getKeyProperty("name"));
+        String mode = "";
+        int paren = cache.lastIndexOf('(');
+        if (paren > 0 && cache.endsWith(")")) {
+            mode = cache.substring(paren + 1, cache.length() - 1);
+            cache = cache.substring(0, paren);
+        }
+        return Arrays.asList(cache, mode, unquote(name.getKeyProperty("manager")));
+    }
+
+    private static String unquote(String value) {
+        if (value == null) return "";
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                ? ObjectName.unquote(value)
+                : value;
+    }
+}
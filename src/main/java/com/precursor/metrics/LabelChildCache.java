@@ -0,0 +1,345 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.SimpleCollector;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 라벨 값 조합별 child (Counter.Child, Histogram.Child 등) 캐시
+ * SimpleCollector.labels(...) 는 호출마다 varargs 배열과 키 리스트를 만들기 때문에,
+ * 라벨 값을 한 단계씩 따라가는 트리로 조회해 반복되는 조합에서는 할당이 없도록 한다.
+ * 라벨 위치별로 CardinalityLimiter 를 걸면 제한을 넘는 값은 "other" 로 접히고, 추적 대상에서 밀려난 값의 시리즈는 제거된다.
+ * child 마다 마지막 사용 시각(초 단위 시계)을 남겨 두어 오래 쓰이지 않은 시리즈를 evictIdle 로 제거할 수 있다.
+ * child 가 없는 노드에 child 를 붙이는 일과 시리즈 제거 (collector.remove 후 트리에서 분리) 는 노드 monitor 안에서 하므로,
+ * 제거 중인 노드에 collector 에서 곧 지워질 child 가 다시 붙지 않는다. 이미 있는 child 조회는 락 없이 끝난다.
+ */
+final class LabelChildCache<C> {
+
+    private static final int MAX_LABELS = 4;
+
+    // 마지막 사용 시각 기록용 초 단위 시계 (IdleSeriesSweeper 가 주기마다 전진)
+    private static volatile long clock = System.currentTimeMillis() / 1000;
+
+    private static final class Node<C> {
+        final ConcurrentHashMap<String, Node<C>> children = new ConcurrentHashMap<>();
+        volatile C child;
+        // 시리즈가 제거되어 트리에서 분리된 노드 (monitor 안에서만 접근)
+        boolean removed;
+        // 시계 값이 바뀐 뒤 처음 사용될 때만 기록하므로 증가 경로에서 같은 캐시 라인에 쓰기가 몰리지 않음
+        volatile long touched = clock;
+
+        void touch() {
+            long now = clock;
+            if (touched != now) {
+                touched = now;
+            }
+        }
+
+        Node<C> next(String labelValue) {
+            Node<C> node = children.get(labelValue);
+            if (node == null) {
+                node = children.computeIfAbsent(labelValue, key -> new Node<>());
+            }
+            return node;
+        }
+    }
+
+    /**
+     * forEach 순회 콜백 (labelValues 는 재사용되는 배열이므로 콜백 밖으로 보관하지 않는다)
+     */
+    interface ChildVisitor<C> {
+        void visit(String[] labelValues, int labelCount, C child);
+    }
+
+    private final SimpleCollector<C> collector;
+    private final String name;
+    private final Node<C> root = new Node<>();
+    private final CardinalityLimiter[] limiters = new CardinalityLimiter[MAX_LABELS];
+
+    LabelChildCache(SimpleCollector<C> collector) {
+        this.collector = collector;
+        this.name = collector.collect().get(0).name;
+    }
+
+    SimpleCollector<C> collector() {
+        return collector;
+    }
+
+    /**
+     * @return family 이름 (Counter 는 _total 접미사 제외)
+     */
+    String name() {
+        return name;
+    }
+
+    /**
+     * 지금까지 만들어진 모든 child 를 라벨 값과 함께 순회
+     * @param labelValues 라벨 값을 담을 작업 배열 (길이 4 이상)
+     */
+    void forEach(String[] labelValues, ChildVisitor<C> visitor) {
+        visit(root, labelValues, 0, visitor);
+    }
+
+    private static <C> void visit(Node<C> node, String[] labelValues, int depth, ChildVisitor<C> visitor) {
+        C child = node.child;
+        if (child != null) {
+            visitor.visit(labelValues, depth, child);
+        }
+        if (depth == MAX_LABELS || node.children.isEmpty()) return;
+        for (Map.Entry<String, Node<C>> entry : node.children.entrySet()) {
+            labelValues[depth] = entry.getKey();
+            visit(entry.getValue(), labelValues, depth + 1, visitor);
+        }
+    }
+
+    /**
+     * @return 지금까지 만들어진 (제거되지 않은) child 수
+     */
+    int size() {
+        return size(root, 0);
+    }
+
+    private static int size(Node<?> node, int depth) {
+        int count = node.child != null ? 1 : 0;
+        if (depth == MAX_LABELS) return count;
+        for (Node<?> next : node.children.values()) {
+            count += size(next, depth + 1);
+        }
+        return count;
+    }
+
+    /**
+     * 라벨 수에 맞는 labels(...) 오버로드 호출
+     */
+    C labels(String[] labelValues, int labelCount) {
+        return switch (labelCount) {
+            case 1 -> labels(labelValues[0]);
+            case 2 -> labels(labelValues[0], labelValues[1]);
+            case 3 -> labels(labelValues[0], labelValues[1], labelValues[2]);
+            case 4 -> labels(labelValues[0], labelValues[1], labelValues[2], labelValues[3]);
+            default -> throw new IllegalArgumentException("Unsupported label count: " + labelCount);
+        };
+    }
+
+    /**
+     * 체크포인트 복원용 child 조회: 제한이 걸린 라벨 값은 admit 대신 count 를 빈도로 제한기에 심어
+     * 이전 프로세스에서 추적하던 값이 그대로 시리즈로 남게 한다 (제한기에 자리가 없는 값만 "other" 로 접음).
+     * @param labelValues 라벨 값 (접힌 값은 "other" 로 바뀜)
+     */
+    C restore(String[] labelValues, int labelCount, long count) {
+        while (true) {
+            Node<C> node = root;
+            for (int i = 0; i < labelCount; i++) {
+                CardinalityLimiter limiter = limiters[i];
+                if (limiter != null && !CardinalityLimiter.OTHER.equals(labelValues[i])
+                        && !limiter.seed(labelValues[i], count)) {
+                    labelValues[i] = CardinalityLimiter.OTHER;
+                }
+                node = node.next(labelValues[i]);
+            }
+            node.touch();
+            C child = node.child;
+            if (child == null) child = attach(node, Arrays.copyOf(labelValues, labelCount));
+            if (child != null) return child;
+        }
+    }
+
+    /**
+     * child 가 없는 노드에 collector 의 child 를 붙임
+     * @return 붙인 (또는 그 사이 다른 스레드가 붙인) child, 노드가 이미 제거되었으면 null (트리를 처음부터 다시 조회)
+     */
+    private C attach(Node<C> node, String... labelValues) {
+        synchronized (node) {
+            if (node.removed) return null;
+            C child = node.child;
+            if (child == null) {
+                child = collector.labels(labelValues);
+                node.child = child;
+            }
+            return child;
+        }
+    }
+
+    /**
+     * 노드의 시리즈를 collector 에서 지운 뒤에 트리에서 분리
+     * child 를 먼저 비워 두므로 그 뒤 조회는 attach 에서 기다렸다가 새 노드로 다시 조회한다.
+     * @return 시리즈를 제거했으면 true
+     */
+    private boolean removeNode(Node<C> parent, String key, Node<C> node, String[] labelValues) {
+        synchronized (node) {
+            if (node.removed) return false;
+            node.removed = true;
+            C child = node.child;
+            node.child = null;
+            if (child != null) {
+                collector.remove(labelValues);
+            }
+            parent.children.remove(key, node);
+            return child != null;
+        }
+    }
+
+    /**
+     * removeNode 와 같은 monitor 안에서, idleBefore 이후 사용되지 않은 노드만 제거
+     * child 를 먼저 비운 뒤 사용 시각을 다시 본다. 그 전에 child 를 읽어 간 조회는 읽기 전에 사용 시각을 남기므로
+     * (유휴 노드의 touched 는 현재 시계보다 작아 반드시 기록됨) 여기서 보이고, 그때는 child 를 되돌리고 제거하지 않는다.
+     * 그 뒤의 조회는 비어 있는 child 를 보고 attach 에서 기다렸다가 새 노드로 다시 조회한다.
+     * @return 시리즈를 제거했으면 true
+     */
+    private boolean evictNode(Node<C> parent, String key, Node<C> node, String[] labelValues, long idleBefore) {
+        synchronized (node) {
+            C child = node.child;
+            if (node.removed || child == null) return false;
+            node.child = null;
+            if (node.touched >= idleBefore) {
+                node.child = child;
+                return false;
+            }
+            node.removed = true;
+            collector.remove(labelValues);
+            parent.children.remove(key, node);
+            return true;
+        }
+    }
+
+    static void advanceClock(long nowSeconds) {
+        clock = nowSeconds;
+    }
+
+    /**
+     * idleSeconds 넘게 사용되지 않은 child 를 collector 와 트리에서 제거
+     * 제거 직전에 다시 사용된 child 는 남겨 둔다.
+     * @return 제거한 시리즈 수
+     */
+    int evictIdle(long idleSeconds) {
+        return evict(root, new String[MAX_LABELS], 0, clock - idleSeconds);
+    }
+
+    private int evict(Node<C> node, String[] labelValues, int depth, long idleBefore) {
+        int evicted = 0;
+        Iterator<Map.Entry<String, Node<C>>> it = node.children.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Node<C>> entry = it.next();
+            String key = entry.getKey();
+            Node<C> next = entry.getValue();
+            labelValues[depth] = key;
+
+            if (next.child != null) {
+                if (next.touched < idleBefore
+                        && evictNode(node, key, next, Arrays.copyOf(labelValues, depth + 1), idleBefore)) {
+                    evicted++;
+                }
+            } else if (depth + 1 < MAX_LABELS) {
+                evicted += evict(next, labelValues, depth + 1, idleBefore);
+                // 자식이 모두 사라진 중간 노드 정리
+                if (next.children.isEmpty()) {
+                    node.children.remove(key, next);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * labelIndex 위치 라벨에 카디널리티 제한을 걸고, 제한기가 밀어낸 값의 시리즈는 이 캐시에서 제거
+     */
+    void limitCardinality(int labelIndex, CardinalityLimiter limiter) {
+        limiters[labelIndex] = limiter;
+        limiter.onEviction(value -> removeLabelValue(labelIndex, value));
+    }
+
+    /**
+     * labelIndex 위치 라벨 값이 value 인 child 를 collector 와 트리에서 모두 제거
+     * @return 제거한 시리즈 수
+     */
+    int removeLabelValue(int labelIndex, String value) {
+        return removeLabelValue(root, new String[MAX_LABELS], 0, labelIndex, value);
+    }
+
+    private int removeLabelValue(Node<C> node, String[] labelValues, int depth, int labelIndex, String value) {
+        if (depth == labelIndex) {
+            Node<C> next = node.children.get(value);
+            if (next == null) return 0;
+            labelValues[depth] = value;
+            return removeSubtree(node, value, next, labelValues, depth + 1);
+        }
+        int removed = 0;
+        for (Map.Entry<String, Node<C>> entry : node.children.entrySet()) {
+            labelValues[depth] = entry.getKey();
+            removed += removeLabelValue(entry.getValue(), labelValues, depth + 1, labelIndex, value);
+        }
+        return removed;
+    }
+
+    /**
+     * 잎부터 제거해 올라옴 (중간 노드를 먼저 분리하면 그 아래 시리즈가 collector 에 남은 채 새 경로에 다시 붙을 수 있음)
+     */
+    private int removeSubtree(Node<C> parent, String key, Node<C> node, String[] labelValues, int depth) {
+        int removed = 0;
+        if (depth < MAX_LABELS) {
+            for (Map.Entry<String, Node<C>> entry : node.children.entrySet()) {
+                labelValues[depth] = entry.getKey();
+                removed += removeSubtree(node, entry.getKey(), entry.getValue(), labelValues, depth + 1);
+            }
+        }
+        return removed + (removeNode(parent, key, node, Arrays.copyOf(labelValues, depth)) ? 1 : 0);
+    }
+
+    private String admit(int labelIndex, String value) {
+        CardinalityLimiter limiter = limiters[labelIndex];
+        return limiter != null ? limiter.admit(value) : value;
+    }
+
+    C labels(String v1) {
+        while (true) {
+            String a1 = admit(0, v1);
+            Node<C> node = root.next(a1);
+            node.touch();
+            C child = node.child;
+            if (child == null) child = attach(node, a1);
+            if (child != null) return child;
+        }
+    }
+
+    C labels(String v1, String v2) {
+        while (true) {
+            String a1 = admit(0, v1);
+            String a2 = admit(1, v2);
+            Node<C> node = root.next(a1).next(a2);
+            node.touch();
+            C child = node.child;
+            if (child == null) child = attach(node, a1, a2);
+            if (child != null) return child;
+        }
+    }
+
+    C labels(String v1, String v2, String v3) {
+        while (true) {
+            String a1 = admit(0, v1);
+            String a2 = admit(1, v2);
+            String a3 = admit(2, v3);
+            Node<C> node = root.next(a1).next(a2).next(a3);
+            node.touch();
+            C child = node.child;
+            if (child == null) child = attach(node, a1, a2, a3);
+            if (child != null) return child;
+        }
+    }
+
+    C labels(String v1, String v2, String v3, String v4) {
+        while (true) {
+            String a1 = admit(0, v1);
+            String a2 = admit(1, v2);
+            String a3 = admit(2, v3);
+            String a4 = admit(3, v4);
+            Node<C> node = root.next(a1).next(a2).next(a3).next(a4);
+            node.touch();
+            C child = node.child;
+            if (child == null) child = attach(node, a1, a2, a3, a4);
+            if (child != null) return child;
+        }
+    }
+}
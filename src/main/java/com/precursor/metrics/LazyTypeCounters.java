@@ -0,0 +1,96 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.SimpleCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * EventType / OperationType ordinal 별 카운터 family 를 처음 발생할 때 만드는 Collector
+ * 한 번도 발생하지 않은 타입은 family 자체가 없으므로 샤드 생성과 scrape 에서 비용이 들지 않는다.
+ * 생성은 CAS 로 게시하므로 두 스레드가 동시에 만들면 진 쪽은 버려지고 이긴 쪽을 쓴다 (락 없음).
+ */
+final class LazyTypeCounters extends Collector {
+
+    private final String[] names;
+    private final IntFunction<SimpleCollector<Counter.Child>> factory;
+    private final AtomicReferenceArray<LabelChildCache<Counter.Child>> counters;
+    // null 이면 모든 타입 허용
+    private volatile boolean[] enabled;
+
+    /**
+     * @param names ordinal 별 family 이름
+     * @param factory ordinal 로 카운터를 만드는 함수 (registry 에 등록하지 않은 카운터)
+     */
+    LazyTypeCounters(String[] names, IntFunction<SimpleCollector<Counter.Child>> factory, boolean[] enabled) {
+        this.names = names;
+        this.factory = factory;
+        this.counters = new AtomicReferenceArray<>(names.length);
+        this.enabled = enabled;
+    }
+
+    /**
+     * 허용 타입 변경, 허용되지 않게 된 타입의 family 는 값과 함께 제거
+     * @param enabled ordinal 별 허용 여부 (null 이면 전부 허용)
+     */
+    void configure(boolean[] enabled) {
+        this.enabled = enabled;
+        if (enabled == null) return;
+        for (int i = 0; i < names.length; i++) {
+            if (!enabled[i]) {
+                counters.set(i, null);
+            }
+        }
+    }
+
+    /**
+     * @return ordinal 의 카운터, 허용되지 않은 타입이면 null
+     */
+    LabelChildCache<Counter.Child> get(int ordinal) {
+        LabelChildCache<Counter.Child> counter = counters.get(ordinal);
+        if (counter != null) return counter;
+
+        boolean[] allowed = enabled;
+        if (allowed != null && !allowed[ordinal]) return null;
+        LabelChildCache<Counter.Child> created = new LabelChildCache<>(factory.apply(ordinal));
+        return counters.compareAndSet(ordinal, null, created) ? created : counters.get(ordinal);
+    }
+
+    /**
+     * @return 이름에 해당하는 ordinal, 없으면 -1
+     */
+    int ordinal(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 지금까지 만들어진 카운터를 out 에 추가
+     */
+    void collectCreated(List<? super LabelChildCache<Counter.Child>> out) {
+        for (int i = 0; i < names.length; i++) {
+            LabelChildCache<Counter.Child> counter = counters.get(i);
+            if (counter != null) {
+                out.add(counter);
+            }
+        }
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> samples = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            LabelChildCache<Counter.Child> counter = counters.get(i);
+            if (counter != null) {
+                samples.addAll(counter.collector().collect());
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,170 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * realm 하나의 client 별 로그인 시도/실패 슬라이딩 윈도우
+ * Prometheus 의 rate() 를 기다리지 않고 1분/5분 실패율과 성공 비율을 게이지로 바로 노출하며,
+ * 다른 SPI 가 PrometheusExporter 를 통해 같은 값을 조회할 수 있다.
+ * 추적하는 client 수는 maxClients 로 제한하고, idleSeconds 동안 로그인이 없던 client 는 제거한다.
+ * 제거는 scrape 마다, 그리고 자리가 없을 때 요청 스레드에서 초당 최대 한 번만 수행한다.
+ */
+final class LoginRateTracker extends Collector {
+
+    static final int WINDOW_1M = 60;
+    static final int WINDOW_5M = SlidingLoginWindow.WINDOW_SECONDS;
+
+    static final String ATTEMPT_RATE = "keycloak_login_attempt_rate";
+    static final String FAILURE_RATE = "keycloak_login_failure_rate";
+    static final String SUCCESS_RATIO = "keycloak_login_success_ratio";
+
+    private static final List<String> LABEL_NAMES = Arrays.asList("realm", "client_id", "window");
+
+    private final String realm;
+    private final ConcurrentHashMap<String, SlidingLoginWindow> clients = new ConcurrentHashMap<>();
+    // realm 전체 합계
+    private final SlidingLoginWindow total = new SlidingLoginWindow();
+
+    // 요청 스레드가 마지막으로 유휴 client 를 정리한 초
+    private final AtomicLong lastEvictionSecond = new AtomicLong();
+
+    private volatile int maxClients;
+    private volatile long idleSeconds;
+
+    LoginRateTracker(String realm, int maxClients, long idleSeconds) {
+        this.realm = realm;
+        this.maxClients = maxClients;
+        this.idleSeconds = idleSeconds;
+    }
+
+    /**
+     * @param maxClients 추적할 최대 client 수 (0 이면 client 별 추적 안 함, realm 합계만 유지)
+     */
+    void configure(int maxClients, long idleSeconds) {
+        this.maxClients = maxClients;
+        this.idleSeconds = idleSeconds;
+        if (maxClients == 0) {
+            clients.clear();
+        }
+    }
+
+    void record(String clientId, boolean failure) {
+        long now = nowSecond();
+        total.record(now, failure);
+        SlidingLoginWindow window = window(clientId, now);
+        if (window != null) {
+            window.record(now, failure);
+        }
+    }
+
+    private SlidingLoginWindow window(String clientId, long now) {
+        SlidingLoginWindow window = clients.get(clientId);
+        if (window != null) return window;
+
+        int limit = maxClients;
+        if (limit <= 0) return null;
+        if (clients.size() >= limit) {
+            // 전체 스캔은 초당 한 스레드만 하고, 나머지 이벤트는 스캔 없이 other 로 합침
+            long last = lastEvictionSecond.get();
+            if (now > last && lastEvictionSecond.compareAndSet(last, now)) {
+                evictIdle(now);
+            }
+            if (clients.size() >= limit) {
+                clientId = CardinalityLimiter.OTHER;
+                window = clients.get(clientId);
+                if (window != null) return window;
+            }
+        }
+        return clients.computeIfAbsent(clientId, key -> new SlidingLoginWindow());
+    }
+
+    void evictIdle(long now) {
+        long idle = idleSeconds;
+        Iterator<Map.Entry<String, SlidingLoginWindow>> it = clients.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().lastSecond() > idle) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @param clientId null 이면 realm 전체
+     * @return 최근 windowSeconds 초의 초당 로그인 시도 수
+     */
+    double attemptRate(String clientId, int windowSeconds) {
+        SlidingLoginWindow window = clientId == null ? total : clients.get(clientId);
+        return window != null ? (double) window.attempts(nowSecond(), windowSeconds) / windowSeconds : 0.0;
+    }
+
+    /**
+     * @param clientId null 이면 realm 전체
+     * @return 최근 windowSeconds 초의 초당 로그인 실패 수
+     */
+    double failureRate(String clientId, int windowSeconds) {
+        SlidingLoginWindow window = clientId == null ? total : clients.get(clientId);
+        return window != null ? (double) window.failures(nowSecond(), windowSeconds) / windowSeconds : 0.0;
+    }
+
+    /**
+     * @param clientId null 이면 realm 전체
+     * @return 최근 windowSeconds 초의 로그인 성공 비율, 시도가 없으면 NaN
+     */
+    double successRatio(String clientId, int windowSeconds) {
+        SlidingLoginWindow window = clientId == null ? total : clients.get(clientId);
+        if (window == null) return Double.NaN;
+        long now = nowSecond();
+        long attempts = window.attempts(now, windowSeconds);
+        if (attempts == 0) return Double.NaN;
+        return (double) (attempts - window.failures(now, windowSeconds)) / attempts;
+    }
+
+    private static long nowSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        GaugeMetricFamily attemptRate = new GaugeMetricFamily(
+                ATTEMPT_RATE,
+                "Login attempts per second over the trailing window",
+                LABEL_NAMES);
+        GaugeMetricFamily failureRate = new GaugeMetricFamily(
+                FAILURE_RATE,
+                "Failed logins per second over the trailing window",
+                LABEL_NAMES);
+        GaugeMetricFamily successRatio = new GaugeMetricFamily(
+                SUCCESS_RATIO,
+                "Share of login attempts that succeeded over the trailing window (absent without attempts)",
+                LABEL_NAMES);
+
+        long now = nowSecond();
+        evictIdle(now);
+        for (Map.Entry<String, SlidingLoginWindow> entry : clients.entrySet()) {
+            SlidingLoginWindow window = entry.getValue();
+            addWindow(attemptRate, failureRate, successRatio, entry.getKey(), window, now, WINDOW_1M, "1m");
+            addWindow(attemptRate, failureRate, successRatio, entry.getKey(), window, now, WINDOW_5M, "5m");
+        }
+        return Arrays.asList(attemptRate, failureRate, successRatio);
+    }
+
+    private void addWindow(GaugeMetricFamily attemptRate, GaugeMetricFamily failureRate, GaugeMetricFamily successRatio,
+                           String clientId, SlidingLoginWindow window, long now, int seconds, String label) {
+        long attempts = window.attempts(now, seconds);
+        long failures = window.failures(now, seconds);
+        List<String> labelValues = Arrays.asList(realm, clientId, label);
+        attemptRate.addMetric(labelValues, (double) attempts / seconds);
+        failureRate.addMetric(labelValues, (double) failures / seconds);
+        if (attempts > 0) {
+            successRatio.addMetric(labelValues, (double) (attempts - failures) / attempts);
+        }
+    }
+}
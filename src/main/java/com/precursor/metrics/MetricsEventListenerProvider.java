@@ -4,6 +4,8 @@ import org.jboss.logging.Logger;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmProvider;
 
@@ -15,13 +17,44 @@ public class MetricsEventListenerProvider implements EventListenerProvider {
     private static final Logger logger = Logger.getLogger(MetricsEventListenerProvider.class);
 
     private final KeycloakSession session;
+    private final PrometheusExporter exporter;
+    // 비동기 모드가 아니면 null
+    private final AsyncEventProcessor asyncProcessor;
+    // 이벤트 탭 미사용 시 null
+    private final EventTap eventTap;
+    // 자체 계측 비활성 시 null
+    private final SpiSelfMetrics selfMetrics;
 
+    /**
+     * factory 밖에서 만들 때는 공개된 exporter 를 사용 (postInit 전이나 종료 후에는 없으므로 이벤트를 무시하는 provider)
+     */
     public MetricsEventListenerProvider(KeycloakSession session) {
+        this(session, PrometheusExporter.instance(), null, null);
+    }
+
+    MetricsEventListenerProvider(KeycloakSession session, PrometheusExporter exporter,
+                                 AsyncEventProcessor asyncProcessor, EventTap eventTap) {
         this.session = session;
+        this.exporter = exporter;
+        this.asyncProcessor = asyncProcessor;
+        this.eventTap = eventTap;
+        this.selfMetrics = exporter != null ? exporter.selfMetrics() : null;
     }
 
     @Override
     public void onEvent(Event event) {
+        if (exporter == null) return;
+        // 샘플에 걸린 이벤트만 nanoTime 두 번 (그 외에는 난수 하나)
+        if (selfMetrics == null || event == null || event.getType() == null || !selfMetrics.sampleEvent()) {
+            record(event);
+            return;
+        }
+        long start = System.nanoTime();
+        record(event);
+        selfMetrics.observeEvent(event.getType(), System.nanoTime() - start);
+    }
+
+    private void record(Event event) {
         RealmProvider realmProvider = session.realms();
 
         if (event == null || event.getType() == null) {
@@ -29,30 +62,45 @@ public class MetricsEventListenerProvider implements EventListenerProvider {
             return;
         }
 
-        logger.infof("✅ Received event: type=%s, realmId=%s, clientId=%s, error=%s, details=%s",
-                event.getType(),
-                event.getRealmId(),
-                event.getClientId(),
-                event.getError(),
-                event.getDetails());
-
-        switch (event.getType()) {
-            case LOGIN -> PrometheusExporter.instance().recordLogin(event, realmProvider);
-            case LOGIN_ERROR -> PrometheusExporter.instance().recordLoginError(event, realmProvider);
-            case CLIENT_LOGIN -> PrometheusExporter.instance().recordClientLogin(event, realmProvider);
-            case REGISTER -> PrometheusExporter.instance().recordRegistration(event, realmProvider);
-            case REGISTER_ERROR -> PrometheusExporter.instance().recordRegistrationError(event, realmProvider);
-            case REFRESH_TOKEN -> PrometheusExporter.instance().recordRefreshToken(event, realmProvider);
-            case REFRESH_TOKEN_ERROR -> PrometheusExporter.instance().recordRefreshTokenError(event, realmProvider);
-            case CODE_TO_TOKEN -> PrometheusExporter.instance().recordCodeToToken(event, realmProvider);
-            case CODE_TO_TOKEN_ERROR -> PrometheusExporter.instance().recordCodeToTokenError(event, realmProvider);
-            case CLIENT_LOGIN_ERROR -> PrometheusExporter.instance().recordClientLoginError(event, realmProvider);
-            default -> PrometheusExporter.instance().recordGenericEvent(event, realmProvider);
+        // 이벤트 내용은 이벤트 탭으로 남기고, 인라인 로그는 debug 에서만 (비활성 시 포맷팅/varargs 비용 없음)
+        if (logger.isDebugEnabled()) {
+            logger.debugf("Received event: type=%s, realmId=%s, clientId=%s, error=%s, details=%s",
+                    event.getType(),
+                    event.getRealmId(),
+                    event.getClientId(),
+                    event.getError(),
+                    event.getDetails());
         }
+
+        if (eventTap != null) {
+            eventTap.offer(event);
+        }
+
+        // 기록하지 않는 타입은 realm 조회 / 큐 적재 전에 제외
+        if (!exporter.recordsEventType(event.getType())) {
+            return;
+        }
+
+        if (asyncProcessor != null) {
+            // realm 조회만 요청 스레드에서 하고 나머지는 drain 스레드에서 처리
+            asyncProcessor.submitUserEvent(event.getType(),
+                    exporter.getRealmName(event, realmProvider),
+                    exporter.getProvider(event),
+                    PrometheusExporter.orUnknown(event.getClientId()),
+                    PrometheusExporter.orUnknown(event.getError()),
+                    PrometheusExporter.sessionKey(event),
+                    event.getTime(),
+                    PrometheusExporter.failedLoginIpAddress(event),
+                    PrometheusExporter.failedLoginUsername(event));
+            return;
+        }
+
+        exporter.recordEvent(event, realmProvider);
     }
 
     @Override
     public void onEvent(AdminEvent adminEvent, boolean includeRepresentation) {
+        if (exporter == null) return;
         if (adminEvent == null || adminEvent.getOperationType() == null) {
             logger.warn("Received null or unknown admin event.");
             return;
@@ -61,11 +109,35 @@ public class MetricsEventListenerProvider implements EventListenerProvider {
         logger.debugf("Processing admin event: %s", adminEvent.getOperationType());
 
         RealmProvider realmProvider = session.realms();
-        PrometheusExporter.instance().recordGenericAdminEvent(adminEvent, realmProvider);
+        boolean realmResource = adminEvent.getResourceType() == ResourceType.REALM;
+
+        // realm 이름 변경 시 캐시 무효화 (변경된 이름으로 기록)
+        if (realmResource && adminEvent.getOperationType() == OperationType.UPDATE) {
+            exporter.invalidateRealm(adminEvent.getRealmId());
+        }
+        // realm 삭제 시 이벤트를 먼저 기록하고 샤드는 마지막에 제거 (기록이 샤드를 다시 만들지 않도록)
+        boolean realmDeleted = realmResource && adminEvent.getOperationType() == OperationType.DELETE;
+
+        String realm = exporter.getRealmName(adminEvent.getRealmId(), adminEvent.getRealmName(), realmProvider);
+        String resourceType = adminEvent.getResourceType().name();
+
+        if (asyncProcessor != null) {
+            asyncProcessor.submitAdminEvent(adminEvent.getOperationType(), realm, resourceType);
+            if (realmDeleted) {
+                exporter.invalidateRealm(adminEvent.getRealmId());
+                asyncProcessor.submitRealmRemoval(realm);
+            }
+            return;
+        }
+
+        exporter.recordAdminEvent(adminEvent.getOperationType(), realm, resourceType);
+        if (realmDeleted) {
+            exporter.removeRealm(adminEvent.getRealmId(), realm);
+        }
     }
 
     @Override
     public void close() {
         // No-op
     }
-}
\ No newline at end of file
+}
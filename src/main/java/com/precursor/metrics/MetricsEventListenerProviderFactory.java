@@ -1,39 +1,331 @@
 package com.precursor.metrics;
 
+import io.prometheus.client.CollectorRegistry;
+import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.EventListenerProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 public class MetricsEventListenerProviderFactory implements EventListenerProviderFactory {
 
+    private static final Logger LOGGER = Logger.getLogger(MetricsEventListenerProviderFactory.class);
+
     public static final String PROVIDER_ID = "pre-metrics-listener-spi";
 
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 16384;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 30;
+    private static final int DEFAULT_CHECKPOINT_SLOT_BYTES = 4 * 1024 * 1024;
+    private static final String DEFAULT_PUSH_JOB = "keycloak";
+    private static final long DEFAULT_PUSH_INTERVAL_SECONDS = 15;
+    private static final long DEFAULT_PUSH_MAX_BACKOFF_SECONDS = 300;
+    private static final long DEFAULT_OTLP_INTERVAL_SECONDS = 60;
+    private static final int DEFAULT_OTLP_MAX_BUFFERED_BATCHES = 10;
+    private static final String DEFAULT_OTLP_SERVICE_NAME = "keycloak";
+    private static final int DEFAULT_EVENT_TAP_MAX_PER_SECOND = 1000;
+    private static final int DEFAULT_EVENT_TAP_QUEUE_SIZE = 8192;
+    private static final long DEFAULT_EVENT_TAP_MAX_FILE_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_EVENT_TAP_MAX_FILES = 5;
+    private static final long DEFAULT_SESSION_STATS_INTERVAL_SECONDS = 60;
+    private static final long DEFAULT_SERIES_SWEEP_INTERVAL_SECONDS = 60;
+    private static final long DEFAULT_SESSION_STATS_BUDGET_MILLIS = 2000;
+
+    // init 에서 만들어 provider 에 그대로 넘기는 exporter (이벤트마다 전역 락 없이 사용)
+    private PrometheusExporter exporter;
+    private AsyncEventProcessor asyncProcessor;
+    private CounterCheckpoint checkpoint;
+    private PushGatewayPusher pusher;
+    private OtlpPusher otlpPusher;
+    private EventTap eventTap;
+    private SessionStatsRefresher sessionStatsRefresher;
+    private IdleSeriesSweeper seriesSweeper;
+    // postInit 에서 쓰는 설정
+    private long sessionStatsIntervalSeconds;
+    private long sessionStatsBudgetMillis;
+    private int sessionStatsMaxClients;
+
     @Override
     public EventListenerProvider create(KeycloakSession session) {
-        return new MetricsEventListenerProvider(session);
+        return new MetricsEventListenerProvider(session, exporter, asyncProcessor, eventTap);
     }
 
     /**
      * 초기 설정
+     * <ul>
+     *     <li>async: 비동기 이벤트 처리 사용 여부 (기본 false)</li>
+     *     <li>asyncQueueSize: 링 버퍼 크기, 2의 거듭제곱으로 올림 (기본 16384)</li>
+     *     <li>asyncOverflowPolicy: 버퍼 초과 시 drop | block (기본 drop)</li>
+     *     <li>counterBackend: 이벤트 / 응답 카운터 저장 방식 simpleclient | striped (기본 simpleclient)</li>
+     *     <li>selfMetrics: SPI 자체 비용 (onEvent 처리 시간, scrape 시간 / 크기, family 별 시리즈 수, 등록 실패) 을 keycloak_metrics_spi_* 로 노출 (기본 true)</li>
+     *     <li>selfMetricsSampleEvery: onEvent 처리 시간을 몇 건마다 한 번 잴지, 2의 거듭제곱으로 올림 (기본 64)</li>
+     *     <li>jvmMetrics: /metrics/jvm 에 JVM 메트릭 (GC, 메모리, 할당량, 스레드 등) 노출 (기본 true)</li>
+     *     <li>cacheMetrics: /metrics/jvm 에 Infinispan 캐시 통계 노출, 캐시 statistics 가 JMX 로 공개돼 있어야 함 (기본 true)</li>
+     *     <li>realmCacheSize: realm 이름 캐시 최대 항목 수, 0 이면 비활성 (기본 1024)</li>
+     *     <li>realmCacheTtlSeconds: realm 이름 캐시 TTL (기본 300)</li>
+     *     <li>clientIdCardinalityLimit: 메트릭별 client_id 라벨 최대 값 수, 초과분은 "other" (기본 500, 0 이면 제한 없음)</li>
+     *     <li>errorCardinalityLimit: 메트릭별 error 라벨 최대 값 수 (기본 100, 0 이면 제한 없음)</li>
+     *     <li>authFlowCapacity: LOGIN -> CODE_TO_TOKEN 동시 추적 흐름 수, 0 이면 비활성 (기본 65536)</li>
+     *     <li>authFlowTtlSeconds: 짝이 맞지 않은 LOGIN 을 orphan 으로 보는 시간 (기본 300)</li>
+     *     <li>loginRateMaxClients: realm 당 로그인 실패율 윈도우를 유지할 최대 client 수, 0 이면 realm 합계만 (기본 1000)</li>
+     *     <li>loginRateIdleSeconds: 이 시간 동안 로그인이 없던 client 윈도우 제거 (기본 600)</li>
+     *     <li>eventTypes: 기록할 EventType 목록 (쉼표 구분), 비어 있으면 전체 (기본 없음)</li>
+     *     <li>excludedEventTypes: 기록하지 않을 EventType 목록 (쉼표 구분, 기본 없음)</li>
+     *     <li>failedLoginTopK: realm 당 로그인 실패 상위 IP / username 을 몇 개씩 추적할지, 0 이면 비활성 (기본 20)</li>
+     *     <li>failedLoginDecaySeconds: 로그인 실패 빈도를 절반으로 감쇠하는 주기 (기본 60)</li>
+     *     <li>seriesIdleTtlSeconds: 이 시간 동안 이벤트가 없던 라벨 조합의 시리즈 제거, 0 이면 제거 안 함 (기본 0)</li>
+     *     <li>seriesIdleTtlOverrides: family 별 TTL, 예) keycloak_response_total=3600,keycloak_logins_total=0 (기본 없음)</li>
+     *     <li>seriesSweepIntervalSeconds: 유휴 시리즈 / 만료된 인증 흐름 검사 주기 (기본 60)</li>
+     *     <li>checkpointFile: 카운터 체크포인트 파일 경로, 지정하면 재시작 시 카운터 값을 복원 (기본 없음)</li>
+     *     <li>checkpointIntervalSeconds: 체크포인트 주기 (기본 30)</li>
+     *     <li>checkpointSlotBytes: 체크포인트 슬롯 크기, 파일은 이 크기의 슬롯 2개 (기본 4 MiB)</li>
+     *     <li>pushGatewayUrl: Pushgateway 주소, 지정하면 push 모드 사용 (기본 없음)</li>
+     *     <li>pushJob: push 할 job 이름 (기본 keycloak)</li>
+     *     <li>pushInstance: grouping key 의 instance 값 (기본 호스트 이름)</li>
+     *     <li>pushIntervalSeconds: push 주기 (기본 15)</li>
+     *     <li>pushMaxBackoffSeconds: 실패 시 재시도 간격 상한 (기본 300)</li>
+     *     <li>otlpEndpoint: OTLP/HTTP metrics 주소 (예: http://otel-collector:4318/v1/metrics), 지정하면 OTLP push 사용 (기본 없음)</li>
+     *     <li>otlpTemporality: delta | cumulative (기본 delta)</li>
+     *     <li>otlpIntervalSeconds: OTLP export 주기 (기본 60)</li>
+     *     <li>otlpMaxBufferedBatches: 전송 실패 시 보관할 batch 수, 넘치면 오래된 것부터 버림 (기본 10)</li>
+     *     <li>otlpServiceName: resource 의 service.name (기본 keycloak, service.instance.id 는 pushInstance 와 같음)</li>
+     *     <li>sessionStatsIntervalSeconds: 세션 / 사용자 수 게이지 갱신 주기, 0 이면 비활성 (기본 60)</li>
+     *     <li>sessionStatsBudgetMillis: 한 주기에 realm 을 처리할 시간, 남은 realm 은 다음 주기에 (기본 2000)</li>
+     *     <li>eventTapDirectory: 이벤트를 구조화된 레코드로 남길 디렉터리, 지정하면 이벤트 탭 사용 (기본 없음)</li>
+     *     <li>eventTapFormat: ndjson | binary (기본 ndjson)</li>
+     *     <li>eventTapSampleRate: 이벤트 타입별 비율이 없을 때의 샘플링 비율 0..1 (기본 1)</li>
+     *     <li>eventTapSampleRates: 타입별 샘플링 비율, 예) LOGIN=0.1,REFRESH_TOKEN=0.01 (기본 없음)</li>
+     *     <li>eventTapMaxEventsPerSecond: 초당 최대 기록 수, 0 이면 제한 없음 (기본 1000)</li>
+     *     <li>eventTapQueueSize: writer 스레드 큐 크기, 초과분은 버림 (기본 8192)</li>
+     *     <li>eventTapMaxFileBytes: 파일 회전 크기 (기본 64 MiB)</li>
+     *     <li>eventTapMaxFiles: 회전된 파일 보관 수 (기본 5)</li>
+     * </ul>
      * @param config
      */
     @Override
-    public void init(Config.Scope config) {}
+    public void init(Config.Scope config) {
+        CounterBackend counterBackend;
+        try {
+            counterBackend = CounterBackend.parse(config.get("counterBackend"));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warnf("Unknown counterBackend '%s', falling back to simpleclient", config.get("counterBackend"));
+            counterBackend = CounterBackend.SIMPLECLIENT;
+        }
+        exporter = new PrometheusExporter(new CollectorRegistry(), counterBackend);
+        if (config.getBoolean("selfMetrics", true)) {
+            exporter.enableSelfMetrics(config.getInt("selfMetricsSampleEvery", SpiSelfMetrics.DEFAULT_EVENT_SAMPLE_EVERY));
+        }
+        exporter.registerRuntimeCollectors(config.getBoolean("jvmMetrics", true), config.getBoolean("cacheMetrics", true));
+        exporter.configureRealmCache(
+                config.getInt("realmCacheSize", PrometheusExporter.DEFAULT_REALM_CACHE_SIZE),
+                config.getLong("realmCacheTtlSeconds", PrometheusExporter.DEFAULT_REALM_CACHE_TTL_SECONDS));
+        exporter.configureCardinalityLimits(
+                config.getInt("clientIdCardinalityLimit", PrometheusExporter.DEFAULT_CLIENT_ID_CARDINALITY_LIMIT),
+                config.getInt("errorCardinalityLimit", PrometheusExporter.DEFAULT_ERROR_CARDINALITY_LIMIT));
+        exporter.configureAuthFlowTracking(
+                config.getInt("authFlowCapacity", PrometheusExporter.DEFAULT_AUTH_FLOW_CAPACITY),
+                config.getLong("authFlowTtlSeconds", PrometheusExporter.DEFAULT_AUTH_FLOW_TTL_SECONDS));
+        exporter.configureLoginRates(
+                config.getInt("loginRateMaxClients", PrometheusExporter.DEFAULT_LOGIN_RATE_MAX_CLIENTS),
+                config.getLong("loginRateIdleSeconds", PrometheusExporter.DEFAULT_LOGIN_RATE_IDLE_SECONDS));
+        exporter.configureEventTypes(config.get("eventTypes"), config.get("excludedEventTypes"));
+        exporter.configureFailedLoginSources(
+                config.getInt("failedLoginTopK", PrometheusExporter.DEFAULT_FAILED_LOGIN_TOP_K),
+                config.getLong("failedLoginDecaySeconds", PrometheusExporter.DEFAULT_FAILED_LOGIN_DECAY_SECONDS));
+
+        long seriesIdleTtlSeconds = config.getLong("seriesIdleTtlSeconds", 0L);
+        String seriesIdleTtlOverrides = config.get("seriesIdleTtlOverrides");
+        Map<String, Long> seriesTtlOverrides;
+        try {
+            seriesTtlOverrides = IdleSeriesSweeper.parseTtlOverrides(seriesIdleTtlOverrides);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warnf("Invalid seriesIdleTtlOverrides (%s), idle series eviction disabled", e.getMessage());
+            seriesIdleTtlSeconds = 0L;
+            seriesTtlOverrides = Map.of();
+        }
+        // 시리즈 제거를 쓰지 않아도 인증 흐름 추적 중이면 만료 흐름 집계를 위해 실행
+        if (seriesIdleTtlSeconds > 0 || !seriesTtlOverrides.isEmpty() || exporter.tracksAuthFlows()) {
+            seriesSweeper = new IdleSeriesSweeper(exporter, seriesIdleTtlSeconds, seriesTtlOverrides,
+                    TimeUnit.SECONDS.toMillis(config.getLong("seriesSweepIntervalSeconds",
+                            DEFAULT_SERIES_SWEEP_INTERVAL_SECONDS)));
+            seriesSweeper.start();
+        }
+
+        // 이벤트 처리 시작 전에 이전 프로세스의 카운터 값 복원
+        String checkpointFile = config.get("checkpointFile");
+        if (checkpointFile != null && !checkpointFile.isBlank()) {
+            checkpoint = new CounterCheckpoint(Path.of(checkpointFile),
+                    config.getInt("checkpointSlotBytes", DEFAULT_CHECKPOINT_SLOT_BYTES),
+                    config.getLong("checkpointIntervalSeconds", DEFAULT_CHECKPOINT_INTERVAL_SECONDS),
+                    exporter);
+            try {
+                checkpoint.start();
+            } catch (IOException e) {
+                LOGGER.warnf(e, "Failed to open counter checkpoint file %s, checkpointing disabled", checkpointFile);
+                checkpoint = null;
+            }
+        }
+
+        String pushGatewayUrl = config.get("pushGatewayUrl");
+        if (pushGatewayUrl != null && !pushGatewayUrl.isBlank()) {
+            try {
+                pusher = new PushGatewayPusher(URI.create(pushGatewayUrl).toURL(),
+                        config.get("pushJob", DEFAULT_PUSH_JOB),
+                        Map.of("instance", config.get("pushInstance", hostName())),
+                        TimeUnit.SECONDS.toMillis(config.getLong("pushIntervalSeconds", DEFAULT_PUSH_INTERVAL_SECONDS)),
+                        TimeUnit.SECONDS.toMillis(config.getLong("pushMaxBackoffSeconds", DEFAULT_PUSH_MAX_BACKOFF_SECONDS)),
+                        exporter);
+                pusher.start();
+            } catch (MalformedURLException | IllegalArgumentException e) {
+                LOGGER.warnf("Invalid pushGatewayUrl '%s', push mode disabled", pushGatewayUrl);
+            }
+        }
+
+        String otlpEndpoint = config.get("otlpEndpoint");
+        if (otlpEndpoint != null && !otlpEndpoint.isBlank()) {
+            try {
+                OtlpMetricsEncoder encoder = new OtlpMetricsEncoder(
+                        OtlpMetricsEncoder.Temporality.parse(config.get("otlpTemporality")),
+                        Map.of("service.name", config.get("otlpServiceName", DEFAULT_OTLP_SERVICE_NAME),
+                                "service.instance.id", config.get("pushInstance", hostName())));
+                otlpPusher = new OtlpPusher(URI.create(otlpEndpoint),
+                        TimeUnit.SECONDS.toMillis(config.getLong("otlpIntervalSeconds", DEFAULT_OTLP_INTERVAL_SECONDS)),
+                        config.getInt("otlpMaxBufferedBatches", DEFAULT_OTLP_MAX_BUFFERED_BATCHES),
+                        encoder,
+                        exporter);
+                otlpPusher.start();
+            } catch (IllegalArgumentException e) {
+                LOGGER.warnf("Invalid OTLP configuration (%s), OTLP export disabled", e.getMessage());
+                otlpPusher = null;
+            }
+        }
+
+        String eventTapDirectory = config.get("eventTapDirectory");
+        if (eventTapDirectory != null && !eventTapDirectory.isBlank()) {
+            try {
+                eventTap = new EventTap(Path.of(eventTapDirectory),
+                        EventTap.Format.parse(config.get("eventTapFormat")),
+                        config.getLong("eventTapMaxFileBytes", DEFAULT_EVENT_TAP_MAX_FILE_BYTES),
+                        config.getInt("eventTapMaxFiles", DEFAULT_EVENT_TAP_MAX_FILES),
+                        config.getInt("eventTapQueueSize", DEFAULT_EVENT_TAP_QUEUE_SIZE),
+                        new EventTapSampler(
+                                Double.parseDouble(config.get("eventTapSampleRate", "1")),
+                                config.get("eventTapSampleRates"),
+                                config.getInt("eventTapMaxEventsPerSecond", DEFAULT_EVENT_TAP_MAX_PER_SECOND)),
+                        exporter);
+                eventTap.start();
+            } catch (IOException e) {
+                LOGGER.warnf(e, "Failed to open event tap directory %s, event tap disabled", eventTapDirectory);
+                eventTap = null;
+            } catch (IllegalArgumentException e) {
+                LOGGER.warnf("Invalid event tap configuration (%s), event tap disabled", e.getMessage());
+                eventTap = null;
+            }
+        }
+
+        if (config.getBoolean("async", false)) {
+            AsyncEventProcessor.OverflowPolicy policy;
+            try {
+                policy = AsyncEventProcessor.OverflowPolicy.parse(config.get("asyncOverflowPolicy"));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warnf("Unknown asyncOverflowPolicy '%s', falling back to drop", config.get("asyncOverflowPolicy"));
+                policy = AsyncEventProcessor.OverflowPolicy.DROP;
+            }
+            asyncProcessor = new AsyncEventProcessor(
+                    config.getInt("asyncQueueSize", DEFAULT_ASYNC_QUEUE_SIZE),
+                    policy,
+                    exporter);
+            asyncProcessor.start();
+        }
+
+        sessionStatsIntervalSeconds = config.getLong("sessionStatsIntervalSeconds", DEFAULT_SESSION_STATS_INTERVAL_SECONDS);
+        sessionStatsBudgetMillis = config.getLong("sessionStatsBudgetMillis", DEFAULT_SESSION_STATS_BUDGET_MILLIS);
+        sessionStatsMaxClients = config.getInt("clientIdCardinalityLimit",
+                PrometheusExporter.DEFAULT_CLIENT_ID_CARDINALITY_LIMIT);
+
+        exporter.publish();
+    }
 
     /**
-     * 초기화 이후 설정
+     * 초기화 이후 설정 (세션 통계는 KeycloakSessionFactory 가 필요해 여기서 시작)
      * @param factory
      */
     @Override
-    public void postInit(KeycloakSessionFactory factory) {}
+    public void postInit(KeycloakSessionFactory factory) {
+        if (sessionStatsIntervalSeconds > 0) {
+            sessionStatsRefresher = new SessionStatsRefresher(factory,
+                    TimeUnit.SECONDS.toMillis(sessionStatsIntervalSeconds),
+                    sessionStatsBudgetMillis,
+                    sessionStatsMaxClients,
+                    exporter);
+            sessionStatsRefresher.start();
+        }
+    }
 
     /**
      * 종료 처리 필요 시
      */
     @Override
-    public void close() {}
+    public void close() {
+        if (sessionStatsRefresher != null) {
+            sessionStatsRefresher.close();
+            sessionStatsRefresher = null;
+        }
+        if (seriesSweeper != null) {
+            seriesSweeper.close();
+            seriesSweeper = null;
+        }
+        if (asyncProcessor != null) {
+            asyncProcessor.close();
+            asyncProcessor = null;
+        }
+        if (eventTap != null) {
+            eventTap.close();
+            eventTap = null;
+        }
+        // 큐에 남은 이벤트까지 반영한 뒤 마지막 push / OTLP export / 체크포인트
+        if (pusher != null) {
+            pusher.close();
+            pusher = null;
+        }
+        if (otlpPusher != null) {
+            otlpPusher.close();
+            otlpPusher = null;
+        }
+        if (checkpoint != null) {
+            checkpoint.close();
+            checkpoint = null;
+        }
+        // 전용 registry 해제 (재배포 시 다음 factory 가 같은 이름으로 다시 등록할 수 있음)
+        if (exporter != null) {
+            exporter.close();
+            exporter = null;
+        }
+    }
+
+    /**
+     * @return init 에서 만든 exporter (init 전이나 close 후면 null)
+     */
+    PrometheusExporter exporter() {
+        return exporter;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
 
     @Override
     public String getId() {
@@ -0,0 +1,41 @@
+package com.precursor.metrics;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * 모든 HTTP 요청의 상태 코드, 메서드, 정규화된 resource 템플릿, 처리 시간을
+ * keycloak_response_total / keycloak_response_errors / keycloak_request_duration 에 기록
+ */
+@Provider
+public class MetricsRequestFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START_TIME_PROPERTY = MetricsRequestFilter.class.getName() + ".start";
+    private static final int MAX_CACHED_PATHS = 4096;
+    private static final int MAX_RESOURCE_TEMPLATES = 512;
+
+    private static final PathTemplateNormalizer NORMALIZER =
+            new PathTemplateNormalizer(MAX_CACHED_PATHS, MAX_RESOURCE_TEMPLATES);
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_TIME_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object start = requestContext.getProperty(START_TIME_PROPERTY);
+        PrometheusExporter exporter = PrometheusExporter.instance();
+        if (!(start instanceof Long startNanos) || exporter == null) {
+            return;
+        }
+
+        double durationMillis = (System.nanoTime() - startNanos) / 1_000_000.0;
+        String resource = NORMALIZER.normalize(requestContext.getUriInfo().getPath());
+        exporter.recordResponse(responseContext.getStatus(), requestContext.getMethod(),
+                resource, durationMillis);
+    }
+}
@@ -1,39 +1,373 @@
 package com.precursor.metrics;
 
-import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.exporter.common.TextFormat;
+import jakarta.ws.rs.ForbiddenException;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.NotAuthorizedException;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.keycloak.Config;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager;
 import org.keycloak.services.resource.RealmResourceProvider;
 
-import java.io.StringWriter;
-
-import static jakarta.ws.rs.core.MediaType.TEXT_PLAIN;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * /realms/{realm}/metrics 경로로 Prometheus 메트릭 노출ㅌ
+ * realm 경로에서는 해당 realm 샤드만, 관리 realm 의 /metrics/all 에서는 전체를 내보낸다.
+ * JVM / 캐시 메트릭은 관리 realm 의 /metrics/jvm 에서 따로 내보낸다.
+ * 로그인 실패 상위 IP / username 목록은 관리 realm 의 /metrics/offenders 에서만 조회할 수 있다.
+ * clusterPeers 가 설정되면 /metrics/cluster, /metrics/all/cluster 에서 다른 노드 값까지 합쳐 내보낸다.
+ * 관리 realm 전용 경로 (/all, /jvm, /all/cluster, /offenders) 는 관리 realm 의 bearer 토큰을 요구하고,
+ * admin 역할이나 대상 realm 관리 client 의 view-events / realm-admin 역할이 없으면 403 으로 거절한다.
  */
 @Path("/metrics")
 public class MetricsResource implements RealmResourceProvider {
+
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    private static final String ENDPOINT_REALM = "realm";
+    private static final String ENDPOINT_ALL = "all";
+    private static final String ENDPOINT_JVM = "jvm";
+    private static final String ENDPOINT_CLUSTER = "cluster";
+
+    private final KeycloakSession session;
+    private final PrometheusExporter exporter;
+    // 스냅샷 캐시 미사용 시 null
+    private final ScrapeSnapshotCache snapshotCache;
+    // peer 가 설정되지 않았으면 null
+    private final ClusterScrape clusterScrape;
+
+    public MetricsResource(KeycloakSession session) {
+        this(session, PrometheusExporter.instance(), null, null);
+    }
+
+    MetricsResource(KeycloakSession session, PrometheusExporter exporter, ScrapeSnapshotCache snapshotCache,
+                    ClusterScrape clusterScrape) {
+        this.session = session;
+        this.exporter = exporter;
+        this.snapshotCache = snapshotCache;
+        this.clusterScrape = clusterScrape;
+    }
+
     @Override
     public Object getResource() {
         return this;
     }
 
+    /**
+     * Accept 헤더로 text 0.0.4 / OpenMetrics 를 고르고, Accept-Encoding: gzip 이면 압축해서
+     * 응답 스트림에 바로 기록 (전체 출력을 String 으로 만들지 않음)
+     * 스냅샷 캐시 사용 시에는 캐시된 바이트 버퍼를 내려주고 If-None-Match 를 처리한다.
+     */
+    @GET
+    public Response metrics(@HeaderParam(HttpHeaders.ACCEPT) String accept,
+                            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        return scrape(realmName(), accept, acceptEncoding, ifNoneMatch);
+    }
+
+    /**
+     * 전역 메트릭 + 모든 realm 샤드 (관리 realm 에서만 제공)
+     */
     @GET
-    @Produces(TEXT_PLAIN)
-    public Response metrics() {
+    @Path("all")
+    public Response allMetrics(@HeaderParam(HttpHeaders.ACCEPT) String accept,
+                               @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                               @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        requireAdminRealm();
+        requireEventViewer(null);
+        return scrape(null, accept, acceptEncoding, ifNoneMatch);
+    }
+
+    /**
+     * 이 노드와 모든 peer 의 현재 realm 샤드를 합친 값 (text 0.0.4 만 지원, 스냅샷 캐시 미사용)
+     */
+    @GET
+    @Path("cluster")
+    public Response clusterMetrics(@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return clusterScrape(realmName(), acceptEncoding, null);
+    }
+
+    /**
+     * 이 노드와 모든 peer 의 전역 메트릭 + 전체 realm 을 합친 값 (관리 realm 에서만 제공)
+     * peer 의 /metrics/all 도 같은 검사를 하므로 받은 Authorization 헤더를 그대로 넘긴다.
+     */
+    @GET
+    @Path("all/cluster")
+    public Response allClusterMetrics(@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                      @HeaderParam(HttpHeaders.AUTHORIZATION) String authorization) {
+        requireAdminRealm();
+        requireEventViewer(null);
+        return clusterScrape(null, acceptEncoding, authorization);
+    }
+
+    private Response clusterScrape(String realm, String acceptEncoding, String authorization) {
+        if (clusterScrape == null) {
+            throw new NotFoundException();
+        }
+        if (exporter == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Metrics are not initialized").build();
+        }
+        return streamed(ENDPOINT_CLUSTER, output -> clusterScrape.write(output, realm, authorization), TextFormat.CONTENT_TYPE_004,
+                acceptsGzip(acceptEncoding));
+    }
+
+    /**
+     * realm 의 로그인 실패 상위 IP / username (감쇠된 추정 빈도 내림차순)
+     * username 이 그대로 드러나므로 관리 realm 에서만, 조회할 realm 의 이벤트를 볼 수 있는 관리자에게만 제공한다.
+     * @param realm 조회할 realm (없으면 관리 realm)
+     */
+    @GET
+    @Path("offenders")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response failedLoginOffenders(@QueryParam("realm") String realm) {
+        requireAdminRealm();
+        if (realm == null || realm.isBlank()) {
+            realm = Config.getAdminRealm();
+        }
+        requireEventViewer(realm);
+        if (exporter == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Metrics are not initialized").build();
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("realm", realm);
+        body.put(FailedLoginSources.KIND_IP, exporter.topFailedLoginIpAddresses(realm));
+        body.put(FailedLoginSources.KIND_USERNAME, exporter.topFailedLoginUsernames(realm));
+        return Response.ok(body).build();
+    }
+
+    /**
+     * JVM / Infinispan 캐시 메트릭 (관리 realm 에서만 제공, 스냅샷 캐시 미사용)
+     */
+    @GET
+    @Path("jvm")
+    public Response runtimeMetrics(@HeaderParam(HttpHeaders.ACCEPT) String accept,
+                                   @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        requireAdminRealm();
+        requireEventViewer(null);
+        if (exporter == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Metrics are not initialized").build();
+        }
+        String contentType = TextFormat.chooseContentType(accept);
+        return streamed(ENDPOINT_JVM, output -> exporter.exportRuntime(output, contentType), contentType,
+                acceptsGzip(acceptEncoding));
+    }
+
+    private String realmName() {
+        RealmModel realm = session.getContext().getRealm();
+        return realm != null ? realm.getName() : null;
+    }
+
+    /**
+     * 관리 realm 이 아닌 경로에서는 관리 전용 endpoint 가 없는 것처럼 404
+     */
+    private void requireAdminRealm() {
+        if (!Config.getAdminRealm().equals(realmName())) {
+            throw new NotFoundException();
+        }
+    }
+
+    /**
+     * 관리 realm 의 bearer 토큰을 확인하고 (없거나 무효면 401) 이벤트 조회 권한이 없으면 403
+     * @param realm 권한을 확인할 realm (null 이면 관리 realm, 즉 전체 realm 에 대한 권한)
+     */
+    private void requireEventViewer(String realm) {
+        AuthenticationManager.AuthResult auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+        if (!canViewEvents(auth.getUser(), realm)) {
+            throw new ForbiddenException();
+        }
+    }
+
+    /**
+     * 관리 realm 의 admin 역할, 또는 대상 realm 관리 client ({realm}-realm) 의 view-events / realm-admin 역할
+     * (복합 역할로 받은 경우 포함)
+     */
+    private boolean canViewEvents(UserModel user, String realm) {
+        RealmModel adminRealm = session.getContext().getRealm();
+        if (hasRole(user, adminRealm.getRole(AdminRoles.ADMIN))) {
+            return true;
+        }
+        RealmModel target = realm == null ? adminRealm : session.realms().getRealmByName(realm);
+        ClientModel managementClient = target != null ? target.getMasterAdminClient() : null;
+        return managementClient != null
+                && (hasRole(user, managementClient.getRole(AdminRoles.VIEW_EVENTS))
+                || hasRole(user, managementClient.getRole(AdminRoles.REALM_ADMIN)));
+    }
+
+    private static boolean hasRole(UserModel user, RoleModel role) {
+        return user != null && role != null && user.hasRole(role);
+    }
+
+    /**
+     * @param realm 내보낼 realm 샤드 (null 이면 전체)
+     */
+    private Response scrape(String realm, String accept, String acceptEncoding, String ifNoneMatch) {
+        if (exporter == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Metrics are not initialized").build();
+        }
+        String contentType = TextFormat.chooseContentType(accept);
+        boolean gzip = acceptsGzip(acceptEncoding);
+
+        if (snapshotCache != null) {
+            return cachedMetrics(realm, contentType, gzip, ifNoneMatch);
+        }
+
+        return streamed(endpoint(realm), output -> export(output, realm, contentType), contentType, gzip);
+    }
+
+    private static String endpoint(String realm) {
+        return realm == null ? ENDPOINT_ALL : ENDPOINT_REALM;
+    }
+
+    /**
+     * body 를 응답 스트림에 바로 기록 (gzip 이면 압축하면서)
+     * 자체 계측 사용 시 기록 시간과 압축 전 바이트 수를 endpoint 별로 남긴다.
+     */
+    private Response streamed(String endpoint, StreamingOutput export, String contentType, boolean gzip) {
+        SpiSelfMetrics self = exporter.selfMetrics();
+        StreamingOutput body = output -> {
+            long start = self != null ? System.nanoTime() : 0;
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(output, GZIP_BUFFER_SIZE) : null;
+            OutputStream target = compressed != null ? compressed : output;
+            CountingOutputStream counted = self != null ? new CountingOutputStream(target) : null;
+            export.write(counted != null ? counted : target);
+            if (compressed != null) {
+                compressed.finish();
+            }
+            if (self != null) {
+                self.observeScrape(endpoint, System.nanoTime() - start, counted.count);
+            }
+        };
+
+        Response.ResponseBuilder response = Response.ok(body)
+                .type(contentType)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+
+    private void export(OutputStream output, String realm, String contentType) throws IOException {
+        if (realm == null) {
+            exporter.export(output, contentType);
+        } else {
+            exporter.exportRealm(output, contentType, realm);
+        }
+    }
+
+    private Response cachedMetrics(String realm, String contentType, boolean gzip, String ifNoneMatch) {
+        SpiSelfMetrics self = exporter.selfMetrics();
+        long start = self != null ? System.nanoTime() : 0;
+        ScrapeSnapshotCache.Snapshot snapshot;
         try {
-            StringWriter writer = new StringWriter();
-            TextFormat.write004(writer, CollectorRegistry.defaultRegistry.metricFamilySamples());
-            return Response.ok(writer.toString()).build();
+            snapshot = snapshotCache.get(realm, contentType);
         } catch (Exception e) {
             return Response.serverError().entity("Failed to export metrics").build();
         }
+        if (self != null) {
+            // 캐시 적중이면 조회 시간만, 미스면 렌더링 시간까지 포함
+            self.observeScrape(endpoint(realm), System.nanoTime() - start, snapshot.body().length);
+        }
+
+        if (ifNoneMatch != null && matchesEtag(ifNoneMatch, snapshot.etag())) {
+            return Response.notModified()
+                    .header(HttpHeaders.ETAG, snapshot.etag())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        Object body;
+        if (!gzip) {
+            body = snapshot.body();
+        } else if (snapshot.gzipBody() != null) {
+            body = snapshot.gzipBody();
+        } else {
+            body = (StreamingOutput) output -> {
+                GZIPOutputStream compressed = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+                compressed.write(snapshot.body());
+                compressed.finish();
+            };
+        }
+
+        Response.ResponseBuilder response = Response.ok(body)
+                .type(contentType)
+                .header(HttpHeaders.ETAG, snapshot.etag())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+
+    static boolean matchesEtag(String ifNoneMatch, String etag) {
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*")) return true;
+            if (value.startsWith("W/")) value = value.substring(2);
+            if (value.equals(opaque)) return true;
+        }
+        return false;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            int paramStart = part.indexOf(';');
+            String coding = (paramStart >= 0 ? part.substring(0, paramStart) : part).trim();
+            if (coding.equalsIgnoreCase("gzip")) {
+                return paramStart < 0 || !part.substring(paramStart + 1).replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
     }
 
     @Override
     public void close() {}
+
+    /**
+     * 압축 전 응답 크기 집계용
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package com.precursor.metrics;
 
+import org.jboss.logging.Logger;
 import org.keycloak.Config;
+import org.keycloak.events.EventListenerProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.services.resource.RealmResourceProvider;
@@ -10,22 +12,76 @@ import org.keycloak.services.resource.RealmResourceProviderFactory;
  * SPI 등록용 Factory (Keycloak SPI 표준 요구사항)
  */
 public class MetricsResourceProviderFactory implements RealmResourceProviderFactory {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsResourceProviderFactory.class);
+
     // REST Endpoint
     public static final String ID = "metrics";
 
+    private long scrapeCacheTtlMillis;
+    private boolean scrapeCacheGzip;
+    private PeerDiscovery peerDiscovery;
+    private long clusterPeerTimeoutMillis;
+
+    // postInit 에서 이벤트 리스너 factory 가 만든 exporter 를 받아 둔다
+    private PrometheusExporter exporter;
+    private ScrapeSnapshotCache snapshotCache;
+    private ClusterScrape clusterScrape;
+
     @Override
     public RealmResourceProvider create(KeycloakSession session) {
-        return new MetricsResource();
+        return new MetricsResource(session, exporter != null ? exporter : PrometheusExporter.instance(), snapshotCache,
+                clusterScrape);
     }
 
+    /**
+     * <ul>
+     *     <li>scrapeCacheTtlMillis: scrape 스냅샷 공유 시간, 0 이면 캐시 사용 안 함 (기본 0)</li>
+     *     <li>scrapeCacheGzip: 스냅샷을 미리 gzip 압축해 둘지 여부 (기본 true)</li>
+     *     <li>clusterPeers: /metrics/cluster 에서 합칠 다른 노드의 base URL 목록 (쉼표 구분), 비어 있으면 비활성 (기본 없음)</li>
+     *     <li>clusterPeerTimeoutMillis: peer 응답 제한 시간, 넘기면 해당 peer 를 빼고 내보냄 (기본 2000)</li>
+     * </ul>
+     */
     @Override
-    public void init(Config.Scope config) {}
+    public void init(Config.Scope config) {
+        scrapeCacheTtlMillis = config.getLong("scrapeCacheTtlMillis", 0L);
+        scrapeCacheGzip = config.getBoolean("scrapeCacheGzip", true);
+        clusterPeerTimeoutMillis = config.getLong("clusterPeerTimeoutMillis", ClusterScrape.DEFAULT_PEER_TIMEOUT_MILLIS);
+        try {
+            StaticPeerDiscovery peers = StaticPeerDiscovery.parse(config.get("clusterPeers"));
+            peerDiscovery = peers.peers().isEmpty() ? null : peers;
+        } catch (IllegalArgumentException e) {
+            LOGGER.warnf("Invalid clusterPeers (%s), cluster scrape disabled", e.getMessage());
+            peerDiscovery = null;
+        }
+    }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {}
+    public void postInit(KeycloakSessionFactory factory) {
+        if (factory.getProviderFactory(EventListenerProvider.class, MetricsEventListenerProviderFactory.PROVIDER_ID)
+                instanceof MetricsEventListenerProviderFactory listenerFactory) {
+            exporter = listenerFactory.exporter();
+        }
+        if (exporter == null) {
+            exporter = PrometheusExporter.instance();
+        }
+        if (exporter != null && scrapeCacheTtlMillis > 0) {
+            snapshotCache = new ScrapeSnapshotCache(exporter, scrapeCacheTtlMillis, scrapeCacheGzip);
+        }
+        if (exporter != null && peerDiscovery != null) {
+            clusterScrape = new ClusterScrape(exporter, peerDiscovery, clusterPeerTimeoutMillis);
+        }
+    }
 
     @Override
-    public void close() {}
+    public void close() {
+        exporter = null;
+        snapshotCache = null;
+        if (clusterScrape != null) {
+            clusterScrape.close();
+            clusterScrape = null;
+        }
+    }
 
     @Override
     public String getId() {
@@ -0,0 +1,331 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * exporter 의 family 를 OTLP ExportMetricsServiceRequest (protobuf) 로 인코딩
+ * delta 모드에서는 직전 인코딩 이후 값이 바뀐 시리즈만, 그 사이 증가분으로 담는다.
+ * counter -> monotonic Sum, histogram -> explicit bucket Histogram, gauge -> Gauge 로 옮기고 summary 등은 건너뛴다.
+ * 이전 값 상태를 들고 있으므로 한 스레드 (OtlpPusher 의 scheduler) 에서만 호출한다.
+ */
+final class OtlpMetricsEncoder {
+
+    enum Temporality {
+        DELTA(1),
+        CUMULATIVE(2);
+
+        // opentelemetry.proto.metrics.v1.AggregationTemporality 값
+        final int protoValue;
+
+        Temporality(int protoValue) {
+            this.protoValue = protoValue;
+        }
+
+        static Temporality parse(String value) {
+            if (value == null || value.isBlank()) return DELTA;
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final String SCOPE_NAME = "com.precursor.metrics";
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private record NumberPoint(List<String> labelNames, List<String> labelValues, long startNanos, double value) {}
+
+    private record HistogramPoint(List<String> labelNames, List<String> labelValues, long startNanos,
+                                  long count, double sum, long[] bucketCounts, double[] bounds) {}
+
+    // 히스토그램 한 시리즈의 누적 버킷 (le 라벨 제외)
+    private static final class HistogramSeries {
+        final List<String> labelNames;
+        final List<String> labelValues;
+        double[] bounds = new double[16];
+        double[] cumulative = new double[16];
+        int buckets;
+        double count;
+        double sum;
+        long createdNanos;
+
+        HistogramSeries(List<String> labelNames, List<String> labelValues) {
+            this.labelNames = labelNames;
+            this.labelValues = labelValues;
+        }
+
+        void addBucket(double bound, double value) {
+            if (buckets == bounds.length) {
+                bounds = Arrays.copyOf(bounds, buckets * 2);
+                cumulative = Arrays.copyOf(cumulative, buckets * 2);
+            }
+            bounds[buckets] = bound;
+            cumulative[buckets++] = value;
+        }
+    }
+
+    private final Temporality temporality;
+    private final Map<String, String> resourceAttributes;
+    // 시리즈 키 -> 직전에 본 누적값 (counter / gauge: [값], histogram: [버킷별 개수..., count, sum])
+    private Map<String, double[]> previous = new HashMap<>();
+    private long lastEncodeNanos;
+
+    /**
+     * @param resourceAttributes OTLP resource 속성 (service.name 등)
+     */
+    OtlpMetricsEncoder(Temporality temporality, Map<String, String> resourceAttributes) {
+        this.temporality = temporality;
+        this.resourceAttributes = new LinkedHashMap<>(resourceAttributes);
+        this.lastEncodeNanos = System.currentTimeMillis() * 1_000_000L;
+    }
+
+    Temporality temporality() {
+        return temporality;
+    }
+
+    /**
+     * @return 인코딩한 요청 본문, 보낼 시리즈가 없으면 null
+     */
+    byte[] encode(Enumeration<MetricFamilySamples> families) {
+        long nowNanos = System.currentTimeMillis() * 1_000_000L;
+        Map<String, double[]> current = new HashMap<>(Math.max(16, previous.size() * 4 / 3 + 1));
+
+        ProtoWriter writer = new ProtoWriter(INITIAL_BUFFER_SIZE);
+        writer.startMessage(1); // ExportMetricsServiceRequest.resource_metrics
+        writer.startMessage(1); // ResourceMetrics.resource
+        for (Map.Entry<String, String> attribute : resourceAttributes.entrySet()) {
+            keyValue(writer, 1, attribute.getKey(), attribute.getValue());
+        }
+        writer.endMessage();
+        writer.startMessage(2); // ResourceMetrics.scope_metrics
+        writer.startMessage(1); // ScopeMetrics.scope
+        writer.string(1, SCOPE_NAME);
+        writer.endMessage();
+
+        int metrics = 0;
+        while (families.hasMoreElements()) {
+            MetricFamilySamples family = families.nextElement();
+            switch (family.type) {
+                case COUNTER -> metrics += writeSum(writer, family, current, nowNanos) ? 1 : 0;
+                case GAUGE -> metrics += writeGauge(writer, family, current, nowNanos) ? 1 : 0;
+                case HISTOGRAM -> metrics += writeHistogram(writer, family, current, nowNanos) ? 1 : 0;
+                default -> { }
+            }
+        }
+
+        writer.endMessage();
+        writer.endMessage();
+        previous = current;
+        lastEncodeNanos = nowNanos;
+        return metrics > 0 ? writer.toByteArray() : null;
+    }
+
+    private boolean writeSum(ProtoWriter writer, MetricFamilySamples family, Map<String, double[]> current,
+                             long nowNanos) {
+        Map<List<String>, Long> created = createdNanos(family);
+        String totalName = family.name + "_total";
+        List<NumberPoint> points = new ArrayList<>();
+        for (Sample sample : family.samples) {
+            if (!sample.name.equals(totalName) && !sample.name.equals(family.name)) continue;
+            String key = seriesKey(family.name, sample.labelValues);
+            double[] last = previous.get(key);
+            current.put(key, new double[]{sample.value});
+
+            long start = created.getOrDefault(sample.labelValues, lastEncodeNanos);
+            if (temporality == Temporality.CUMULATIVE) {
+                points.add(new NumberPoint(sample.labelNames, sample.labelValues, start, sample.value));
+                continue;
+            }
+            // 값이 줄었으면 카운터가 리셋된 것으로 보고 현재 값을 그대로 증가분으로 사용
+            double delta = last == null || sample.value < last[0] ? sample.value : sample.value - last[0];
+            if (delta == 0) continue;
+            points.add(new NumberPoint(sample.labelNames, sample.labelValues,
+                    last == null ? Math.min(start, nowNanos) : lastEncodeNanos, delta));
+        }
+        if (points.isEmpty()) return false;
+
+        startMetric(writer, family);
+        writer.startMessage(7); // Metric.sum
+        for (NumberPoint point : points) {
+            numberPoint(writer, point, nowNanos);
+        }
+        writer.uint32(2, temporality.protoValue);
+        writer.bool(3, true);
+        writer.endMessage();
+        writer.endMessage();
+        return true;
+    }
+
+    private boolean writeGauge(ProtoWriter writer, MetricFamilySamples family, Map<String, double[]> current,
+                               long nowNanos) {
+        List<NumberPoint> points = new ArrayList<>();
+        for (Sample sample : family.samples) {
+            if (!sample.name.equals(family.name) || Double.isNaN(sample.value)) continue;
+            String key = seriesKey(family.name, sample.labelValues);
+            double[] last = previous.get(key);
+            current.put(key, new double[]{sample.value});
+            // delta 모드에서는 바뀐 gauge 만 보냄
+            if (temporality == Temporality.DELTA && last != null && last[0] == sample.value) continue;
+            points.add(new NumberPoint(sample.labelNames, sample.labelValues, 0, sample.value));
+        }
+        if (points.isEmpty()) return false;
+
+        startMetric(writer, family);
+        writer.startMessage(5); // Metric.gauge
+        for (NumberPoint point : points) {
+            numberPoint(writer, point, nowNanos);
+        }
+        writer.endMessage();
+        writer.endMessage();
+        return true;
+    }
+
+    private boolean writeHistogram(ProtoWriter writer, MetricFamilySamples family, Map<String, double[]> current,
+                                   long nowNanos) {
+        Map<String, HistogramSeries> series = new LinkedHashMap<>();
+        String bucketName = family.name + "_bucket";
+        String countName = family.name + "_count";
+        String sumName = family.name + "_sum";
+        String createdName = family.name + "_created";
+        for (Sample sample : family.samples) {
+            boolean bucket = sample.name.equals(bucketName);
+            // 버킷 샘플은 마지막 라벨이 le
+            int labelCount = bucket ? sample.labelValues.size() - 1 : sample.labelValues.size();
+            List<String> labelValues = sample.labelValues.subList(0, labelCount);
+            HistogramSeries entry = series.computeIfAbsent(seriesKey(family.name, labelValues),
+                    key -> new HistogramSeries(sample.labelNames.subList(0, labelCount), labelValues));
+            if (bucket) {
+                entry.addBucket(parseBound(sample.labelValues.get(labelCount)), sample.value);
+            } else if (sample.name.equals(countName)) {
+                entry.count = sample.value;
+            } else if (sample.name.equals(sumName)) {
+                entry.sum = sample.value;
+            } else if (sample.name.equals(createdName)) {
+                entry.createdNanos = (long) (sample.value * 1e9);
+            }
+        }
+
+        List<HistogramPoint> points = new ArrayList<>();
+        for (Map.Entry<String, HistogramSeries> entry : series.entrySet()) {
+            HistogramSeries histogram = entry.getValue();
+            int buckets = histogram.buckets;
+            // [버킷별 개수..., count, sum]
+            double[] values = new double[buckets + 2];
+            for (int i = 0; i < buckets; i++) {
+                values[i] = histogram.cumulative[i] - (i > 0 ? histogram.cumulative[i - 1] : 0);
+            }
+            values[buckets] = histogram.count;
+            values[buckets + 1] = histogram.sum;
+            double[] last = previous.get(entry.getKey());
+            current.put(entry.getKey(), values);
+
+            long start = histogram.createdNanos > 0 ? histogram.createdNanos : lastEncodeNanos;
+            double[] reported = values;
+            if (temporality == Temporality.DELTA) {
+                if (last != null && last.length == values.length && values[buckets] >= last[buckets]) {
+                    reported = new double[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        reported[i] = values[i] - last[i];
+                    }
+                    start = lastEncodeNanos;
+                }
+                if (reported[buckets] == 0) continue;
+            }
+
+            long[] bucketCounts = new long[buckets];
+            for (int i = 0; i < buckets; i++) {
+                bucketCounts[i] = Math.round(reported[i]);
+            }
+            // +Inf 버킷은 explicit_bounds 에 넣지 않음
+            int bounds = buckets > 0 && histogram.bounds[buckets - 1] == Double.POSITIVE_INFINITY ? buckets - 1 : buckets;
+            points.add(new HistogramPoint(histogram.labelNames, histogram.labelValues, Math.min(start, nowNanos),
+                    Math.round(reported[buckets]), reported[buckets + 1], bucketCounts,
+                    Arrays.copyOf(histogram.bounds, bounds)));
+        }
+        if (points.isEmpty()) return false;
+
+        startMetric(writer, family);
+        writer.startMessage(9); // Metric.histogram
+        for (HistogramPoint point : points) {
+            writer.startMessage(1); // HistogramDataPoint
+            writer.fixed64(2, point.startNanos());
+            writer.fixed64(3, nowNanos);
+            writer.fixed64(4, point.count());
+            writer.double64(5, point.sum());
+            writer.packedFixed64(6, point.bucketCounts(), point.bucketCounts().length);
+            writer.packedDouble(7, point.bounds(), point.bounds().length);
+            attributes(writer, 9, point.labelNames(), point.labelValues());
+            writer.endMessage();
+        }
+        writer.uint32(2, temporality.protoValue);
+        writer.endMessage();
+        writer.endMessage();
+        return true;
+    }
+
+    private static void startMetric(ProtoWriter writer, MetricFamilySamples family) {
+        writer.startMessage(2); // ScopeMetrics.metrics
+        writer.string(1, family.name);
+        writer.string(2, family.help);
+        writer.string(3, family.unit);
+    }
+
+    private static void numberPoint(ProtoWriter writer, NumberPoint point, long nowNanos) {
+        writer.startMessage(1); // NumberDataPoint
+        if (point.startNanos() > 0) {
+            writer.fixed64(2, point.startNanos());
+        }
+        writer.fixed64(3, nowNanos);
+        writer.double64(4, point.value());
+        attributes(writer, 7, point.labelNames(), point.labelValues());
+        writer.endMessage();
+    }
+
+    private static void attributes(ProtoWriter writer, int field, List<String> names, List<String> values) {
+        for (int i = 0; i < names.size(); i++) {
+            keyValue(writer, field, names.get(i), values.get(i));
+        }
+    }
+
+    private static void keyValue(ProtoWriter writer, int field, String key, String value) {
+        writer.startMessage(field); // KeyValue
+        writer.string(1, key);
+        writer.startMessage(2); // AnyValue
+        writer.string(1, value);
+        writer.endMessage();
+        writer.endMessage();
+    }
+
+    /**
+     * 라벨 값 -> _created 시각 (epoch nanos)
+     */
+    private static Map<List<String>, Long> createdNanos(MetricFamilySamples family) {
+        String createdName = family.name + "_created";
+        Map<List<String>, Long> created = new HashMap<>();
+        for (Sample sample : family.samples) {
+            if (sample.name.equals(createdName)) {
+                created.put(sample.labelValues, (long) (sample.value * 1e9));
+            }
+        }
+        return created;
+    }
+
+    private static String seriesKey(String family, List<String> labelValues) {
+        StringBuilder key = new StringBuilder(family.length() + 16 * labelValues.size()).append(family);
+        for (String value : labelValues) {
+            key.append('\u0000').append(value);
+        }
+        return key.toString();
+    }
+
+    private static double parseBound(String le) {
+        return "+Inf".equals(le) ? Double.POSITIVE_INFINITY : Double.parseDouble(le);
+    }
+}
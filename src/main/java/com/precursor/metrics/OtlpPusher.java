@@ -0,0 +1,159 @@
+package com.precursor.metrics;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 주기마다 OTLP/HTTP protobuf 로 메트릭을 보냄 (OpenTelemetry collector 로 push)
+ * 보내지 못한 batch 는 최대 maxBufferedBatches 개까지 보관했다가 다음 주기에 오래된 것부터 다시 보내고,
+ * 넘치면 가장 오래된 batch 를 버린다. delta 모드의 증가분은 인코딩 시점에 확정되므로 재전송해도 중복되지 않는다.
+ */
+final class OtlpPusher {
+
+    private static final Logger LOGGER = Logger.getLogger(OtlpPusher.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    private static final String CONTENT_TYPE = "application/x-protobuf";
+
+    private final URI endpoint;
+    private final long intervalMillis;
+    private final int maxBufferedBatches;
+    private final OtlpMetricsEncoder encoder;
+    private final PrometheusExporter exporter;
+    private final HttpClient client;
+    // 전송 대기 중인 batch (scheduler 스레드와 close 에서만 접근)
+    private final ArrayDeque<byte[]> buffered = new ArrayDeque<>();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param endpoint OTLP/HTTP metrics 주소 (예: http://otel-collector:4318/v1/metrics)
+     * @param maxBufferedBatches 전송 실패 시 보관할 batch 수 (최소 1)
+     */
+    OtlpPusher(URI endpoint, long intervalMillis, int maxBufferedBatches, OtlpMetricsEncoder encoder,
+               PrometheusExporter exporter) {
+        this.endpoint = endpoint;
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.maxBufferedBatches = Math.max(1, maxBufferedBatches);
+        this.encoder = encoder;
+        this.exporter = exporter;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MILLIS))
+                .build();
+    }
+
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-otlp");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        LOGGER.infof("OTLP export started (endpoint=%s, temporality=%s, interval=%dms)",
+                endpoint, encoder.temporality(), intervalMillis);
+    }
+
+    private void run() {
+        try {
+            export();
+        } catch (RuntimeException e) {
+            LOGGER.warn("OTLP export failed", e);
+        }
+    }
+
+    /**
+     * 이번 주기 batch 를 만들어 대기열에 넣고, 대기열을 앞에서부터 보냄
+     * @return 대기열을 모두 보냈으면 true
+     */
+    synchronized boolean export() {
+        byte[] batch = encoder.encode(exporter.metricFamilySamples());
+        if (batch != null) {
+            if (buffered.size() == maxBufferedBatches) {
+                buffered.pollFirst();
+                exporter.recordOtlpDroppedBatch();
+                LOGGER.warnf("OTLP retry buffer full (%d batches), dropped the oldest batch", maxBufferedBatches);
+            }
+            buffered.addLast(batch);
+        }
+
+        while (!buffered.isEmpty()) {
+            byte[] next = buffered.peekFirst();
+            try {
+                int status = send(next);
+                if (status / 100 == 2) {
+                    buffered.pollFirst();
+                    continue;
+                }
+                exporter.recordOtlpExportFailure();
+                if (retryable(status)) {
+                    LOGGER.warnf("OTLP export rejected with HTTP %d, %d batches kept for retry", status, buffered.size());
+                    return false;
+                }
+                // 요청 자체가 잘못된 경우는 다시 보내도 같은 결과이므로 버림
+                buffered.pollFirst();
+                exporter.recordOtlpDroppedBatch();
+                LOGGER.warnf("OTLP export rejected with HTTP %d, batch dropped", status);
+            } catch (IOException e) {
+                exporter.recordOtlpExportFailure();
+                LOGGER.warnf("OTLP export failed, %d batches kept for retry: %s", buffered.size(), e.getMessage());
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int send(byte[] batch) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofMillis(REQUEST_TIMEOUT_MILLIS))
+                .header("Content-Type", CONTENT_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(batch))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * OTLP/HTTP 명세상 재시도 가능한 응답 (429, 502, 503, 504)
+     */
+    static boolean retryable(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    synchronized int bufferedBatches() {
+        return buffered.size();
+    }
+
+    /**
+     * 예약된 export 를 멈추고 마지막으로 한 번 export
+     */
+    void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        if (!export()) {
+            LOGGER.warnf("Final OTLP export incomplete, %d batches discarded", buffered.size());
+        }
+        client.shutdownNow();
+        LOGGER.info("OTLP export stopped.");
+    }
+}
@@ -0,0 +1,106 @@
+package com.precursor.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 요청 경로를 resource 라벨용 템플릿으로 정규화 (realm, client, 사용자 ID 등을 자리표시자로 치환)
+ * 예) /realms/demo/clients/6f1c.../roles -> /realms/{realm}/clients/{id}/roles
+ *     /resources/abc12/login/keycloak/css/login.css -> /resources/{path}
+ * 같은 경로가 반복되므로 결과를 크기 제한이 있는 맵에 캐시하고,
+ * 템플릿 종류가 상한을 넘으면 (스캐너의 임의 경로 등) 이후 새 템플릿은 "other" 로 접는다.
+ */
+final class PathTemplateNormalizer {
+
+    // 다음 세그먼트가 식별자인 경로 세그먼트
+    private static final Set<String> ID_PARENTS = Set.of(
+            "clients", "users", "groups", "roles-by-id", "client-scopes", "components",
+            "sessions", "offline-sessions", "instances", "executions", "flows", "authenticator-config",
+            "organizations", "resource", "policy", "permission", "scope", "credentials", "attack-detection");
+
+    // 이 세그먼트로 시작하는 경로는 정적 자원이므로 뒤쪽 전체를 하나의 템플릿으로 묶음 (테마/버전마다 템플릿이 늘지 않게)
+    private static final Set<String> STATIC_ROOTS = Set.of("resources", "js", "welcome-content");
+
+    private static final String OTHER = "other";
+
+    // 원본 경로 -> 템플릿
+    private final ConcurrentHashMap<String, String> templates = new ConcurrentHashMap<>();
+    // 지금까지 내보낸 템플릿 종류
+    private final Set<String> knownTemplates = ConcurrentHashMap.newKeySet();
+    private final int maxPaths;
+    private final int maxTemplates;
+
+    PathTemplateNormalizer(int maxPaths, int maxTemplates) {
+        this.maxPaths = maxPaths;
+        this.maxTemplates = maxTemplates;
+    }
+
+    String normalize(String path) {
+        if (path == null || path.isEmpty()) return "/";
+
+        String template = templates.get(path);
+        if (template != null) return template;
+
+        template = toTemplate(path);
+        if (!knownTemplates.contains(template)) {
+            if (knownTemplates.size() >= maxTemplates) {
+                template = OTHER;
+            } else {
+                knownTemplates.add(template);
+            }
+        }
+        // ID 가 포함된 경로는 종류가 계속 늘어나므로 가득 차면 비우고 자주 쓰는 경로부터 다시 채움
+        if (templates.size() >= maxPaths) {
+            templates.clear();
+        }
+        templates.put(path, template);
+        return template;
+    }
+
+    static String toTemplate(String path) {
+        StringBuilder template = new StringBuilder(path.length());
+        String previous = null;
+        int start = path.charAt(0) == '/' ? 1 : 0;
+        int rootEnd = path.indexOf('/', start);
+        if (rootEnd > start && rootEnd < path.length() - 1 && STATIC_ROOTS.contains(path.substring(start, rootEnd))) {
+            return template.append('/').append(path, start, rootEnd).append("/{path}").toString();
+        }
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = path.length();
+            String segment = path.substring(start, end);
+            if (!segment.isEmpty()) {
+                template.append('/');
+                if ("realms".equals(previous)) {
+                    template.append("{realm}");
+                } else if ((previous != null && ID_PARENTS.contains(previous)) || looksLikeId(segment)) {
+                    template.append("{id}");
+                } else {
+                    template.append(segment);
+                }
+                previous = segment;
+            }
+            start = end + 1;
+        }
+        return template.length() == 0 ? "/" : template.toString();
+    }
+
+    /**
+     * UUID, 숫자 등 식별자로 보이는 세그먼트
+     */
+    private static boolean looksLikeId(String segment) {
+        int digits = 0;
+        int hex = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-') {
+                hex++;
+            } else {
+                return false;
+            }
+        }
+        return digits == segment.length() || (segment.length() >= 16 && digits > 0 && digits + hex == segment.length());
+    }
+}
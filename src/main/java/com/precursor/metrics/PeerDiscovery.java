@@ -0,0 +1,16 @@
+package com.precursor.metrics;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * 클러스터 scrape 때 조회할 다른 Keycloak 노드 목록
+ * scrape 마다 호출되므로 구현은 목록을 캐시해 두고 바로 돌려줘야 한다.
+ */
+interface PeerDiscovery {
+
+    /**
+     * @return 자기 자신을 제외한 peer 의 base URL (예: http://keycloak-1:8080)
+     */
+    List<URI> peers();
+}
@@ -1,9 +1,12 @@
 package com.precursor.metrics;
 
+import io.prometheus.client.Collector.MetricFamilySamples;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import io.prometheus.client.exporter.common.TextFormat;
+import io.prometheus.client.hotspot.DefaultExports;
 import org.jboss.logging.Logger;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventType;
@@ -12,367 +15,890 @@ import org.keycloak.events.admin.OperationType;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
 
-import java.io.*;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class PrometheusExporter {
 
     private static final Logger LOGGER = Logger.getLogger(PrometheusExporter.class);
-    private static final String USER_EVENT_PREFIX = "keycloak_user_event_";
-    private static final String ADMIN_EVENT_PREFIX = "keycloak_admin_event_";
     private static final String PROVIDER_KEYCLOAK_OPENID = "keycloak";
+    private static final String UNKNOWN = "unknown";
+    static final int DEFAULT_REALM_CACHE_SIZE = 1024;
+    static final long DEFAULT_REALM_CACHE_TTL_SECONDS = 300;
+    static final int DEFAULT_CLIENT_ID_CARDINALITY_LIMIT = 500;
+    static final int DEFAULT_ERROR_CARDINALITY_LIMIT = 100;
+    static final int DEFAULT_AUTH_FLOW_CAPACITY = 65536;
+    static final long DEFAULT_AUTH_FLOW_TTL_SECONDS = 300;
+    static final int DEFAULT_LOGIN_RATE_MAX_CLIENTS = 1000;
+    static final long DEFAULT_LOGIN_RATE_IDLE_SECONDS = 600;
+    static final int DEFAULT_FAILED_LOGIN_TOP_K = 20;
+    static final long DEFAULT_FAILED_LOGIN_DECAY_SECONDS = 60;
+    private static final String DETAIL_USERNAME = "username";
+
+    // 상태 코드 라벨 문자열 (요청마다 만들지 않도록 미리 생성)
+    private static final String[] STATUS_CODES = new String[600];
+
+    static {
+        for (int i = 0; i < STATUS_CODES.length; i++) {
+            STATUS_CODES[i] = Integer.toString(i);
+        }
+    }
 
-    private static PrometheusExporter INSTANCE;
-    private static boolean initialized = false;
+    // factory 가 init 에서 만들어 공개한 exporter (요청 필터 등 factory 밖에서 조회, 락 없이 읽음)
+    private static final AtomicReference<PrometheusExporter> CURRENT = new AtomicReference<>();
+
+    // 이 exporter 의 전역 메트릭만 담는 전용 registry (defaultRegistry 를 쓰지 않아 재배포 시 이름 충돌이 없음)
+    private final CollectorRegistry registry;
+    // JVM / Infinispan 캐시 메트릭 전용 registry (이벤트 메트릭 scrape 와 분리해 /metrics/jvm 에서 제공)
+    private final CollectorRegistry runtimeRegistry = new CollectorRegistry();
+    private final CounterBackend counterBackend;
+
+    // realm 이름 -> 해당 realm 의 이벤트 메트릭 샤드
+    private final ConcurrentHashMap<String, RealmMetrics> realms = new ConcurrentHashMap<>();
+
+    private final LabelChildCache<Counter.Child> responseTotal;
+    private final LabelChildCache<Counter.Child> responseErrors;
+    private final LabelChildCache<Histogram.Child> requestDuration;
+    private final Counter droppedEvents;
+    private final Gauge eventQueueDepth;
+    private final Counter realmCacheHits;
+    private final Counter realmCacheMisses;
+    private final Counter scrapeCacheHits;
+    private final Counter scrapeCacheMisses;
+    private final Histogram scrapeRenderDuration;
+    private final Counter orphanedAuthFlows;
+    private final Counter pushFailures;
+    private final Counter otlpExportFailures;
+    private final Counter otlpDroppedBatches;
+    private final Counter eventTapDrops;
+    private final Counter evictedSeries;
+
+    private volatile RealmNameCache realmNames;
+    // 인증 흐름 추적 미사용 시 null
+    private volatile AuthFlowCorrelator authFlows;
+    // selfMetrics 비활성 시 null
+    private volatile SpiSelfMetrics selfMetrics;
+
+    private volatile int clientIdCardinalityLimit = DEFAULT_CLIENT_ID_CARDINALITY_LIMIT;
+    private volatile int errorCardinalityLimit = DEFAULT_ERROR_CARDINALITY_LIMIT;
+    private volatile int loginRateMaxClients = DEFAULT_LOGIN_RATE_MAX_CLIENTS;
+    private volatile long loginRateIdleSeconds = DEFAULT_LOGIN_RATE_IDLE_SECONDS;
+    private volatile int failedLoginTopK = DEFAULT_FAILED_LOGIN_TOP_K;
+    private volatile long failedLoginDecaySeconds = DEFAULT_FAILED_LOGIN_DECAY_SECONDS;
+    // EventType ordinal 별 기록 여부 (null 이면 전부 기록)
+    private volatile boolean[] enabledEventTypes;
+
+    PrometheusExporter(CollectorRegistry registry) {
+        this(registry, CounterBackend.SIMPLECLIENT);
+    }
 
-    private final Map<String, Counter> counters = new HashMap<>();
+    /**
+     * @param counterBackend 이벤트 / 응답 카운터 저장 방식
+     */
+    PrometheusExporter(CollectorRegistry registry, CounterBackend counterBackend) {
+        this.registry = registry;
+        this.counterBackend = counterBackend;
+
+        LOGGER.info("🔧 Initializing PrometheusExporter...");
+
+        // keycloak HTTP Response 수
+        responseTotal = new LabelChildCache<>(counterBackend.create("keycloak_response_total",
+                "Total HTTP responses",
+                "code", "method", "resource")
+                .register(registry));
+
+        // Keycloak HTTP Response Error 수
+        responseErrors = new LabelChildCache<>(counterBackend.create("keycloak_response_errors",
+                "Total HTTP error responses",
+                "code", "method", "resource")
+                .register(registry));
+
+        // keycloak 응답 비율
+        requestDuration = new LabelChildCache<>(Histogram.build()
+                .name("keycloak_request_duration")
+                .help("Request duration in ms")
+                .buckets(50, 100, 250, 500, 1000, 2000, 5000, 10000)
+                .labelNames("code", "method", "resource")
+                .register(registry));
+
+        // 비동기 모드에서 버퍼 초과로 버려진 이벤트 수
+        droppedEvents = Counter.build()
+                .name("keycloak_metrics_events_dropped_total")
+                .help("Events dropped because the async event queue was full")
+                .register(registry);
+
+        // 비동기 모드 큐 적재량
+        eventQueueDepth = Gauge.build()
+                .name("keycloak_metrics_event_queue_depth")
+                .help("Events waiting in the async event queue")
+                .register(registry);
+
+        // realm 이름 캐시 적중
+        realmCacheHits = Counter.build()
+                .name("keycloak_metrics_realm_cache_hits_total")
+                .help("Realm name lookups served from the cache")
+                .register(registry);
+
+        // realm 이름 캐시 미스 (RealmProvider 조회)
+        realmCacheMisses = Counter.build()
+                .name("keycloak_metrics_realm_cache_misses_total")
+                .help("Realm name lookups that missed the cache")
+                .register(registry);
+
+        // scrape 스냅샷 캐시 적중
+        scrapeCacheHits = Counter.build()
+                .name("keycloak_metrics_scrape_cache_hits_total")
+                .help("Scrapes served from a cached snapshot")
+                .register(registry);
+
+        // scrape 스냅샷 캐시 미스 (새로 렌더링)
+        scrapeCacheMisses = Counter.build()
+                .name("keycloak_metrics_scrape_cache_misses_total")
+                .help("Scrapes that had to render a new snapshot")
+                .register(registry);
+
+        // 스냅샷 렌더링 시간
+        scrapeRenderDuration = Histogram.build()
+                .name("keycloak_metrics_scrape_render_seconds")
+                .help("Time spent rendering a scrape snapshot")
+                .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5)
+                .register(registry);
+
+        // 짝이 되는 CODE_TO_TOKEN 없이 만료/밀려난 LOGIN 흐름 수
+        orphanedAuthFlows = Counter.build()
+                .name("keycloak_auth_flow_orphaned_total")
+                .help("LOGIN events that expired or were evicted before a matching CODE_TO_TOKEN")
+                .register(registry);
+
+        // Pushgateway push 실패 수
+        pushFailures = Counter.build()
+                .name("keycloak_metrics_push_failures_total")
+                .help("Failed pushes to the Pushgateway")
+                .register(registry);
+
+        // OTLP export 실패 수 (재시도 대상 포함)
+        otlpExportFailures = Counter.build()
+                .name("keycloak_metrics_otlp_export_failures_total")
+                .help("Failed OTLP export requests")
+                .register(registry);
+
+        // 재시도 버퍼 초과 / 재시도 불가 응답으로 버려진 OTLP batch 수
+        otlpDroppedBatches = Counter.build()
+                .name("keycloak_metrics_otlp_dropped_batches_total")
+                .help("OTLP batches dropped because the retry buffer was full or the receiver rejected them")
+                .register(registry);
+
+        // 이벤트 탭에서 기록하지 못한 이벤트 수 (샘플링으로 제외된 것은 포함하지 않음)
+        eventTapDrops = Counter.build()
+                .name("keycloak_metrics_event_tap_dropped_total")
+                .help("Sampled events the event tap could not write")
+                .labelNames("reason")
+                .register(registry);
+
+        // 유휴 상태로 제거된 시리즈 수
+        evictedSeries = Counter.build()
+                .name("keycloak_metrics_series_evicted_total")
+                .help("Label series removed after receiving no events for longer than their idle TTL")
+                .labelNames("metric")
+                .register(registry);
+
+        authFlows = new AuthFlowCorrelator(DEFAULT_AUTH_FLOW_CAPACITY, DEFAULT_AUTH_FLOW_TTL_SECONDS,
+                orphanedAuthFlows);
+
+        realmNames = new RealmNameCache(DEFAULT_REALM_CACHE_SIZE, DEFAULT_REALM_CACHE_TTL_SECONDS,
+                realmCacheHits, realmCacheMisses);
+
+        LOGGER.info("✅ PrometheusExporter initialized.");
+    }
 
-    private Counter loginAttempts;
-    private Counter successfulLogins;
-    private Counter failedLogins;
-    private Counter registrations;
-    private Counter registrationErrors;
-    private Counter refreshTokens;
-    private Counter refreshTokenErrors;
-    private Counter clientLogins;
-    private Counter failedClientLogins;
-    private Counter codeToTokens;
-    private Counter codeToTokenErrors;
-    private Counter responseTotal;
-    private Counter responseErrors;
-    private Histogram requestDuration;
+    /**
+     * @return factory 가 공개한 현재 exporter, 아직 초기화 전이거나 종료 후면 null
+     */
+    public static PrometheusExporter instance() {
+        return CURRENT.get();
+    }
 
-    private PrometheusExporter() {
-        synchronized (PrometheusExporter.class) {
-            if (initialized) return;
+    /**
+     * factory 밖(요청 필터 등)에서 instance() 로 조회할 수 있도록 공개
+     */
+    void publish() {
+        CURRENT.set(this);
+    }
 
-            LOGGER.info("🔧 Initializing PrometheusExporter...");
+    CollectorRegistry registry() {
+        return registry;
+    }
 
-            try {
-                // 로그인 시도 횟수
-                loginAttempts = Counter.build()
-                        .name("keycloak_login_attempts_total")
-                        .help("Total login attempts")
-                        .labelNames("realm", "provider", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_login_attempts_total");
-            }
+    /**
+     * 전용 registry 에서 모든 메트릭을 해제하고 샤드를 비움
+     * (재배포로 새 factory 가 이미 다른 exporter 를 공개했다면 그대로 둔다)
+     */
+    void close() {
+        CURRENT.compareAndSet(this, null);
+        registry.clear();
+        runtimeRegistry.clear();
+        realms.clear();
+        LOGGER.info("PrometheusExporter closed.");
+    }
 
-            try {
-                // 로그인 성공 횟수
-                successfulLogins = Counter.build()
-                        .name("keycloak_logins_total")
-                        .help("Total successful logins")
-                        .labelNames("realm", "provider", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_logins_total");
-            }
+    /**
+     * client_id / error 라벨별 최대 시리즈 수 설정 (0 이면 제한 없음)
+     */
+    void configureCardinalityLimits(int clientIdLimit, int errorLimit) {
+        clientIdCardinalityLimit = clientIdLimit;
+        errorCardinalityLimit = errorLimit;
+        for (RealmMetrics shard : realms.values()) {
+            shard.configureCardinalityLimits(clientIdLimit, errorLimit);
+        }
+    }
 
-            try {
-                // 로그인 실패 횟수
-                failedLogins = Counter.build()
-                        .name("keycloak_failed_login_attempts_total")
-                        .help("Total failed login attempts")
-                        .labelNames("realm", "provider", "error", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_failed_login_attempts_total");
-            }
+    /**
+     * 로그인 실패율 윈도우 설정
+     * @param maxClients realm 당 추적할 최대 client 수 (0 이면 realm 합계만)
+     * @param idleSeconds 이 시간 동안 로그인이 없던 client 는 추적에서 제외
+     */
+    void configureLoginRates(int maxClients, long idleSeconds) {
+        loginRateMaxClients = maxClients;
+        loginRateIdleSeconds = idleSeconds;
+        for (RealmMetrics shard : realms.values()) {
+            shard.loginRates.configure(maxClients, idleSeconds);
+        }
+    }
 
-            try {
-                // 유저 등록 전체 수
-                registrations = Counter.build()
-                        .name("keycloak_registrations_total")
-                        .help("Total user registrations")
-                        .labelNames("realm", "provider", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_registrations_total");
+    /**
+     * 기록할 이벤트 타입 설정, 제외된 타입은 전용 카운터를 포함해 아무것도 기록하지 않고 타입별 family 도 만들지 않는다.
+     * @param allowlist 쉼표로 구분한 EventType 이름, 비어 있으면 전체
+     * @param denylist allowlist 에서 뺄 EventType 이름
+     */
+    void configureEventTypes(String allowlist, String denylist) {
+        boolean[] enabled = null;
+        if (allowlist != null && !allowlist.isBlank()) {
+            enabled = new boolean[EventType.values().length];
+            for (EventType type : parseEventTypes(allowlist)) {
+                enabled[type.ordinal()] = true;
             }
-
-            try {
-                // 등록(회원가입) 에러
-                registrationErrors = Counter.build()
-                        .name("keycloak_registrations_errors")
-                        .help("Total user registration errors")
-                        .labelNames("realm", "provider", "error", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_registrations_errors");
+        }
+        if (denylist != null && !denylist.isBlank()) {
+            if (enabled == null) {
+                enabled = new boolean[EventType.values().length];
+                Arrays.fill(enabled, true);
             }
-
-            try {
-                // Refresh Token
-                refreshTokens = Counter.build()
-                        .name("keycloak_refresh_tokens")
-                        .help("Total refresh tokens")
-                        .labelNames("realm", "provider", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_refresh_tokens");
+            for (EventType type : parseEventTypes(denylist)) {
+                enabled[type.ordinal()] = false;
             }
+        }
+        enabledEventTypes = enabled;
+        for (RealmMetrics shard : realms.values()) {
+            shard.configureEventTypes(enabled);
+        }
+    }
 
+    private static List<EventType> parseEventTypes(String names) {
+        List<EventType> types = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (name.isBlank()) continue;
             try {
-                // Refresh Token Error
-                refreshTokenErrors = Counter.build()
-                        .name("keycloak_refresh_tokens_errors")
-                        .help("Total refresh token errors")
-                        .labelNames("realm", "provider", "error", "client_id")
-                        .register();
+                types.add(EventType.valueOf(name.trim().toUpperCase(Locale.ROOT)));
             } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_refresh_tokens_errors");
+                LOGGER.warnf("Ignoring unknown event type '%s'", name.trim());
             }
+        }
+        return types;
+    }
 
-            try {
-                // Client 별 로그인 수
-                clientLogins = Counter.build()
-                        .name("keycloak_client_logins")
-                        .help("Total successful client logins")
-                        .labelNames("realm", "provider", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_client_logins");
-            }
+    /**
+     * @return 이 타입의 이벤트를 기록하는지 (configureEventTypes 의 allow/deny 목록)
+     */
+    boolean recordsEventType(EventType type) {
+        boolean[] enabled = enabledEventTypes;
+        return enabled == null || enabled[type.ordinal()];
+    }
 
-            try {
-                // Client 별 로그인 실패 수
-                failedClientLogins = Counter.build()
-                        .name("keycloak_failed_client_login_attempts")
-                        .help("Total failed client logins")
-                        .labelNames("realm", "provider", "error", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_failed_client_login_attempts");
-            }
+    /**
+     * 로그인 실패 상위 IP / username 추적 설정
+     * @param topK 종류별 유지할 상위 값 수 (0 이면 사용 안 함)
+     * @param decaySeconds 이 주기마다 누적 빈도를 절반으로 감쇠
+     */
+    void configureFailedLoginSources(int topK, long decaySeconds) {
+        failedLoginTopK = topK;
+        failedLoginDecaySeconds = decaySeconds;
+        for (RealmMetrics shard : realms.values()) {
+            shard.failedLoginSources.configure(topK, decaySeconds);
+        }
+    }
 
-            try {
-                // Code - Token Exchanged
-                codeToTokens = Counter.build()
-                        .name("keycloak_code_to_tokens")
-                        .help("Total successful code-to-token exchanges")
-                        .labelNames("realm", "provider", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_code_to_tokens");
-            }
+    /**
+     * LOGIN -> CODE_TO_TOKEN 추적 설정 (capacity 0 이면 사용 안 함)
+     */
+    void configureAuthFlowTracking(int capacity, long ttlSeconds) {
+        authFlows = capacity > 0 ? new AuthFlowCorrelator(capacity, ttlSeconds, orphanedAuthFlows) : null;
+    }
 
-            try {
-                // Code - Token Exchanged Error
-                codeToTokenErrors = Counter.build()
-                        .name("keycloak_code_to_tokens_errors")
-                        .help("Total failed code-to-token exchanges")
-                        .labelNames("realm", "provider", "error", "client_id")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_code_to_tokens_errors");
-            }
+    boolean tracksAuthFlows() {
+        return authFlows != null;
+    }
 
-            try {
-                // keycloak HTTP Response 수
-                responseTotal = Counter.build()
-                        .name("keycloak_response_total")
-                        .help("Total HTTP responses")
-                        .labelNames("code", "method", "resource")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_response_total");
-            }
+    /**
+     * TTL 이 지난 LOGIN 흐름을 orphan 으로 집계 (짝이 될 이벤트가 다시 오지 않아도 집계되도록 주기적으로 호출)
+     * @return 치운 흐름 수
+     */
+    int expireAuthFlows(long now) {
+        AuthFlowCorrelator correlator = authFlows;
+        return correlator != null ? correlator.expire(now) : 0;
+    }
 
-            try {
-                // Keycloak HTTP Response Error 수
-                responseErrors = Counter.build()
-                        .name("keycloak_response_errors")
-                        .help("Total HTTP error responses")
-                        .labelNames("code", "method", "resource")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_response_errors");
-            }
+    /**
+     * realm 샤드 조회 (처음 보는 realm 이면 생성)
+     */
+    RealmMetrics realm(String realm) {
+        RealmMetrics shard = realms.get(realm);
+        if (shard == null) {
+            shard = realms.computeIfAbsent(realm,
+                    name -> new RealmMetrics(name, clientIdCardinalityLimit, errorCardinalityLimit,
+                            loginRateMaxClients, loginRateIdleSeconds, failedLoginTopK, failedLoginDecaySeconds,
+                            enabledEventTypes, counterBackend));
+        }
+        return shard;
+    }
 
-            try {
-                // keycloak 응답 비율
-                requestDuration = Histogram.build()
-                        .name("keycloak_request_duration")
-                        .help("Request duration in ms")
-                        .buckets(50, 100, 250, 500, 1000, 2000, 5000, 10000)
-                        .labelNames("code", "method", "resource")
-                        .register();
-            } catch (IllegalArgumentException e) {
-                LOGGER.warn("Metric already registered: keycloak_request_duration");
-            }
+    /**
+     * realm 이름 캐시 설정 (maxSize 0 이면 캐시 사용 안 함)
+     */
+    void configureRealmCache(int maxSize, long ttlSeconds) {
+        realmNames = new RealmNameCache(maxSize, ttlSeconds, realmCacheHits, realmCacheMisses);
+    }
 
-            // 모든 이벤트 타입별 카운터
-            for (EventType type : EventType.values()) {
-                counters.put(buildUserCounterName(type), createUserCounter(type));
-            }
+    void invalidateRealm(String realmId) {
+        realmNames.invalidate(realmId);
+    }
 
-            for (OperationType type : OperationType.values()) {
-                counters.put(buildAdminCounterName(type), createAdminCounter(type));
-            }
+    /**
+     * 삭제된 realm 의 샤드 제거
+     * @param realmNameHint 이벤트에 실려 온 realm 이름 (캐시를 쓰지 않거나 캐시에 없을 때 사용)
+     */
+    void removeRealm(String realmId, String realmNameHint) {
+        String name = realmNames.peek(realmId);
+        realmNames.invalidate(realmId);
+        if (name == null) {
+            name = realmNameHint;
+        }
+        removeRealmShard(name);
+    }
 
-            initialized = true;
-            LOGGER.info("✅ PrometheusExporter initialized.");
+    /**
+     * realm 이름으로 샤드 제거 (비동기 모드에서는 drain 스레드가 앞선 이벤트를 반영한 뒤 호출)
+     */
+    void removeRealmShard(String realm) {
+        if (realm != null) {
+            realms.remove(realm);
         }
     }
 
-    public static synchronized PrometheusExporter instance() {
-        if (INSTANCE == null) {
-            INSTANCE = new PrometheusExporter();
+    /**
+     * @param realmNameHint 이벤트에 실려 온 realm 이름 (있으면 캐시 미스 시 RealmProvider 조회 생략)
+     */
+    String getRealmName(String realmId, String realmNameHint, RealmProvider provider) {
+        if (realmId == null) return UNKNOWN;
+
+        RealmNameCache cache = realmNames;
+        if (!cache.isEnabled()) {
+            return orUnknown(lookupRealmName(realmId, realmNameHint, provider));
         }
-        return INSTANCE;
+
+        String name = cache.get(realmId);
+        if (name != null) return name;
+
+        name = lookupRealmName(realmId, realmNameHint, provider);
+        if (name == null) return UNKNOWN;
+        cache.put(realmId, name);
+        return name;
     }
 
-    private Counter createUserCounter(EventType type) {
-        return Counter.build()
-                .name(buildUserCounterName(type))
-                .help("User event: " + type.name())
-                .labelNames("realm")
-                .register();
+    private String lookupRealmName(String realmId, String realmNameHint, RealmProvider provider) {
+        if (realmNameHint != null) return realmNameHint;
+        if (provider == null) return null;
+        RealmModel realm = provider.getRealm(realmId);
+        return realm != null ? realm.getName() : null;
     }
 
-    private Counter createAdminCounter(OperationType type) {
-        return Counter.build()
-                .name(buildAdminCounterName(type))
-                .help("Admin event: " + type.name())
-                .labelNames("realm", "resource")
-                .register();
+    String getRealmName(Event event, RealmProvider provider) {
+        return getRealmName(event.getRealmId(), event.getRealmName(), provider);
     }
 
-    private String buildUserCounterName(EventType type) {
-        return USER_EVENT_PREFIX + type.name().toLowerCase();
+    String getProvider(Event event) {
+        Map<String, String> details = event.getDetails();
+        String identityProvider = details != null ? details.get("identity_provider") : null;
+        return identityProvider != null ? identityProvider : PROVIDER_KEYCLOAK_OPENID;
     }
 
-    private String buildAdminCounterName(OperationType type) {
-        return ADMIN_EVENT_PREFIX + type.name().toLowerCase();
+    static String orUnknown(String value) {
+        return value != null ? value : UNKNOWN;
     }
 
-    private String getRealmName(String realmId, RealmProvider provider) {
-        if (realmId == null || provider == null) return "unknown";
-        RealmModel realm = provider.getRealm(realmId);
-        return realm != null ? realm.getName() : "unknown";
+    // === Event 처리 ===
+
+    /**
+     * 이벤트 타입별 record 메서드로 분기 (동기/비동기 모드 공용)
+     */
+    public void recordEvent(Event event, RealmProvider provider) {
+        recordEvent(event.getType(),
+                getRealmName(event, provider),
+                getProvider(event),
+                orUnknown(event.getClientId()),
+                orUnknown(event.getError()),
+                sessionKey(event),
+                event.getTime(),
+                failedLoginIpAddress(event),
+                failedLoginUsername(event));
     }
 
-    private String getProvider(Event event) {
-        if (event.getDetails() != null && event.getDetails().containsKey("identity_provider")) {
-            return event.getDetails().get("identity_provider");
-        }
-        return PROVIDER_KEYCLOAK_OPENID;
+    /**
+     * @return 인증 흐름 추적용 세션 키 (추적 대상 이벤트가 아니면 0)
+     */
+    static long sessionKey(Event event) {
+        return AuthFlowCorrelator.tracks(event.getType()) ? AuthFlowCorrelator.key(event.getSessionId()) : 0L;
     }
 
-    // === Event 처리 ===
+    /**
+     * @return LOGIN_ERROR 의 요청 IP (그 외 이벤트는 null)
+     */
+    static String failedLoginIpAddress(Event event) {
+        return event.getType() == EventType.LOGIN_ERROR ? event.getIpAddress() : null;
+    }
+
+    /**
+     * @return LOGIN_ERROR 에 입력된 username (그 외 이벤트는 null)
+     */
+    static String failedLoginUsername(Event event) {
+        if (event.getType() != EventType.LOGIN_ERROR) return null;
+        Map<String, String> details = event.getDetails();
+        return details != null ? details.get(DETAIL_USERNAME) : null;
+    }
+
+    /**
+     * @param sessionKey AuthFlowCorrelator.key(sessionId), 추적하지 않으면 0
+     * @param time 이벤트 발생 시각 (epoch millis)
+     * @param ipAddress LOGIN_ERROR 의 요청 IP (그 외 null)
+     * @param username LOGIN_ERROR 의 username (그 외 null)
+     */
+    void recordEvent(EventType type, String realm, String providerName, String clientId, String error,
+                     long sessionKey, long time, String ipAddress, String username) {
+        if (!recordsEventType(type)) return;
+        switch (type) {
+            case LOGIN -> {
+                recordLogin(realm, providerName, clientId);
+                startAuthFlow(sessionKey, time);
+            }
+            case LOGIN_ERROR -> recordLoginError(realm, providerName, clientId, error, ipAddress, username);
+            case CLIENT_LOGIN -> recordClientLogin(realm, providerName, clientId);
+            case REGISTER -> recordRegistration(realm, providerName, clientId);
+            case REGISTER_ERROR -> recordRegistrationError(realm, providerName, clientId, error);
+            case REFRESH_TOKEN -> recordRefreshToken(realm, providerName, clientId);
+            case REFRESH_TOKEN_ERROR -> recordRefreshTokenError(realm, providerName, clientId, error);
+            case CODE_TO_TOKEN -> {
+                recordCodeToToken(realm, providerName, clientId);
+                completeAuthFlow(realm, clientId, sessionKey, time);
+            }
+            case CODE_TO_TOKEN_ERROR -> recordCodeToTokenError(realm, providerName, clientId, error);
+            case CLIENT_LOGIN_ERROR -> recordClientLoginError(realm, providerName, clientId, error);
+            default -> recordGenericEvent(type, realm);
+        }
+    }
 
     public void recordGenericEvent(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String name = buildUserCounterName(event.getType());
-        if (counters.containsKey(name)) {
-            counters.get(name).labels(realm).inc();
+        recordGenericEvent(event.getType(), getRealmName(event, provider));
+    }
+
+    void recordGenericEvent(EventType type, String realm) {
+        LabelChildCache<Counter.Child> counter = realm(realm).userEventCounter(type);
+        if (counter != null) {
+            counter.labels(realm).inc();
         }
     }
 
     public void recordGenericAdminEvent(AdminEvent event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String name = buildAdminCounterName(event.getOperationType());
-        if (counters.containsKey(name)) {
-            counters.get(name).labels(realm, event.getResourceType().name()).inc();
+        recordAdminEvent(event.getOperationType(),
+                getRealmName(event.getRealmId(), event.getRealmName(), provider),
+                event.getResourceType().name());
+    }
+
+    void recordAdminEvent(OperationType type, String realm, String resourceType) {
+        LabelChildCache<Counter.Child> counter = realm(realm).adminEventCounter(type);
+        if (counter != null) {
+            counter.labels(realm, resourceType).inc();
         }
     }
 
     public void recordLogin(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordLogin(getRealmName(event, provider), getProvider(event), orUnknown(event.getClientId()));
+    }
 
-        loginAttempts.labels(realm, providerName, clientId).inc();
-        successfulLogins.labels(realm, providerName, clientId).inc();
+    void recordLogin(String realm, String providerName, String clientId) {
+        RealmMetrics shard = realm(realm);
+        shard.loginAttempts.labels(realm, providerName, clientId).inc();
+        shard.successfulLogins.labels(realm, providerName, clientId).inc();
+        shard.loginRates.record(clientId, false);
     }
 
     public void recordLoginError(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String error = Optional.ofNullable(event.getError()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordLoginError(getRealmName(event, provider), getProvider(event),
+                orUnknown(event.getClientId()), orUnknown(event.getError()),
+                event.getIpAddress(), failedLoginUsername(event));
+    }
 
-        loginAttempts.labels(realm, providerName, clientId).inc();
-        failedLogins.labels(realm, providerName, error, clientId).inc();
+    void recordLoginError(String realm, String providerName, String clientId, String error,
+                          String ipAddress, String username) {
+        RealmMetrics shard = realm(realm);
+        shard.loginAttempts.labels(realm, providerName, clientId).inc();
+        shard.failedLogins.labels(realm, providerName, error, clientId).inc();
+        shard.loginRates.record(clientId, true);
+        shard.failedLoginSources.record(ipAddress, username);
     }
 
     public void recordClientLogin(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordClientLogin(getRealmName(event, provider), getProvider(event), orUnknown(event.getClientId()));
+    }
 
-        clientLogins.labels(realm, providerName, clientId).inc();
+    void recordClientLogin(String realm, String providerName, String clientId) {
+        realm(realm).clientLogins.labels(realm, providerName, clientId).inc();
     }
 
     public void recordClientLoginError(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String error = Optional.ofNullable(event.getError()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordClientLoginError(getRealmName(event, provider), getProvider(event),
+                orUnknown(event.getClientId()), orUnknown(event.getError()));
+    }
 
-        failedClientLogins.labels(realm, providerName, error, clientId).inc();
+    void recordClientLoginError(String realm, String providerName, String clientId, String error) {
+        realm(realm).failedClientLogins.labels(realm, providerName, error, clientId).inc();
     }
 
     public void recordRegistration(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordRegistration(getRealmName(event, provider), getProvider(event), orUnknown(event.getClientId()));
+    }
 
-        registrations.labels(realm, providerName, clientId).inc();
+    void recordRegistration(String realm, String providerName, String clientId) {
+        realm(realm).registrations.labels(realm, providerName, clientId).inc();
     }
 
     public void recordRegistrationError(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String error = Optional.ofNullable(event.getError()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordRegistrationError(getRealmName(event, provider), getProvider(event),
+                orUnknown(event.getClientId()), orUnknown(event.getError()));
+    }
 
-        registrationErrors.labels(realm, providerName, error, clientId).inc();
+    void recordRegistrationError(String realm, String providerName, String clientId, String error) {
+        realm(realm).registrationErrors.labels(realm, providerName, error, clientId).inc();
     }
 
     public void recordRefreshToken(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordRefreshToken(getRealmName(event, provider), getProvider(event), orUnknown(event.getClientId()));
+    }
 
-        LOGGER.infof("🔁 [recordRefreshToken] realm=%s, clientId=%s, provider=%s", realm, clientId, providerName);
+    void recordRefreshToken(String realm, String providerName, String clientId) {
+        LOGGER.debugf("🔁 [recordRefreshToken] realm=%s, clientId=%s, provider=%s", realm, clientId, providerName);
 
-        refreshTokens.labels(realm, providerName, clientId).inc();
+        realm(realm).refreshTokens.labels(realm, providerName, clientId).inc();
     }
 
     public void recordRefreshTokenError(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String error = Optional.ofNullable(event.getError()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordRefreshTokenError(getRealmName(event, provider), getProvider(event),
+                orUnknown(event.getClientId()), orUnknown(event.getError()));
+    }
 
-        refreshTokenErrors.labels(realm, providerName, error, clientId).inc();
+    void recordRefreshTokenError(String realm, String providerName, String clientId, String error) {
+        realm(realm).refreshTokenErrors.labels(realm, providerName, error, clientId).inc();
     }
 
     public void recordCodeToToken(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordCodeToToken(getRealmName(event, provider), getProvider(event), orUnknown(event.getClientId()));
+    }
 
-        codeToTokens.labels(realm, providerName, clientId).inc();
+    void recordCodeToToken(String realm, String providerName, String clientId) {
+        realm(realm).codeToTokens.labels(realm, providerName, clientId).inc();
     }
 
     public void recordCodeToTokenError(Event event, RealmProvider provider) {
-        String realm = getRealmName(event.getRealmId(), provider);
-        String clientId = Optional.ofNullable(event.getClientId()).orElse("unknown");
-        String error = Optional.ofNullable(event.getError()).orElse("unknown");
-        String providerName = getProvider(event);
+        recordCodeToTokenError(getRealmName(event, provider), getProvider(event),
+                orUnknown(event.getClientId()), orUnknown(event.getError()));
+    }
+
+    void recordCodeToTokenError(String realm, String providerName, String clientId, String error) {
+        realm(realm).codeToTokenErrors.labels(realm, providerName, error, clientId).inc();
+    }
+
+    // === 로그인 실패율 조회 (다른 SPI 용) ===
+
+    /**
+     * @param clientId null 이면 realm 전체
+     * @param windowSeconds 1 ~ 300 초
+     * @return 최근 windowSeconds 초의 초당 로그인 시도 수 (기록이 없으면 0)
+     */
+    public double loginAttemptRate(String realm, String clientId, int windowSeconds) {
+        RealmMetrics shard = realms.get(realm);
+        return shard != null ? shard.loginRates.attemptRate(clientId, clampWindow(windowSeconds)) : 0.0;
+    }
+
+    /**
+     * @param clientId null 이면 realm 전체
+     * @param windowSeconds 1 ~ 300 초
+     * @return 최근 windowSeconds 초의 초당 로그인 실패 수 (기록이 없으면 0)
+     */
+    public double loginFailureRate(String realm, String clientId, int windowSeconds) {
+        RealmMetrics shard = realms.get(realm);
+        return shard != null ? shard.loginRates.failureRate(clientId, clampWindow(windowSeconds)) : 0.0;
+    }
+
+    /**
+     * @param clientId null 이면 realm 전체
+     * @param windowSeconds 1 ~ 300 초
+     * @return 최근 windowSeconds 초의 로그인 성공 비율 (시도가 없으면 NaN)
+     */
+    public double loginSuccessRatio(String realm, String clientId, int windowSeconds) {
+        RealmMetrics shard = realms.get(realm);
+        return shard != null ? shard.loginRates.successRatio(clientId, clampWindow(windowSeconds)) : Double.NaN;
+    }
+
+    /**
+     * SessionStatsRefresher 가 계산한 realm 의 세션 / 사용자 수 반영
+     */
+    void updateSessionStats(String realm, SessionStats.Snapshot snapshot) {
+        realm(realm).sessionStats.update(snapshot);
+    }
+
+    /**
+     * @return realm 의 로그인 실패 상위 IP (추적하지 않으면 빈 목록)
+     */
+    List<HeavyHitterTracker.Entry> topFailedLoginIpAddresses(String realm) {
+        RealmMetrics shard = realms.get(realm);
+        return shard != null ? shard.failedLoginSources.topIpAddresses() : List.of();
+    }
+
+    /**
+     * @return realm 의 로그인 실패 상위 username (추적하지 않으면 빈 목록)
+     */
+    List<HeavyHitterTracker.Entry> topFailedLoginUsernames(String realm) {
+        RealmMetrics shard = realms.get(realm);
+        return shard != null ? shard.failedLoginSources.topUsernames() : List.of();
+    }
+
+    private static int clampWindow(int windowSeconds) {
+        return Math.max(1, Math.min(windowSeconds, SlidingLoginWindow.WINDOW_SECONDS));
+    }
+
+    private void startAuthFlow(long sessionKey, long time) {
+        AuthFlowCorrelator correlator = authFlows;
+        if (correlator != null) {
+            correlator.start(sessionKey, time);
+        }
+    }
+
+    private void completeAuthFlow(String realm, String clientId, long sessionKey, long time) {
+        AuthFlowCorrelator correlator = authFlows;
+        if (correlator == null) return;
+        long startTime = correlator.complete(sessionKey, time);
+        if (startTime >= 0) {
+            realm(realm).authCodeExchangeDuration.labels(realm, clientId).observe((time - startTime) / 1000.0);
+        }
+    }
+
+    // === 체크포인트 ===
+
+    /**
+     * @return 체크포인트 대상 전역 카운터 (HTTP 응답 수)
+     */
+    List<LabelChildCache<Counter.Child>> globalCounters() {
+        return List.of(responseTotal, responseErrors);
+    }
+
+    /**
+     * @return 전역 메트릭의 라벨 child 캐시 (유휴 시리즈 제거 대상)
+     */
+    List<LabelChildCache<?>> globalChildCaches() {
+        return List.of(responseTotal, responseErrors, requestDuration);
+    }
+
+    void recordEvictedSeries(String metric, int count) {
+        evictedSeries.labels(metric).inc(count);
+    }
+
+    Collection<RealmMetrics> shards() {
+        return realms.values();
+    }
+
+    /**
+     * 체크포인트 복원 시 이름과 첫 라벨 값(realm)으로 카운터 family 조회
+     * @return 없으면 null
+     */
+    LabelChildCache<Counter.Child> counterFamily(String name, String firstLabelValue) {
+        for (LabelChildCache<Counter.Child> counter : globalCounters()) {
+            if (counter.name().equals(name)) return counter;
+        }
+        return firstLabelValue != null ? realm(firstLabelValue).counter(name) : null;
+    }
+
+    // === HTTP 요청 ===
+
+    /**
+     * @param resource 정규화된 경로 템플릿
+     */
+    void recordResponse(int status, String method, String resource, double durationMillis) {
+        String code = statusCode(status);
+        responseTotal.labels(code, method, resource).inc();
+        if (status >= 400) responseErrors.labels(code, method, resource).inc();
+        requestDuration.labels(code, method, resource).observe(durationMillis);
+    }
+
+    private static String statusCode(int status) {
+        return status >= 0 && status < STATUS_CODES.length ? STATUS_CODES[status] : Integer.toString(status);
+    }
+
+    // === 비동기 모드 ===
+
+    void recordDroppedEvent() {
+        droppedEvents.inc();
+    }
+
+    void setEventQueueDepth(int depth) {
+        eventQueueDepth.set(depth);
+    }
+
+    // === scrape 스냅샷 캐시 ===
+
+    void recordScrapeCacheHit() {
+        scrapeCacheHits.inc();
+    }
+
+    void recordScrapeCacheMiss() {
+        scrapeCacheMisses.inc();
+    }
+
+    void observeScrapeRender(double seconds) {
+        scrapeRenderDuration.observe(seconds);
+    }
+
+    // === Pushgateway ===
+
+    void recordPushFailure() {
+        pushFailures.inc();
+    }
+
+    // === SPI 자체 계측 ===
 
-        codeToTokenErrors.labels(realm, providerName, error, clientId).inc();
+    /**
+     * keycloak_metrics_spi_* family 등록 (registerRuntimeCollectors 보다 먼저 호출해야 등록 실패가 집계됨)
+     * @param eventSampleEvery onEvent 처리 시간을 몇 건마다 한 번 잴지
+     */
+    void enableSelfMetrics(int eventSampleEvery) {
+        selfMetrics = new SpiSelfMetrics(this, registry, eventSampleEvery);
+    }
+
+    /**
+     * @return 자체 계측, 비활성이면 null
+     */
+    SpiSelfMetrics selfMetrics() {
+        return selfMetrics;
+    }
+
+    // === OTLP ===
+
+    void recordOtlpExportFailure() {
+        otlpExportFailures.inc();
+    }
+
+    void recordOtlpDroppedBatch() {
+        otlpDroppedBatches.inc();
+    }
+
+    // === 이벤트 탭 ===
+
+    /**
+     * @param reason rate_limited | queue_full | write_error
+     */
+    Counter.Child eventTapDrops(String reason) {
+        return eventTapDrops.labels(reason);
     }
 
     public void export(OutputStream out) throws IOException {
-        Writer writer = new BufferedWriter(new OutputStreamWriter(out));
-        TextFormat.write004(writer, CollectorRegistry.defaultRegistry.metricFamilySamples());
-        writer.flush();
+        export(out, TextFormat.CONTENT_TYPE_004);
+    }
+
+    /**
+     * 전역 메트릭과 모든 realm 샤드를 지정한 포맷(text 0.0.4 / OpenMetrics)으로 out 에 바로 기록
+     */
+    public void export(OutputStream out, String contentType) throws IOException {
+        write(out, contentType, metricFamilySamples());
+    }
+
+    /**
+     * realm 하나의 샤드만 기록 (다른 realm 의 시리즈는 순회하지 않음)
+     */
+    public void exportRealm(OutputStream out, String contentType, String realm) throws IOException {
+        write(out, contentType, realmFamilySamples(realm));
+    }
+
+    /**
+     * JVM (GC, 메모리 풀, 할당량, 스레드 등) / Infinispan 캐시 통계 collector 등록
+     */
+    void registerRuntimeCollectors(boolean jvm, boolean caches) {
+        if (jvm) {
+            try {
+                DefaultExports.register(runtimeRegistry);
+            } catch (IllegalArgumentException e) {
+                recordRegistrationFailure("jvm", e);
+            }
+        }
+        if (caches) {
+            try {
+                new InfinispanCacheCollector().register(runtimeRegistry);
+            } catch (IllegalArgumentException e) {
+                recordRegistrationFailure("cache", e);
+            }
+        }
+    }
+
+    private void recordRegistrationFailure(String collector, IllegalArgumentException e) {
+        LOGGER.warnf("Failed to register %s metrics: %s", collector, e.getMessage());
+        SpiSelfMetrics self = selfMetrics;
+        if (self != null) {
+            self.recordRegistrationFailure(collector);
+        }
+    }
+
+    /**
+     * JVM / 캐시 메트릭만 기록
+     */
+    public void exportRuntime(OutputStream out, String contentType) throws IOException {
+        write(out, contentType, runtimeRegistry.metricFamilySamples());
+    }
+
+    Enumeration<MetricFamilySamples> metricFamilySamples() {
+        return new ShardedFamilySamples(registry.metricFamilySamples(),
+                new ArrayList<>(realms.values()));
+    }
+
+    Enumeration<MetricFamilySamples> realmFamilySamples(String realm) {
+        RealmMetrics shard = realms.get(realm);
+        return shard != null
+                ? new ShardedFamilySamples(null, List.of(shard))
+                : Collections.emptyEnumeration();
+    }
+
+    private void write(OutputStream out, String contentType, Enumeration<MetricFamilySamples> samples) throws IOException {
+        ExpositionWriter writer = ExpositionWriter.acquire(out);
+        try {
+            TextFormat.writeFormat(contentType, writer, samples);
+            writer.flush();
+        } finally {
+            writer.release();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,142 @@
+package com.precursor.metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * OTLP 요청 인코딩에 필요한 만큼만 구현한 protobuf writer (protobuf 런타임 의존성 없이 사용)
+ * 하위 메시지는 startMessage / endMessage 로 감싸며, 끝날 때 길이를 계산해 본문 앞에 끼워 넣는다.
+ */
+final class ProtoWriter {
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+    private static final int MAX_DEPTH = 16;
+
+    private byte[] buffer;
+    private int position;
+    // 열려 있는 하위 메시지 본문의 시작 위치
+    private final int[] starts = new int[MAX_DEPTH];
+    private int depth;
+
+    ProtoWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(64, initialCapacity)];
+    }
+
+    void startMessage(int field) {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Message nesting too deep");
+        }
+        tag(field, WIRE_LENGTH_DELIMITED);
+        starts[depth++] = position;
+    }
+
+    /**
+     * 본문 길이 varint 를 본문 앞에 넣음 (본문을 varint 크기만큼 뒤로 이동)
+     */
+    void endMessage() {
+        int start = starts[--depth];
+        int length = position - start;
+        int prefix = varintSize(length);
+        ensure(prefix);
+        System.arraycopy(buffer, start, buffer, start + prefix, length);
+        int end = position + prefix;
+        position = start;
+        varint(length);
+        position = end;
+    }
+
+    void string(int field, String value) {
+        if (value == null || value.isEmpty()) return;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        tag(field, WIRE_LENGTH_DELIMITED);
+        varint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    void uint32(int field, int value) {
+        tag(field, WIRE_VARINT);
+        varint(value & 0xFFFFFFFFL);
+    }
+
+    void bool(int field, boolean value) {
+        tag(field, WIRE_VARINT);
+        varint(value ? 1 : 0);
+    }
+
+    void fixed64(int field, long value) {
+        tag(field, WIRE_FIXED64);
+        rawFixed64(value);
+    }
+
+    void double64(int field, double value) {
+        fixed64(field, Double.doubleToRawLongBits(value));
+    }
+
+    void packedFixed64(int field, long[] values, int count) {
+        if (count == 0) return;
+        tag(field, WIRE_LENGTH_DELIMITED);
+        varint(count * 8L);
+        for (int i = 0; i < count; i++) {
+            rawFixed64(values[i]);
+        }
+    }
+
+    void packedDouble(int field, double[] values, int count) {
+        if (count == 0) return;
+        tag(field, WIRE_LENGTH_DELIMITED);
+        varint(count * 8L);
+        for (int i = 0; i < count; i++) {
+            rawFixed64(Double.doubleToRawLongBits(values[i]));
+        }
+    }
+
+    int size() {
+        return position;
+    }
+
+    byte[] toByteArray() {
+        if (depth != 0) {
+            throw new IllegalStateException(depth + " messages not ended");
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void tag(int field, int wireType) {
+        varint(((long) field << 3) | wireType);
+    }
+
+    private void varint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void rawFixed64(long value) {
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private void ensure(int extra) {
+        if (buffer.length - position < extra) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
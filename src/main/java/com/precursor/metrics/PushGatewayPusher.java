@@ -0,0 +1,200 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.exporter.PushGateway;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushgateway 로 전체 메트릭을 주기적으로 push (scrape 사이에 종료되는 짧은 수명의 pod 용)
+ * 모든 family 를 한 번의 PUT 요청으로 보내고, 직전 push 이후 값이 바뀌지 않았으면 건너뛴다.
+ * 실패 시 다음 시도는 지수 backoff (equal jitter) 로 미루며, close 시 마지막으로 한 번 더 push 한다.
+ */
+final class PushGatewayPusher {
+
+    private static final Logger LOGGER = Logger.getLogger(PushGatewayPusher.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    // 이벤트가 없어도 시계만으로 바뀌는 family (창이 흘러가며 줄어드는 로그인 비율, 세션 통계 갱신 시각)
+    // fingerprint 에 넣으면 매 주기 값이 달라 보여 변경 없는 push 를 건너뛸 수 없다.
+    // push 자체에는 그대로 포함되며, 다른 값이 바뀌어 push 할 때 함께 최신 값이 나간다.
+    private static final Set<String> CLOCK_DRIVEN_FAMILIES = Set.of(
+            LoginRateTracker.ATTEMPT_RATE, LoginRateTracker.FAILURE_RATE, LoginRateTracker.SUCCESS_RATIO,
+            SessionStats.LAST_REFRESH);
+
+    private final PushGateway gateway;
+    private final String job;
+    private final Map<String, String> groupingKey;
+    private final long intervalMillis;
+    private final long maxBackoffMillis;
+    private final PrometheusExporter exporter;
+    private final SnapshotCollector collector = new SnapshotCollector();
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+    private int consecutiveFailures;
+    private long lastPushedFingerprint;
+    private boolean pushedOnce;
+
+    /**
+     * push 할 때 미리 모아 둔 family 목록을 그대로 돌려주는 Collector
+     * (fingerprint 계산과 push 가 같은 스냅샷을 쓰도록 collect 를 한 번만 수행)
+     */
+    private static final class SnapshotCollector extends Collector implements Collector.Describable {
+        private List<MetricFamilySamples> samples = Collections.emptyList();
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            return samples;
+        }
+
+        @Override
+        public List<MetricFamilySamples> describe() {
+            // registry 등록 시 collect 가 한 번 더 호출되지 않도록 빈 목록 반환
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param gatewayUrl Pushgateway 주소 (예: http://pushgateway:9091)
+     */
+    PushGatewayPusher(URL gatewayUrl, String job, Map<String, String> groupingKey,
+                      long intervalMillis, long maxBackoffMillis, PrometheusExporter exporter) {
+        this.gateway = new PushGateway(gatewayUrl);
+        this.gateway.setConnectionFactory(url -> {
+            HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            return connection;
+        });
+        this.job = job;
+        this.groupingKey = Map.copyOf(groupingKey);
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.maxBackoffMillis = Math.max(this.intervalMillis, maxBackoffMillis);
+        this.exporter = exporter;
+    }
+
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        scheduler.schedule(this::run, intervalMillis, TimeUnit.MILLISECONDS);
+        LOGGER.infof("Pushgateway push started (job=%s, groupingKey=%s, interval=%dms)", job, groupingKey, intervalMillis);
+    }
+
+    private void run() {
+        if (!running) return;
+        long delay;
+        try {
+            pushIfChanged();
+            consecutiveFailures = 0;
+            delay = intervalMillis;
+        } catch (IOException | RuntimeException e) {
+            consecutiveFailures++;
+            exporter.recordPushFailure();
+            delay = backoffMillis(consecutiveFailures);
+            LOGGER.warnf("Pushgateway push failed (%d in a row), retrying in %dms: %s",
+                    consecutiveFailures, delay, e.getMessage());
+        }
+        if (running) {
+            scheduler.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * interval * 2^(failures-1) 을 maxBackoff 로 자른 뒤 [절반, 전체] 구간에서 무작위 선택
+     */
+    long backoffMillis(int failures) {
+        int shift = Math.min(failures - 1, 30);
+        long ceiling = Math.min(maxBackoffMillis, intervalMillis << shift);
+        if (ceiling <= 0) ceiling = maxBackoffMillis;
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    /**
+     * 직전 push 이후 값이 바뀌었으면 push
+     * @return push 했으면 true
+     */
+    synchronized boolean pushIfChanged() throws IOException {
+        List<Collector.MetricFamilySamples> samples = Collections.list(exporter.metricFamilySamples());
+        long fingerprint = fingerprint(samples);
+        if (pushedOnce && fingerprint == lastPushedFingerprint) {
+            LOGGER.debug("Metrics unchanged since last push, skipping");
+            return false;
+        }
+        collector.samples = samples;
+        try {
+            gateway.push(collector, job, groupingKey);
+        } finally {
+            collector.samples = Collections.emptyList();
+        }
+        lastPushedFingerprint = fingerprint;
+        pushedOnce = true;
+        return true;
+    }
+
+    /**
+     * 시리즈 이름, 라벨 값, 값으로 계산한 해시 (_created 타임스탬프와 시계로 바뀌는 family 는 제외)
+     */
+    private static long fingerprint(List<Collector.MetricFamilySamples> families) {
+        long hash = 0xcbf29ce484222325L;
+        for (Collector.MetricFamilySamples family : families) {
+            if (CLOCK_DRIVEN_FAMILIES.contains(family.name)) continue;
+            for (Collector.MetricFamilySamples.Sample sample : family.samples) {
+                if (sample.name.endsWith("_created")) continue;
+                hash = mix(hash, sample.name.hashCode());
+                for (String labelValue : sample.labelValues) {
+                    hash = mix(hash, labelValue.hashCode());
+                }
+                hash = mix(hash, Double.doubleToLongBits(sample.value));
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * 예약된 push 를 멈추고 바뀐 값이 있으면 마지막으로 한 번 push
+     */
+    void close() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        try {
+            pushIfChanged();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warnf("Final Pushgateway push failed: %s", e.getMessage());
+        }
+        LOGGER.info("Pushgateway push stopped.");
+    }
+}
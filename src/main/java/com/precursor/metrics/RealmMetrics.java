@@ -0,0 +1,304 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.SimpleCollector;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.OperationType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * realm 하나의 이벤트 메트릭 샤드
+ * realm 별 scrape 가 해당 realm 의 시리즈만 순회하도록 realm 마다 별도 카운터 집합을 둔다.
+ * 모든 샤드는 같은 순서로 family 를 만들기 때문에 전체 scrape 에서는 같은 인덱스끼리 합친다.
+ */
+final class RealmMetrics {
+
+    private static final String USER_EVENT_PREFIX = "keycloak_user_event_";
+    private static final String ADMIN_EVENT_PREFIX = "keycloak_admin_event_";
+    private static final String LABEL_CLIENT_ID = "client_id";
+    private static final String LABEL_ERROR = "error";
+
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+    private static final String[] USER_EVENT_NAMES = new String[EVENT_TYPES.length];
+    private static final String[] ADMIN_EVENT_NAMES = new String[OPERATION_TYPES.length];
+
+    static {
+        for (EventType type : EVENT_TYPES) {
+            USER_EVENT_NAMES[type.ordinal()] = USER_EVENT_PREFIX + type.name().toLowerCase();
+        }
+        for (OperationType type : OPERATION_TYPES) {
+            ADMIN_EVENT_NAMES[type.ordinal()] = ADMIN_EVENT_PREFIX + type.name().toLowerCase();
+        }
+    }
+
+    private final String realm;
+    private final CounterBackend counterBackend;
+    // 샤드 간에 동일한 순서를 유지하는 family 목록
+    private final List<Collector> families = new ArrayList<>();
+    private final List<CardinalityLimiter> cardinalityLimiters = new ArrayList<>();
+    // 체크포인트 대상 카운터 (family 이름 -> 카운터)
+    private final Map<String, LabelChildCache<Counter.Child>> counters = new LinkedHashMap<>();
+    // 유휴 시리즈 제거 대상 (카운터 + 히스토그램)
+    private final List<LabelChildCache<?>> childCaches = new ArrayList<>();
+
+    final LabelChildCache<Counter.Child> loginAttempts;
+    final LabelChildCache<Counter.Child> successfulLogins;
+    final LabelChildCache<Counter.Child> failedLogins;
+    final LabelChildCache<Counter.Child> registrations;
+    final LabelChildCache<Counter.Child> registrationErrors;
+    final LabelChildCache<Counter.Child> refreshTokens;
+    final LabelChildCache<Counter.Child> refreshTokenErrors;
+    final LabelChildCache<Counter.Child> clientLogins;
+    final LabelChildCache<Counter.Child> failedClientLogins;
+    final LabelChildCache<Counter.Child> codeToTokens;
+    final LabelChildCache<Counter.Child> codeToTokenErrors;
+    final LabelChildCache<Histogram.Child> authCodeExchangeDuration;
+    // client 별 1분/5분 로그인 실패율, 성공 비율
+    final LoginRateTracker loginRates;
+    // 로그인 실패 상위 IP / username
+    final FailedLoginSources failedLoginSources;
+    // 백그라운드에서 갱신하는 세션 / 사용자 수
+    final SessionStats sessionStats;
+
+    // EventType / OperationType 별 카운터 (처음 발생할 때 생성)
+    private final LazyTypeCounters userEventCounters;
+    private final LazyTypeCounters adminEventCounters;
+
+    /**
+     * @param enabledEventTypes EventType ordinal 별 허용 여부 (null 이면 전부 허용)
+     */
+    RealmMetrics(String realm, int clientIdLimit, int errorLimit, int loginRateMaxClients, long loginRateIdleSeconds,
+                 int failedLoginTopK, long failedLoginDecaySeconds, boolean[] enabledEventTypes,
+                 CounterBackend counterBackend) {
+        this.realm = realm;
+        this.counterBackend = counterBackend;
+
+        // 로그인 시도 횟수
+        loginAttempts = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_login_attempts_total",
+                "Total login attempts",
+                "realm", "provider", "client_id")));
+
+        // 로그인 성공 횟수
+        successfulLogins = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_logins_total",
+                "Total successful logins",
+                "realm", "provider", "client_id")));
+
+        // 로그인 실패 횟수
+        failedLogins = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_failed_login_attempts_total",
+                "Total failed login attempts",
+                "realm", "provider", "error", "client_id")));
+
+        // 유저 등록 전체 수
+        registrations = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_registrations_total",
+                "Total user registrations",
+                "realm", "provider", "client_id")));
+
+        // 등록(회원가입) 에러
+        registrationErrors = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_registrations_errors",
+                "Total user registration errors",
+                "realm", "provider", "error", "client_id")));
+
+        // Refresh Token
+        refreshTokens = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_refresh_tokens",
+                "Total refresh tokens",
+                "realm", "provider", "client_id")));
+
+        // Refresh Token Error
+        refreshTokenErrors = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_refresh_tokens_errors",
+                "Total refresh token errors",
+                "realm", "provider", "error", "client_id")));
+
+        // Client 별 로그인 수
+        clientLogins = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_client_logins",
+                "Total successful client logins",
+                "realm", "provider", "client_id")));
+
+        // Client 별 로그인 실패 수
+        failedClientLogins = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_failed_client_login_attempts",
+                "Total failed client logins",
+                "realm", "provider", "error", "client_id")));
+
+        // Code - Token Exchanged
+        codeToTokens = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_code_to_tokens",
+                "Total successful code-to-token exchanges",
+                "realm", "provider", "client_id")));
+
+        // Code - Token Exchanged Error
+        codeToTokenErrors = family(new LabelChildCache<>(counterBackend.create(
+                "keycloak_code_to_tokens_errors",
+                "Total failed code-to-token exchanges",
+                "realm", "provider", "error", "client_id")));
+
+        // LOGIN -> CODE_TO_TOKEN 소요 시간
+        authCodeExchangeDuration = family(new LabelChildCache<>(Histogram.build()
+                .name("keycloak_auth_code_exchange_duration_seconds")
+                .help("Time from LOGIN to the matching CODE_TO_TOKEN of the same session")
+                .buckets(0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60)
+                .labelNames("realm", "client_id")
+                .create()));
+
+        // client_id / error 라벨 카디널리티 제한
+        limitCardinality(loginAttempts, "keycloak_login_attempts_total", LABEL_CLIENT_ID, 2);
+        limitCardinality(successfulLogins, "keycloak_logins_total", LABEL_CLIENT_ID, 2);
+        limitCardinality(failedLogins, "keycloak_failed_login_attempts_total", LABEL_ERROR, 2);
+        limitCardinality(failedLogins, "keycloak_failed_login_attempts_total", LABEL_CLIENT_ID, 3);
+        limitCardinality(registrations, "keycloak_registrations_total", LABEL_CLIENT_ID, 2);
+        limitCardinality(registrationErrors, "keycloak_registrations_errors", LABEL_ERROR, 2);
+        limitCardinality(registrationErrors, "keycloak_registrations_errors", LABEL_CLIENT_ID, 3);
+        limitCardinality(refreshTokens, "keycloak_refresh_tokens", LABEL_CLIENT_ID, 2);
+        limitCardinality(refreshTokenErrors, "keycloak_refresh_tokens_errors", LABEL_ERROR, 2);
+        limitCardinality(refreshTokenErrors, "keycloak_refresh_tokens_errors", LABEL_CLIENT_ID, 3);
+        limitCardinality(clientLogins, "keycloak_client_logins", LABEL_CLIENT_ID, 2);
+        limitCardinality(failedClientLogins, "keycloak_failed_client_login_attempts", LABEL_ERROR, 2);
+        limitCardinality(failedClientLogins, "keycloak_failed_client_login_attempts", LABEL_CLIENT_ID, 3);
+        limitCardinality(codeToTokens, "keycloak_code_to_tokens", LABEL_CLIENT_ID, 2);
+        limitCardinality(codeToTokenErrors, "keycloak_code_to_tokens_errors", LABEL_ERROR, 2);
+        limitCardinality(codeToTokenErrors, "keycloak_code_to_tokens_errors", LABEL_CLIENT_ID, 3);
+        limitCardinality(authCodeExchangeDuration, "keycloak_auth_code_exchange_duration_seconds", LABEL_CLIENT_ID, 1);
+        configureCardinalityLimits(clientIdLimit, errorLimit);
+
+        // 이벤트 타입별 카운터 (family 슬롯은 하나씩, 실제 family 는 발생한 타입만)
+        userEventCounters = new LazyTypeCounters(USER_EVENT_NAMES,
+                ordinal -> createUserCounter(EVENT_TYPES[ordinal]), enabledEventTypes);
+        families.add(userEventCounters);
+
+        adminEventCounters = new LazyTypeCounters(ADMIN_EVENT_NAMES,
+                ordinal -> createAdminCounter(OPERATION_TYPES[ordinal]), null);
+        families.add(adminEventCounters);
+
+        loginRates = new LoginRateTracker(realm, loginRateMaxClients, loginRateIdleSeconds);
+        families.add(loginRates);
+
+        failedLoginSources = new FailedLoginSources(realm, failedLoginTopK, failedLoginDecaySeconds);
+        families.add(failedLoginSources.stats());
+
+        sessionStats = new SessionStats(realm);
+        families.add(sessionStats);
+
+        // 카디널리티 제한 상태 (추적 중인 값 수, other 로 접힌 값 수)
+        families.add(new CardinalityCollector(realm, cardinalityLimiters));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> LabelChildCache<C> family(LabelChildCache<C> counter) {
+        families.add(counter.collector());
+        childCaches.add(counter);
+        if (CounterBackend.isCounter(counter.collector())) {
+            counters.put(counter.name(), (LabelChildCache<Counter.Child>) counter);
+        }
+        return counter;
+    }
+
+    private void limitCardinality(LabelChildCache<?> counter, String metric, String label, int labelIndex) {
+        CardinalityLimiter limiter = new CardinalityLimiter(metric, label, 0);
+        counter.limitCardinality(labelIndex, limiter);
+        cardinalityLimiters.add(limiter);
+    }
+
+    /**
+     * client_id / error 라벨별 최대 시리즈 수 설정 (0 이면 제한 없음)
+     */
+    void configureCardinalityLimits(int clientIdLimit, int errorLimit) {
+        for (CardinalityLimiter limiter : cardinalityLimiters) {
+            limiter.setLimit(LABEL_ERROR.equals(limiter.label()) ? errorLimit : clientIdLimit);
+        }
+    }
+
+    /**
+     * @param enabledEventTypes EventType ordinal 별 허용 여부 (null 이면 전부 허용)
+     */
+    void configureEventTypes(boolean[] enabledEventTypes) {
+        userEventCounters.configure(enabledEventTypes);
+    }
+
+    private SimpleCollector<Counter.Child> createUserCounter(EventType type) {
+        return counterBackend.create(USER_EVENT_NAMES[type.ordinal()], "User event: " + type.name(), "realm");
+    }
+
+    private SimpleCollector<Counter.Child> createAdminCounter(OperationType type) {
+        return counterBackend.create(ADMIN_EVENT_NAMES[type.ordinal()], "Admin event: " + type.name(),
+                "realm", "resource");
+    }
+
+    String realm() {
+        return realm;
+    }
+
+    /**
+     * @return 타입의 카운터 (처음이면 생성), 허용되지 않은 타입이면 null
+     */
+    LabelChildCache<Counter.Child> userEventCounter(EventType type) {
+        return userEventCounters.get(type.ordinal());
+    }
+
+    LabelChildCache<Counter.Child> adminEventCounter(OperationType type) {
+        return adminEventCounters.get(type.ordinal());
+    }
+
+    /**
+     * @return 이 샤드의 모든 카운터 family (이벤트 타입별 카운터는 만들어진 것만)
+     */
+    Collection<LabelChildCache<Counter.Child>> counters() {
+        List<LabelChildCache<Counter.Child>> all = new ArrayList<>(counters.values());
+        userEventCounters.collectCreated(all);
+        adminEventCounters.collectCreated(all);
+        return all;
+    }
+
+    /**
+     * @return 이 샤드의 모든 라벨 child 캐시 (이벤트 타입별 카운터는 만들어진 것만)
+     */
+    List<LabelChildCache<?>> childCaches() {
+        List<LabelChildCache<?>> all = new ArrayList<>(childCaches);
+        userEventCounters.collectCreated(all);
+        adminEventCounters.collectCreated(all);
+        return all;
+    }
+
+    /**
+     * 이벤트 타입별 카운터는 아직 없으면 생성
+     * @return 이름에 해당하는 카운터 family, 없거나 허용되지 않은 타입이면 null
+     */
+    LabelChildCache<Counter.Child> counter(String name) {
+        LabelChildCache<Counter.Child> counter = counters.get(name);
+        if (counter != null) return counter;
+        if (name.startsWith(USER_EVENT_PREFIX)) {
+            int ordinal = userEventCounters.ordinal(name);
+            return ordinal >= 0 ? userEventCounters.get(ordinal) : null;
+        }
+        if (name.startsWith(ADMIN_EVENT_PREFIX)) {
+            int ordinal = adminEventCounters.ordinal(name);
+            return ordinal >= 0 ? adminEventCounters.get(ordinal) : null;
+        }
+        return null;
+    }
+
+    int familyCount() {
+        return families.size();
+    }
+
+    /**
+     * @return index 위치의 family (모든 샤드에서 같은 메트릭)
+     */
+    Collector family(int index) {
+        return families.get(index);
+    }
+}
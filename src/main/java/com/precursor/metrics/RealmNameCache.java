@@ -0,0 +1,81 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * realmId -> realm name 캐시 (크기 제한 + TTL)
+ * realm 변경/삭제 admin 이벤트로 무효화되며, TTL 은 놓친 무효화에 대한 안전장치
+ */
+final class RealmNameCache {
+
+    private record Entry(String name, long expiresAt) {}
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+
+    RealmNameCache(int maxSize, long ttlSeconds, Counter hits, Counter misses) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return 캐시된 realm 이름, 없거나 만료되었으면 null
+     */
+    String get(String realmId) {
+        Entry entry = entries.get(realmId);
+        if (entry != null && System.nanoTime() - entry.expiresAt() < 0) {
+            if (hits != null) hits.inc();
+            return entry.name();
+        }
+        if (misses != null) misses.inc();
+        return null;
+    }
+
+    /**
+     * 적중/미스 집계 없이 캐시된 이름 조회 (만료 여부 무시)
+     */
+    String peek(String realmId) {
+        Entry entry = entries.get(realmId);
+        return entry != null ? entry.name() : null;
+    }
+
+    void put(String realmId, String name) {
+        long now = System.nanoTime();
+        if (entries.size() >= maxSize && !entries.containsKey(realmId)) {
+            evict(now);
+        }
+        entries.put(realmId, new Entry(name, now + ttlNanos));
+    }
+
+    void invalidate(String realmId) {
+        if (realmId != null) {
+            entries.remove(realmId);
+        }
+    }
+
+    void invalidateAll() {
+        entries.clear();
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> now - entry.expiresAt() >= 0);
+        Iterator<String> it = entries.keySet().iterator();
+        while (entries.size() >= maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
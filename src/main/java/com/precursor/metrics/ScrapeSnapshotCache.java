@@ -0,0 +1,102 @@
+package com.precursor.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * scrape 결과 스냅샷 캐시
+ * TTL 안에 들어온 scrape 는 같은 렌더링 결과(바이트 버퍼)를 공유하고,
+ * 만료 시에는 범위(realm/전체)와 포맷별로 한 스레드만 다시 렌더링한다 (single-flight, 나머지는 결과를 기다렸다가 재사용).
+ */
+final class ScrapeSnapshotCache {
+
+    /**
+     * 렌더링된 exposition
+     * @param gzipBody 미리 압축해 둔 본문 (비활성 시 null)
+     */
+    record Snapshot(String contentType, byte[] body, byte[] gzipBody, String etag, long renderedAt) {}
+
+    private static final class Slot {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile Snapshot snapshot;
+    }
+
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final PrometheusExporter exporter;
+    private final long ttlNanos;
+    private final boolean pregzip;
+
+    ScrapeSnapshotCache(PrometheusExporter exporter, long ttlMillis, boolean pregzip) {
+        this.exporter = exporter;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.pregzip = pregzip;
+    }
+
+    /**
+     * @param realm 샤드 하나만 내보낼 realm (null 이면 전체)
+     */
+    Snapshot get(String realm, String contentType) throws IOException {
+        Slot slot = slots.computeIfAbsent(realm == null ? contentType : realm + '\n' + contentType, key -> new Slot());
+
+        Snapshot snapshot = slot.snapshot;
+        if (isFresh(snapshot)) {
+            exporter.recordScrapeCacheHit();
+            return snapshot;
+        }
+
+        slot.lock.lock();
+        try {
+            // 기다리는 동안 다른 스레드가 렌더링을 끝냈으면 그 결과를 사용
+            snapshot = slot.snapshot;
+            if (isFresh(snapshot)) {
+                exporter.recordScrapeCacheHit();
+                return snapshot;
+            }
+            exporter.recordScrapeCacheMiss();
+            snapshot = render(realm, contentType);
+            slot.snapshot = snapshot;
+            return snapshot;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    private boolean isFresh(Snapshot snapshot) {
+        return snapshot != null && System.nanoTime() - snapshot.renderedAt() < ttlNanos;
+    }
+
+    private Snapshot render(String realm, String contentType) throws IOException {
+        long start = System.nanoTime();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        if (realm == null) {
+            exporter.export(out, contentType);
+        } else {
+            exporter.exportRealm(out, contentType, realm);
+        }
+        byte[] body = out.toByteArray();
+
+        byte[] gzipBody = null;
+        if (pregzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            gzipBody = compressed.toByteArray();
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        // 인코딩(gzip 여부)과 무관하게 같은 값이므로 weak ETag
+        String etag = "W/\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+
+        long end = System.nanoTime();
+        exporter.observeScrapeRender((end - start) / 1e9);
+        return new Snapshot(contentType, body, gzipBody, etag, end);
+    }
+}
@@ -0,0 +1,80 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * realm 하나의 세션 / 사용자 수 게이지
+ * 값은 SessionStatsRefresher 가 백그라운드에서 갱신한 스냅샷이고, scrape 는 그 스냅샷만 읽는다.
+ * 마지막 갱신 시각을 함께 노출해 값이 얼마나 오래됐는지 알 수 있게 한다 (time() - 값).
+ * 경과 시간이 아니라 시각이므로 갱신 사이에는 값이 그대로다.
+ */
+final class SessionStats extends Collector {
+
+    /**
+     * @param activeSessions client_id -> 온라인 세션 수
+     * @param offlineSessions client_id -> 오프라인 세션 수
+     * @param refreshedAt 갱신 시각 (epoch millis)
+     */
+    record Snapshot(Map<String, Long> activeSessions, Map<String, Long> offlineSessions, long users,
+                    long refreshedAt) {}
+
+    static final String LAST_REFRESH = "keycloak_session_stats_last_refresh_timestamp_seconds";
+
+    private static final List<String> CLIENT_LABEL_NAMES = Arrays.asList("realm", "client_id");
+    private static final List<String> REALM_LABEL_NAMES = List.of("realm");
+
+    private final String realm;
+    // 아직 한 번도 갱신되지 않았으면 null
+    private volatile Snapshot snapshot;
+
+    SessionStats(String realm) {
+        this.realm = realm;
+    }
+
+    void update(Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        GaugeMetricFamily activeSessions = new GaugeMetricFamily(
+                "keycloak_active_sessions",
+                "Active user sessions per client",
+                CLIENT_LABEL_NAMES);
+        GaugeMetricFamily offlineSessions = new GaugeMetricFamily(
+                "keycloak_offline_sessions",
+                "Offline user sessions per client",
+                CLIENT_LABEL_NAMES);
+        GaugeMetricFamily users = new GaugeMetricFamily(
+                "keycloak_users",
+                "Users in the realm",
+                REALM_LABEL_NAMES);
+        GaugeMetricFamily lastRefresh = new GaugeMetricFamily(
+                LAST_REFRESH,
+                "Unix time the session and user gauges of the realm were last refreshed",
+                REALM_LABEL_NAMES);
+
+        Snapshot current = snapshot;
+        if (current != null) {
+            for (Map.Entry<String, Long> entry : current.activeSessions().entrySet()) {
+                activeSessions.addMetric(Arrays.asList(realm, entry.getKey()), entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : current.offlineSessions().entrySet()) {
+                offlineSessions.addMetric(Arrays.asList(realm, entry.getKey()), entry.getValue());
+            }
+            List<String> realmLabel = List.of(realm);
+            users.addMetric(realmLabel, current.users());
+            lastRefresh.addMetric(realmLabel, current.refreshedAt() / 1000.0);
+        }
+        return Arrays.asList(activeSessions, offlineSessions, users, lastRefresh);
+    }
+}
@@ -0,0 +1,136 @@
+package com.precursor.metrics;
+
+import org.jboss.logging.Logger;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 세션 / 사용자 수 게이지를 백그라운드에서 갱신 (scrape 때마다 UserSessionProvider / DB 를 조회하지 않음)
+ * 주기마다 자체 KeycloakSession 트랜잭션을 열고, 시간 예산 안에서 realm 을 이어서 처리한다.
+ * 예산을 넘기면 다음 주기에 남은 realm 부터 계속하므로, realm 이 많으면 한 바퀴에 여러 주기가 걸린다.
+ */
+final class SessionStatsRefresher {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionStatsRefresher.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final KeycloakSessionFactory sessionFactory;
+    private final long intervalMillis;
+    private final long budgetMillis;
+    private final int maxClients;
+    private final PrometheusExporter exporter;
+
+    private ScheduledExecutorService scheduler;
+    // 이번 바퀴에 처리할 realm id 목록과 다음 위치 (scheduler 스레드 전용)
+    private List<String> pendingRealmIds = List.of();
+    private int cursor;
+
+    /**
+     * @param budgetMillis 한 주기에 쓸 시간 (최소 realm 하나는 처리)
+     * @param maxClients realm 당 client 별 시리즈 수, 세션이 적은 나머지는 other 로 합침 (0 이면 제한 없음)
+     */
+    SessionStatsRefresher(KeycloakSessionFactory sessionFactory, long intervalMillis, long budgetMillis,
+                          int maxClients, PrometheusExporter exporter) {
+        this.sessionFactory = sessionFactory;
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.budgetMillis = Math.max(1, budgetMillis);
+        this.maxClients = maxClients;
+        this.exporter = exporter;
+    }
+
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-session-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        LOGGER.infof("Session stats refresh started (interval=%dms, budget=%dms)", intervalMillis, budgetMillis);
+    }
+
+    private void run() {
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, this::refresh);
+        } catch (RuntimeException e) {
+            LOGGER.warnf("Session stats refresh failed: %s", e.getMessage());
+        }
+    }
+
+    private void refresh(KeycloakSession session) {
+        if (cursor >= pendingRealmIds.size()) {
+            pendingRealmIds = session.realms().getRealmsStream().map(RealmModel::getId).toList();
+            cursor = 0;
+        }
+
+        long deadline = System.currentTimeMillis() + budgetMillis;
+        do {
+            if (cursor >= pendingRealmIds.size()) break;
+            RealmModel realm = session.realms().getRealm(pendingRealmIds.get(cursor++));
+            if (realm == null) continue; // 목록을 만든 뒤 삭제된 realm
+            try {
+                exporter.updateSessionStats(realm.getName(), snapshot(session, realm));
+            } catch (RuntimeException e) {
+                LOGGER.debugf(e, "Failed to refresh session stats of realm %s", realm.getName());
+            }
+        } while (System.currentTimeMillis() < deadline);
+    }
+
+    private SessionStats.Snapshot snapshot(KeycloakSession session, RealmModel realm) {
+        Map<String, Long> active = byClientId(realm, session.sessions().getActiveClientSessionStats(realm, false));
+        Map<String, Long> offline = byClientId(realm, session.sessions().getActiveClientSessionStats(realm, true));
+        long users = session.users().getUsersCount(realm);
+        return new SessionStats.Snapshot(active, offline, users, System.currentTimeMillis());
+    }
+
+    /**
+     * client UUID -> 세션 수를 client_id -> 세션 수로 바꾸고 상위 maxClients 개 외에는 other 로 합침
+     */
+    private Map<String, Long> byClientId(RealmModel realm, Map<String, Long> stats) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(stats.entrySet());
+        if (maxClients > 0 && entries.size() > maxClients) {
+            entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        }
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        long other = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Map.Entry<String, Long> entry = entries.get(i);
+            if (maxClients > 0 && i >= maxClients) {
+                other += entry.getValue();
+                continue;
+            }
+            ClientModel client = realm.getClientById(entry.getKey());
+            String clientId = client != null ? client.getClientId() : entry.getKey();
+            counts.merge(clientId, entry.getValue(), Long::sum);
+        }
+        if (other > 0) {
+            counts.merge(CardinalityLimiter.OTHER, other, Long::sum);
+        }
+        return counts;
+    }
+
+    void close() {
+        if (scheduler == null) return;
+        // 진행 중인 트랜잭션은 interrupt 하지 않고 끝나기를 기다림
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Session stats refresh stopped.");
+    }
+}
@@ -0,0 +1,73 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 전역 레지스트리 + realm 샤드들의 family 를 한 family 씩 합쳐 내보내는 Enumeration
+ * 같은 인덱스의 family 만 모아서 병합하므로 전체 샘플을 한 번에 메모리에 올리지 않는다.
+ */
+final class ShardedFamilySamples implements Enumeration<MetricFamilySamples> {
+
+    private final Enumeration<MetricFamilySamples> global;
+    private final List<RealmMetrics> shards;
+    private final int familyCount;
+
+    private int familyIndex;
+    private Iterator<MetricFamilySamples> pending = Collections.emptyIterator();
+
+    /**
+     * @param global 샤드 앞에 내보낼 전역 family (없으면 null)
+     */
+    ShardedFamilySamples(Enumeration<MetricFamilySamples> global, List<RealmMetrics> shards) {
+        this.global = global != null ? global : Collections.emptyEnumeration();
+        this.shards = shards;
+        this.familyCount = shards.isEmpty() ? 0 : shards.get(0).familyCount();
+    }
+
+    @Override
+    public boolean hasMoreElements() {
+        if (global.hasMoreElements()) return true;
+        while (!pending.hasNext() && familyIndex < familyCount) {
+            pending = merge(familyIndex++);
+        }
+        return pending.hasNext();
+    }
+
+    @Override
+    public MetricFamilySamples nextElement() {
+        if (!hasMoreElements()) throw new NoSuchElementException();
+        if (global.hasMoreElements()) return global.nextElement();
+        return pending.next();
+    }
+
+    private Iterator<MetricFamilySamples> merge(int index) {
+        if (shards.size() == 1) {
+            return shards.get(0).family(index).collect().iterator();
+        }
+
+        Map<String, MetricFamilySamples> merged = new LinkedHashMap<>();
+        for (RealmMetrics shard : shards) {
+            Collector family = shard.family(index);
+            for (MetricFamilySamples samples : family.collect()) {
+                MetricFamilySamples existing = merged.get(samples.name);
+                if (existing == null) {
+                    merged.put(samples.name, new MetricFamilySamples(samples.name, samples.unit, samples.type,
+                            samples.help, new ArrayList<>(samples.samples)));
+                } else {
+                    existing.samples.addAll(samples.samples);
+                }
+            }
+        }
+        return merged.values().iterator();
+    }
+}
@@ -0,0 +1,86 @@
+package com.precursor.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 최근 5분간의 로그인 시도/실패 수를 1초 버킷 링에 기록하는 lock-free 카운터
+ * 버킷 하나는 long 하나에 (초 단위 epoch 24bit, 시도 20bit, 실패 20bit) 로 묶어 CAS 로 갱신하므로
+ * 버킷 교체와 증가가 한 번의 CAS 로 끝나고, 키 하나당 메모리는 WINDOW_SECONDS * 8 바이트로 고정된다.
+ */
+final class SlidingLoginWindow {
+
+    static final int WINDOW_SECONDS = 300;
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MAX = (1L << COUNT_BITS) - 1;
+    private static final long EPOCH_MASK = (1L << 24) - 1;
+    private static final int EPOCH_SHIFT = 2 * COUNT_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(WINDOW_SECONDS);
+    private volatile long lastSecond;
+
+    /**
+     * @param second epoch 초 (System.currentTimeMillis() / 1000)
+     */
+    void record(long second, boolean failure) {
+        int index = (int) (second % WINDOW_SECONDS);
+        long epoch = second & EPOCH_MASK;
+        while (true) {
+            long current = buckets.get(index);
+            long attempts;
+            long failures;
+            if ((current >>> EPOCH_SHIFT) == epoch) {
+                attempts = Math.min(attempts(current) + 1, COUNT_MAX);
+                failures = Math.min(failures(current) + (failure ? 1 : 0), COUNT_MAX);
+            } else {
+                // 한 바퀴 이전의 버킷이면 새 초로 교체
+                attempts = 1;
+                failures = failure ? 1 : 0;
+            }
+            long next = (epoch << EPOCH_SHIFT) | (attempts << COUNT_BITS) | failures;
+            if (buckets.compareAndSet(index, current, next)) break;
+        }
+        if (lastSecond < second) {
+            lastSecond = second;
+        }
+    }
+
+    /**
+     * @return now 를 포함한 최근 seconds 초 동안의 시도 수
+     */
+    long attempts(long now, int seconds) {
+        return sum(now, seconds, false);
+    }
+
+    /**
+     * @return now 를 포함한 최근 seconds 초 동안의 실패 수
+     */
+    long failures(long now, int seconds) {
+        return sum(now, seconds, true);
+    }
+
+    long lastSecond() {
+        return lastSecond;
+    }
+
+    private long sum(long now, int seconds, boolean failuresOnly) {
+        int span = Math.min(seconds, WINDOW_SECONDS);
+        long total = 0;
+        for (int i = 0; i < span; i++) {
+            long second = now - i;
+            long bucket = buckets.get((int) (second % WINDOW_SECONDS));
+            if ((bucket >>> EPOCH_SHIFT) == (second & EPOCH_MASK)) {
+                total += failuresOnly ? failures(bucket) : attempts(bucket);
+            }
+        }
+        return total;
+    }
+
+    private static long attempts(long bucket) {
+        return (bucket >>> COUNT_BITS) & COUNT_MAX;
+    }
+
+    private static long failures(long bucket) {
+        return bucket & COUNT_MAX;
+    }
+}
@@ -0,0 +1,129 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.Histogram;
+import org.keycloak.events.EventType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 메트릭 SPI 자체의 비용을 keycloak_metrics_spi_* family 로 노출 (selfMetrics=false 면 만들지 않음)
+ * onEvent 처리 시간은 sampleEvery 건 중 1 건만 nanoTime 으로 재므로, 나머지 이벤트는 난수 하나만 뽑고 지나간다.
+ * 시리즈 수는 scrape 때 라벨 트리를 세어 계산한다.
+ */
+final class SpiSelfMetrics {
+
+    static final int DEFAULT_EVENT_SAMPLE_EVERY = 64;
+
+    private final int sampleMask;
+    private final Histogram eventDuration;
+    // EventType ordinal -> child (처음 측정될 때 채움, 경합 시 같은 child 를 다시 넣을 뿐)
+    private final Histogram.Child[] eventDurationByType = new Histogram.Child[EventType.values().length];
+    private final Histogram scrapeDuration;
+    private final Histogram scrapeBytes;
+    private final Counter registrationFailures;
+
+    /**
+     * @param sampleEvery onEvent 몇 건마다 한 번 잴지 (2의 거듭제곱으로 올림, 1 이면 매번)
+     */
+    SpiSelfMetrics(PrometheusExporter exporter, CollectorRegistry registry, int sampleEvery) {
+        int every = Math.min(Math.max(1, sampleEvery), 1 << 30);
+        this.sampleMask = every == 1 ? 0 : (Integer.highestOneBit(every - 1) << 1) - 1;
+
+        eventDuration = Histogram.build()
+                .name("keycloak_metrics_spi_event_seconds")
+                .help("Time spent in the event listener per user event (sampled)")
+                .buckets(1e-6, 2.5e-6, 5e-6, 1e-5, 2.5e-5, 5e-5, 1e-4, 2.5e-4, 1e-3, 1e-2)
+                .labelNames("event_type")
+                .register(registry);
+
+        scrapeDuration = Histogram.build()
+                .name("keycloak_metrics_spi_scrape_seconds")
+                .help("Time spent rendering and writing a scrape response")
+                .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5)
+                .labelNames("endpoint")
+                .register(registry);
+
+        scrapeBytes = Histogram.build()
+                .name("keycloak_metrics_spi_scrape_bytes")
+                .help("Uncompressed size of a scrape response")
+                .exponentialBuckets(4096, 4, 8)
+                .labelNames("endpoint")
+                .register(registry);
+
+        registrationFailures = Counter.build()
+                .name("keycloak_metrics_spi_registration_failures_total")
+                .help("Collectors that could not be registered")
+                .labelNames("collector")
+                .register(registry);
+
+        new SeriesCount(exporter).register(registry);
+    }
+
+    /**
+     * @return 이번 이벤트의 처리 시간을 잴지
+     */
+    boolean sampleEvent() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    void observeEvent(EventType type, long nanos) {
+        Histogram.Child child = eventDurationByType[type.ordinal()];
+        if (child == null) {
+            child = eventDuration.labels(type.name());
+            eventDurationByType[type.ordinal()] = child;
+        }
+        child.observe(nanos / 1e9);
+    }
+
+    /**
+     * @param endpoint realm | all | jvm | cluster
+     */
+    void observeScrape(String endpoint, long nanos, long bytes) {
+        scrapeDuration.labels(endpoint).observe(nanos / 1e9);
+        scrapeBytes.labels(endpoint).observe(bytes);
+    }
+
+    void recordRegistrationFailure(String collector) {
+        registrationFailures.labels(collector).inc();
+    }
+
+    /**
+     * family 별 현재 시리즈 수 (전역 + 모든 realm 샤드의 라벨 트리 합계)
+     */
+    private static final class SeriesCount extends Collector {
+        private final PrometheusExporter exporter;
+
+        SeriesCount(PrometheusExporter exporter) {
+            this.exporter = exporter;
+        }
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            Map<String, Long> counts = new TreeMap<>();
+            count(exporter.globalChildCaches(), counts);
+            for (RealmMetrics shard : exporter.shards()) {
+                count(shard.childCaches(), counts);
+            }
+
+            GaugeMetricFamily series = new GaugeMetricFamily(
+                    "keycloak_metrics_spi_series",
+                    "Live label series per metric family",
+                    List.of("family"));
+            counts.forEach((family, count) -> series.addMetric(List.of(family), count));
+            return List.of(series);
+        }
+
+        private static void count(List<? extends LabelChildCache<?>> caches, Map<String, Long> counts) {
+            for (LabelChildCache<?> cache : caches) {
+                counts.merge(cache.name(), (long) cache.size(), Long::sum);
+            }
+        }
+    }
+}
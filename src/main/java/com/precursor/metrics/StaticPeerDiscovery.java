@@ -0,0 +1,42 @@
+package com.precursor.metrics;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 설정에 적힌 고정 peer 목록 (clusterPeers)
+ */
+final class StaticPeerDiscovery implements PeerDiscovery {
+
+    private final List<URI> peers;
+
+    StaticPeerDiscovery(List<URI> peers) {
+        this.peers = List.copyOf(peers);
+    }
+
+    /**
+     * "http://keycloak-1:8080,http://keycloak-2:8080" 형식 (끝의 / 는 무시)
+     */
+    static StaticPeerDiscovery parse(String value) {
+        List<URI> peers = new ArrayList<>();
+        if (value != null) {
+            for (String entry : value.split(",")) {
+                String peer = entry.trim();
+                while (peer.endsWith("/")) peer = peer.substring(0, peer.length() - 1);
+                if (peer.isEmpty()) continue;
+                URI uri = URI.create(peer);
+                if (uri.getScheme() == null || uri.getHost() == null) {
+                    throw new IllegalArgumentException("Expected an absolute http(s) URL but got '" + peer + "'");
+                }
+                peers.add(uri);
+            }
+        }
+        return new StaticPeerDiscovery(peers);
+    }
+
+    @Override
+    public List<URI> peers() {
+        return peers;
+    }
+}
@@ -0,0 +1,262 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.SimpleCollector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * long 배열을 스레드별 stripe 로 나눠 증가시키는 카운터 (counterBackend=striped)
+ * 라벨 조합마다 정수 id 를 붙이고, 값은 id 64 개 단위 chunk 에 [stripe][id] 순서로 둔다.
+ * stripe 사이는 캐시 라인 두 개만큼 띄워 서로 다른 스레드의 증가가 같은 라인을 건드리지 않게 하고,
+ * stripe 합계는 get / collect 때만 계산한다.
+ * 정수 증가만 지원한다 (inc(double) 은 반올림).
+ * 제거된 라벨 조합 (remove / clear) 의 id 는 free list 에 넣었다가, 제거 직전에 child 를 잡고 있던
+ * 스레드의 증가가 끝날 만큼 시간이 지난 뒤 새 라벨 조합에 0 으로 비워서 다시 쓴다.
+ */
+final class StripedCounter extends SimpleCollector<Counter.Child> implements Collector.Describable {
+
+    static final int STRIPES = stripes();
+
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // 128 바이트 (인접 라인 prefetch 까지 고려해 캐시 라인 두 개)
+    private static final int PAD = 16;
+    private static final int STRIDE = CHUNK_SIZE + PAD;
+    static final long DEFAULT_REUSE_DELAY_MILLIS = 60_000;
+
+    // chunk 번호 -> [stripe * STRIDE + offset] 값 배열 (새 라벨 조합이 생길 때만 늘어남)
+    private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+    private int nextId;
+    // 제거된 id (제거 시각 순, 아래 필드와 함께 this 로 보호)
+    private final ArrayDeque<FreeSlot> freeSlots = new ArrayDeque<>();
+    private final long reuseDelayMillis;
+
+    private record FreeSlot(int id, long freedAt) {
+    }
+
+    static final class Builder extends SimpleCollector.Builder<Builder, StripedCounter> {
+        private boolean labelled;
+        private long reuseDelayMillis = DEFAULT_REUSE_DELAY_MILLIS;
+
+        @Override
+        public Builder name(String name) {
+            // Counter 와 같이 family 이름에서 _total 접미사 제외
+            return super.name(name.endsWith("_total") ? name.substring(0, name.length() - 6) : name);
+        }
+
+        @Override
+        public Builder labelNames(String... labelNames) {
+            labelled = labelNames.length > 0;
+            return super.labelNames(labelNames);
+        }
+
+        /**
+         * 제거된 id 를 다시 쓰기 전까지 기다릴 시간
+         */
+        Builder reuseDelayMillis(long reuseDelayMillis) {
+            this.reuseDelayMillis = Math.max(0, reuseDelayMillis);
+            return this;
+        }
+
+        @Override
+        public StripedCounter create() {
+            if (!labelled) {
+                throw new IllegalStateException("StripedCounter requires at least one label");
+            }
+            return new StripedCounter(this);
+        }
+    }
+
+    static Builder build() {
+        return new Builder();
+    }
+
+    private StripedCounter(Builder builder) {
+        super(builder);
+        this.reuseDelayMillis = builder.reuseDelayMillis;
+    }
+
+    private static int stripes() {
+        // CPU 수 이상인 2의 거듭제곱, 최대 16
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int stripes = cpus <= 1 ? 1 : Integer.highestOneBit(cpus - 1) << 1;
+        return Math.min(stripes, 16);
+    }
+
+    /**
+     * child 생성과 children 등록을 한 락 안에서 해 putIfAbsent 경쟁에서 진 child 의 id 가 새지 않게 한다
+     * (이미 있는 조합은 락 없이 반환)
+     */
+    @Override
+    public Counter.Child labels(String... labelValues) {
+        if (labelValues != null) {
+            Counter.Child child = children.get(Arrays.asList(labelValues));
+            if (child != null) return child;
+        }
+        synchronized (this) {
+            return super.labels(labelValues);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String... labelValues) {
+        Counter.Child child = children.remove(Arrays.asList(labelValues));
+        if (child instanceof StripedChild striped) {
+            freeSlots.add(new FreeSlot(striped.id, System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        long now = System.currentTimeMillis();
+        for (Counter.Child child : children.values()) {
+            if (child instanceof StripedChild striped) {
+                freeSlots.add(new FreeSlot(striped.id, now));
+            }
+        }
+        children.clear();
+    }
+
+    /**
+     * 제거했던 child 를 다시 붙이면 free list 에서 그 id 를 빼 새 라벨 조합이 같은 칸을 받지 않게 하고,
+     * 그 라벨 조합에서 밀려난 child 의 id 는 free list 에 넣는다.
+     * free list 에 없는 id (다른 라벨 조합이 쓰는 중이거나 이미 재사용된 id) 의 child 는 칸을 나눠 쓰게 되므로 거부한다.
+     */
+    @Override
+    public synchronized <T extends Collector> T setChild(Counter.Child child, String... labelValues) {
+        List<String> key = Arrays.asList(labelValues);
+        Counter.Child previous = children.get(key);
+        if (previous == child) return super.setChild(child, labelValues);
+        if (child instanceof StripedChild striped && !freeSlots.removeIf(free -> free.id() == striped.id)) {
+            throw new IllegalArgumentException("Slot " + striped.id + " of the child is in use by another label tuple");
+        }
+        T self = super.setChild(child, labelValues);
+        if (previous instanceof StripedChild striped) {
+            freeSlots.add(new FreeSlot(striped.id, System.currentTimeMillis()));
+        }
+        return self;
+    }
+
+    /**
+     * 새 라벨 조합에 재사용 가능한 id 또는 다음 id 를 붙이고 필요하면 chunk 추가 (증가 경로가 아닌 child 생성 시에만 호출)
+     */
+    @Override
+    protected synchronized Counter.Child newChild() {
+        FreeSlot free = freeSlots.peek();
+        if (free != null && System.currentTimeMillis() - free.freedAt() >= reuseDelayMillis) {
+            freeSlots.poll();
+            AtomicLongArray cells = chunks[free.id() >>> CHUNK_BITS];
+            int offset = free.id() & (CHUNK_SIZE - 1);
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                cells.set(stripe * STRIDE + offset, 0);
+            }
+            return new StripedChild(cells, free.id());
+        }
+        int id = nextId++;
+        int chunk = id >>> CHUNK_BITS;
+        AtomicLongArray[] current = chunks;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, chunk + 1);
+            current[chunk] = new AtomicLongArray(STRIPES * STRIDE);
+            chunks = current;
+        }
+        return new StripedChild(current[chunk], id);
+    }
+
+    /**
+     * @return 지금까지 할당한 id 수 (재사용한 id 는 다시 세지 않음)
+     */
+    synchronized int allocatedSlots() {
+        return nextId;
+    }
+
+    private static final class StripedChild extends Counter.Child {
+        private final AtomicLongArray cells;
+        private final int id;
+        private final int offset;
+        private final long created = System.currentTimeMillis();
+
+        StripedChild(AtomicLongArray cells, int id) {
+            this.cells = cells;
+            this.id = id;
+            this.offset = id & (CHUNK_SIZE - 1);
+        }
+
+        @Override
+        public void inc() {
+            cells.getAndIncrement(stripe() * STRIDE + offset);
+        }
+
+        @Override
+        public void inc(double amount) {
+            if (amount < 0) {
+                throw new IllegalArgumentException("Amount to increment must be non-negative.");
+            }
+            cells.getAndAdd(stripe() * STRIDE + offset, Math.round(amount));
+        }
+
+        @Override
+        public void incWithExemplar(String... exemplarLabels) {
+            inc();
+        }
+
+        @Override
+        public void incWithExemplar(Map<String, String> exemplarLabels) {
+            inc();
+        }
+
+        @Override
+        public void incWithExemplar(double amount, String... exemplarLabels) {
+            inc(amount);
+        }
+
+        @Override
+        public void incWithExemplar(double amount, Map<String, String> exemplarLabels) {
+            inc(amount);
+        }
+
+        @Override
+        public double get() {
+            long sum = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                sum += cells.get(stripe * STRIDE + offset);
+            }
+            return sum;
+        }
+
+        @Override
+        public long created() {
+            return created;
+        }
+    }
+
+    private static int stripe() {
+        long h = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (STRIPES - 1);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<>(children.size() * 2);
+        for (Map.Entry<List<String>, Counter.Child> entry : children.entrySet()) {
+            Counter.Child child = entry.getValue();
+            samples.add(new MetricFamilySamples.Sample(fullname + "_total", labelNames, entry.getKey(), child.get()));
+            samples.add(new MetricFamilySamples.Sample(fullname + "_created", labelNames, entry.getKey(),
+                    child.created() / 1000.0));
+        }
+        return familySamplesList(Type.COUNTER, samples);
+    }
+
+    @Override
+    public List<MetricFamilySamples> describe() {
+        return List.of(new MetricFamilySamples(fullname, unit, Type.COUNTER, help,
+                List.<MetricFamilySamples.Sample>of()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AuthFlowCorrelatorTest {
+
+    @Test
+    void expireCountsFlowsPastTtlAsOrphans() {
+        Counter orphaned = Counter.build().name("test_orphaned_total").help("test").create();
+        AuthFlowCorrelator correlator = new AuthFlowCorrelator(1024, 60, orphaned);
+
+        correlator.start(AuthFlowCorrelator.key("old"), 0L);
+        correlator.start(AuthFlowCorrelator.key("recent"), 50_000L);
+
+        assertEquals(1, correlator.expire(61_000L));
+        assertEquals(1.0, orphaned.get());
+
+        // 이미 치운 흐름은 다시 집계하지 않고, 남은 흐름은 그대로 짝지어짐
+        assertEquals(0, correlator.expire(61_000L));
+        assertEquals(-1, correlator.complete(AuthFlowCorrelator.key("old"), 61_000L));
+        assertEquals(50_000L, correlator.complete(AuthFlowCorrelator.key("recent"), 61_000L));
+        assertEquals(1.0, orphaned.get());
+    }
+}
@@ -0,0 +1,100 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Counter;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CardinalityLimiterTest {
+
+    private static final int LIMIT = 5;
+
+    @Test
+    void churnDoesNotGrowSeriesPastLimit() {
+        LabelChildCache<Counter.Child> counter = limitedCounter();
+
+        for (int round = 0; round < 200; round++) {
+            // 매 라운드 새 값이 이전 값들보다 많이 들어와 추적 대상이 계속 교체됨
+            for (int i = 0; i < round + 2; i++) {
+                counter.labels("realm", "client-" + round).inc();
+            }
+        }
+
+        // 추적 중인 LIMIT 개 + other
+        assertTrue(counter.size() <= LIMIT + 1, "series: " + counter.size());
+        assertEquals(counter.size(), exportedClients(counter).size());
+    }
+
+    @Test
+    void evictedValueSeriesIsRemoved() {
+        LabelChildCache<Counter.Child> counter = limitedCounter();
+        for (int i = 0; i < LIMIT; i++) {
+            counter.labels("realm", "client-" + i).inc();
+        }
+        assertTrue(exportedClients(counter).contains("client-0"));
+
+        for (int i = 0; i < 10; i++) {
+            counter.labels("realm", "heavy").inc();
+        }
+
+        Set<String> clients = exportedClients(counter);
+        assertTrue(clients.contains("heavy"));
+        assertEquals(LIMIT, clients.stream().filter(c -> !c.equals(CardinalityLimiter.OTHER)).count());
+        assertFalse(clients.containsAll(Set.of("client-0", "client-1", "client-2", "client-3", "client-4")));
+    }
+
+    @Test
+    void lookupDuringValueRemovalNeverKeepsRemovedChild() throws InterruptedException {
+        // collector.remove 가 느려 제거와 조회가 겹치는 구간이 넓어진 counter
+        LabelChildCache<Counter.Child> counter = new LabelChildCache<>(SlowRemoveCounter.build()
+                .name("test_logins").help("test").labelNames("realm", "client_id").removeDelayMillis(5).create());
+        for (int round = 0; round < 20; round++) {
+            counter.labels("realm", "client").inc();
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                while (running.get()) {
+                    counter.labels("realm", "client").inc();
+                }
+            });
+            writer.start();
+            // 제한기가 값을 밀어낼 때와 같은 경로
+            counter.removeLabelValue(1, "client");
+            running.set(false);
+            writer.join();
+
+            // 트리에 남은 child 는 collector 에 등록된 바로 그 child 여야 한다 (아니면 이후 증가분이 scrape 되지 않음)
+            Counter.Child child = counter.labels("realm", "client");
+            assertSame(counter.collector().labels("realm", "client"), child, "round " + round);
+        }
+    }
+
+    private static LabelChildCache<Counter.Child> limitedCounter() {
+        LabelChildCache<Counter.Child> counter = new LabelChildCache<>(Counter.build()
+                .name("test_logins_total")
+                .help("test")
+                .labelNames("realm", "client_id")
+                .create());
+        counter.limitCardinality(1, new CardinalityLimiter("test_logins_total", "client_id", LIMIT));
+        return counter;
+    }
+
+    private static Set<String> exportedClients(LabelChildCache<Counter.Child> counter) {
+        Set<String> clients = new HashSet<>();
+        for (MetricFamilySamples family : counter.collector().collect()) {
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (sample.name.endsWith("_total")) {
+                    clients.add(sample.labelValues.get(1));
+                }
+            }
+        }
+        return clients;
+    }
+}
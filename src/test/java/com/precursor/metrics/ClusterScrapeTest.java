@@ -0,0 +1,175 @@
+package com.precursor.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 로컬 HttpServer 들을 다른 Keycloak 노드 대역으로 두고 클러스터 scrape 의 합산을 확인
+ */
+class ClusterScrapeTest {
+
+    // TextFormat.write004 형식 (_created 는 별도 gauge family), _max 는 TYPE 줄 없는 샘플
+    private static final String PEER_A = """
+            # HELP keycloak_logins_total Total successful logins
+            # TYPE keycloak_logins_total counter
+            keycloak_logins_total{realm="test",provider="keycloak",client_id="account",} 3.0
+            # HELP keycloak_request_duration Request duration
+            # TYPE keycloak_request_duration histogram
+            keycloak_request_duration_bucket{realm="test",le="0.1",} 1.0
+            keycloak_request_duration_bucket{realm="test",le="+Inf",} 2.0
+            keycloak_request_duration_count{realm="test",} 2.0
+            keycloak_request_duration_sum{realm="test",} 0.3
+            keycloak_request_duration_max{realm="test",} 0.2
+            # HELP keycloak_logins_created Total successful logins
+            # TYPE keycloak_logins_created gauge
+            keycloak_logins_created{realm="test",provider="keycloak",client_id="account",} 2.0E9
+            # HELP keycloak_request_duration_created Request duration
+            # TYPE keycloak_request_duration_created gauge
+            keycloak_request_duration_created{realm="test",} 1.5E9
+            """;
+
+    private static final String PEER_B = """
+            # HELP keycloak_logins_total Total successful logins
+            # TYPE keycloak_logins_total counter
+            keycloak_logins_total{realm="test",provider="keycloak",client_id="account",} 5.0
+            # HELP keycloak_request_duration Request duration
+            # TYPE keycloak_request_duration histogram
+            keycloak_request_duration_bucket{realm="test",le="0.1",} 2.0
+            keycloak_request_duration_bucket{realm="test",le="+Inf",} 4.0
+            keycloak_request_duration_count{realm="test",} 4.0
+            keycloak_request_duration_sum{realm="test",} 0.5
+            keycloak_request_duration_max{realm="test",} 0.4
+            # HELP keycloak_logins_created Total successful logins
+            # TYPE keycloak_logins_created gauge
+            keycloak_logins_created{realm="test",provider="keycloak",client_id="account",} 1.0E9
+            # HELP keycloak_request_duration_created Request duration
+            # TYPE keycloak_request_duration_created gauge
+            keycloak_request_duration_created{realm="test",} 1.8E9
+            """;
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> paths = new ArrayList<>();
+    private final List<String> authorizations = new ArrayList<>();
+    private PrometheusExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        exporter = new PrometheusExporter(new CollectorRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        servers.forEach(server -> server.stop(0));
+        handlers.shutdownNow();
+        exporter.close();
+    }
+
+    private URI peer(String body, long delayMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            synchronized (paths) {
+                paths.add(exchange.getRequestURI().getPath());
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            }
+            try {
+                if (delayMillis > 0) release.await(delayMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        // 느린 peer 가 dispatcher 스레드를 잡지 않도록 별도 executor 에서 처리
+        server.setExecutor(handlers);
+        server.start();
+        servers.add(server);
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @Test
+    void mergesPeersAndReportsTimedOutPeer() throws Exception {
+        URI a = peer(PEER_A, 0);
+        URI b = peer(PEER_B, 0);
+        URI slow = peer(PEER_A, 5_000);
+        exporter.recordLogin("test", "keycloak", "account");
+
+        ClusterScrape scrape = new ClusterScrape(exporter, new StaticPeerDiscovery(List.of(a, b, slow)), 500);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        scrape.write(out, "test", "Bearer caller-token");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        scrape.close();
+        String text = out.toString(StandardCharsets.UTF_8);
+
+        synchronized (paths) {
+            assertEquals(List.of("/realms/test/metrics"), paths.stream().distinct().toList());
+            // 호출자의 토큰을 peer 에 그대로 전달
+            assertEquals(List.of("Bearer caller-token"), authorizations.stream().distinct().toList());
+        }
+        assertTrue(elapsedMillis < 2_000, "elapsed: " + elapsedMillis + "ms");
+
+        // counter: 로컬 1 + peer 3 + 5, 끝 쉼표 유무와 상관없이 같은 시리즈
+        assertTrue(text.contains(
+                "keycloak_logins_total{realm=\"test\",provider=\"keycloak\",client_id=\"account\"} 9.0\n"), text);
+        // _created 는 가장 이른 값
+        assertTrue(text.contains(
+                "keycloak_logins_created{realm=\"test\",provider=\"keycloak\",client_id=\"account\"} 1.0E9\n"), text);
+
+        // histogram 은 bucket / count / sum 모두 더하고 _created 는 최솟값
+        assertTrue(text.contains("keycloak_request_duration_bucket{realm=\"test\",le=\"0.1\"} 3.0\n"), text);
+        assertTrue(text.contains("keycloak_request_duration_bucket{realm=\"test\",le=\"+Inf\"} 6.0\n"), text);
+        assertTrue(text.contains("keycloak_request_duration_count{realm=\"test\"} 6.0\n"), text);
+        assertTrue(text.contains("keycloak_request_duration_sum{realm=\"test\"} 0.8\n"), text);
+        assertTrue(text.contains("keycloak_request_duration_created{realm=\"test\"} 1.5E9\n"), text);
+
+        // 제한 시간 안에 답하지 않은 peer 는 합치지 않고 peer_up 0
+        assertTrue(text.contains("keycloak_metrics_cluster_peer_up{peer=\"" + a + "\"} 1.0\n"), text);
+        assertTrue(text.contains("keycloak_metrics_cluster_peer_up{peer=\"" + b + "\"} 1.0\n"), text);
+        assertTrue(text.contains("keycloak_metrics_cluster_peer_up{peer=\"" + slow + "\"} 0.0\n"), text);
+    }
+
+    @Test
+    void sampleWithoutTypeLineIsNotFoldedIntoPrefixFamily() throws IOException {
+        ExpositionMerger merger = new ExpositionMerger();
+        merger.write(PEER_A);
+        merger.flush();
+        merger.write(PEER_B);
+        merger.flush();
+        StringWriter out = new StringWriter();
+        merger.writeTo(out);
+        String text = out.toString();
+
+        // keycloak_request_duration 으로 시작하지만 histogram 의 접미사가 아니므로 별도 untyped family (먼저 들어온 값 유지)
+        assertTrue(text.contains("# TYPE keycloak_request_duration_max untyped\n"), text);
+        assertTrue(text.contains("keycloak_request_duration_max{realm=\"test\"} 0.2\n"), text);
+        assertTrue(text.contains("keycloak_request_duration_count{realm=\"test\"} 6.0\n"), text);
+        assertTrue(text.contains(
+                "keycloak_logins_total{realm=\"test\",provider=\"keycloak\",client_id=\"account\"} 8.0\n"), text);
+    }
+}
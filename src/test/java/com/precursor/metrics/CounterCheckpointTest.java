@@ -0,0 +1,92 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CounterCheckpointTest {
+
+    private static final int CLIENTS = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoreKeepsHighestCountClientsRegardlessOfFileOrder() throws Exception {
+        Path file = directory.resolve("counters.bin");
+
+        PrometheusExporter before = new PrometheusExporter(new CollectorRegistry());
+        before.configureCardinalityLimits(100, 100);
+        double total = 0;
+        for (int i = 0; i < CLIENTS; i++) {
+            for (int n = 0; n < (i + 1) * 10; n++) {
+                before.recordLogin("demo", "keycloak", "client-" + i);
+                total++;
+            }
+        }
+        CounterCheckpoint writer = new CounterCheckpoint(file, 1 << 16, 3600, before);
+        writer.start();
+        writer.close();
+
+        // 제한을 줄여 재시작하면 값이 큰 client 가 남고 나머지는 other 로 합쳐진다
+        PrometheusExporter after = new PrometheusExporter(new CollectorRegistry());
+        after.configureCardinalityLimits(3, 100);
+        CounterCheckpoint reader = new CounterCheckpoint(file, 1 << 16, 3600, after);
+        reader.start();
+        reader.close();
+
+        Map<String, Double> logins = loginsByClient(after);
+        assertEquals(Map.of("client-9", 100.0, "client-8", 90.0, "client-7", 80.0,
+                CardinalityLimiter.OTHER, total - 270.0), logins);
+
+        // 복원된 client 는 이후 이벤트도 자기 시리즈로 기록된다
+        after.recordLogin("demo", "keycloak", "client-7");
+        assertEquals(81.0, loginsByClient(after).get("client-7"));
+    }
+
+    @Test
+    void closeReleasesFileMapping() throws Exception {
+        Path maps = Path.of("/proc/self/maps");
+        assumeTrue(Files.isReadable(maps), "needs /proc/self/maps");
+        Path file = directory.resolve("counters.bin");
+
+        // 팩토리 재초기화처럼 같은 파일로 여러 번 열고 닫아도 매핑이 남지 않는다
+        for (int i = 0; i < 3; i++) {
+            PrometheusExporter exporter = new PrometheusExporter(new CollectorRegistry());
+            exporter.recordLogin("demo", "keycloak", "account");
+            CounterCheckpoint checkpoint = new CounterCheckpoint(file, 1 << 16, 3600, exporter);
+            checkpoint.start();
+            assertTrue(Files.readString(maps).contains(file.toString()));
+            checkpoint.close();
+            assertFalse(Files.readString(maps).contains(file.toString()));
+            exporter.close();
+        }
+    }
+
+    private static Map<String, Double> loginsByClient(PrometheusExporter exporter) {
+        Map<String, Double> logins = new HashMap<>();
+        Enumeration<MetricFamilySamples> families = exporter.metricFamilySamples();
+        while (families.hasMoreElements()) {
+            MetricFamilySamples family = families.nextElement();
+            if (!family.name.equals("keycloak_logins")) continue;
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (sample.name.equals("keycloak_logins_total")) {
+                    logins.merge(sample.labelValues.get(2), sample.value, Double::sum);
+                }
+            }
+        }
+        return logins;
+    }
+}
@@ -0,0 +1,71 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventTapTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rotatesPreviousRunFileOnStart() throws IOException {
+        Path current = directory.resolve("events.ndjson");
+        Files.writeString(current, "{\"previous\":true}\n");
+
+        EventTap tap = newTap(3);
+        tap.start();
+        tap.offer(event("realm-a"));
+        tap.close();
+
+        // 이전 실행의 기록은 .1 로 밀려나고 현재 파일에는 새 이벤트만 남는다
+        assertEquals("{\"previous\":true}\n", Files.readString(directory.resolve("events.ndjson.1")));
+        List<String> lines = Files.readAllLines(current, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"realmId\":\"realm-a\""), lines.get(0));
+    }
+
+    @Test
+    void appendsWhenPreviousFileCannotBeRotated() throws IOException {
+        Path current = directory.resolve("events.ndjson");
+        Files.writeString(current, "{\"previous\":true}\n");
+        // .1 자리가 비어 있지 않은 디렉터리면 move 가 실패한다
+        Files.createDirectories(directory.resolve("events.ndjson.1").resolve("blocked"));
+
+        EventTap tap = newTap(1);
+        tap.start();
+        tap.offer(event("realm-b"));
+        tap.close();
+
+        List<String> lines = Files.readAllLines(current, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertEquals("{\"previous\":true}", lines.get(0));
+        assertTrue(lines.get(1).contains("\"realmId\":\"realm-b\""), lines.get(1));
+    }
+
+    private EventTap newTap(int maxFiles) {
+        PrometheusExporter exporter = new PrometheusExporter(new CollectorRegistry());
+        return new EventTap(directory, EventTap.Format.NDJSON, 1024 * 1024, maxFiles, 16,
+                new EventTapSampler(1.0, null, 0), exporter);
+    }
+
+    private static Event event(String realmId) {
+        Event event = new Event();
+        event.setTime(System.currentTimeMillis());
+        event.setType(EventType.LOGIN);
+        event.setRealmId(realmId);
+        return event;
+    }
+}
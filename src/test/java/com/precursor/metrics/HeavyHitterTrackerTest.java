@@ -0,0 +1,52 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyHitterTrackerTest {
+
+    @Test
+    void decaysOnReadByElapsedIntervals() throws InterruptedException {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(5, 1);
+        for (int i = 0; i < 64; i++) {
+            tracker.record("10.0.0.1");
+        }
+        assertEquals(List.of(new HeavyHitterTracker.Entry("10.0.0.1", 64)), tracker.snapshot());
+
+        // 기록 없이 2 주기 이상 지나면 조회만으로 두 번 이상 절반이 된다
+        Thread.sleep(2100);
+        List<HeavyHitterTracker.Entry> entries = tracker.snapshot();
+        assertEquals(1, entries.size());
+        assertTrue(entries.get(0).count() <= 16, "count: " + entries.get(0).count());
+    }
+
+    @Test
+    void scrapeExposesOnlyAggregatesOfFailedLoginSources() throws IOException {
+        PrometheusExporter exporter = new PrometheusExporter(new CollectorRegistry());
+        for (int i = 0; i < 5; i++) {
+            exporter.recordLoginError("demo", "keycloak", "account", "invalid_user_credentials", "203.0.113.7", "alice");
+        }
+        exporter.recordLoginError("demo", "keycloak", "account", "invalid_user_credentials", "198.51.100.2", "hunter2");
+
+        StringWriter out = new StringWriter();
+        TextFormat.write004(out, exporter.metricFamilySamples());
+        String text = out.toString();
+
+        // IP / username 은 scrape 에 나오지 않고 /metrics/offenders 에서만 조회
+        assertFalse(text.contains("203.0.113.7"), text);
+        assertFalse(text.contains("hunter2"), text);
+        assertTrue(text.contains("keycloak_failed_login_max_source_failures{realm=\"demo\",kind=\"ip\",} 5.0"), text);
+        assertTrue(text.contains("keycloak_failed_login_top_k_failures{realm=\"demo\",kind=\"username\",} 6.0"), text);
+        assertEquals(2, exporter.topFailedLoginIpAddresses("demo").size());
+        exporter.close();
+    }
+}
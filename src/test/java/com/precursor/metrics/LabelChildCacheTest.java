@@ -0,0 +1,71 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LabelChildCacheTest {
+
+    @AfterEach
+    void resetClock() {
+        LabelChildCache.advanceClock(System.currentTimeMillis() / 1000);
+    }
+
+    @Test
+    void evictsOnlyIdleChildren() {
+        LabelChildCache<Counter.Child> counter = new LabelChildCache<>(Counter.build()
+                .name("test_logins_total").help("test").labelNames("realm", "client_id").create());
+        long now = System.currentTimeMillis() / 1000;
+        LabelChildCache.advanceClock(now);
+        counter.labels("realm", "idle").inc();
+        counter.labels("realm", "busy").inc();
+
+        LabelChildCache.advanceClock(now + 120);
+        counter.labels("realm", "busy").inc();
+        assertEquals(1, counter.evictIdle(60));
+        assertEquals(1, counter.size());
+        assertEquals(2.0, counter.collector().labels("realm", "busy").get());
+        assertEquals(0.0, counter.collector().labels("realm", "idle").get());
+    }
+
+    @Test
+    void lookupDuringIdleEvictionNeverKeepsRemovedChild() throws InterruptedException {
+        // collector.remove 가 느려 제거와 조회가 겹치는 구간이 넓어진 counter
+        LabelChildCache<Counter.Child> counter = new LabelChildCache<>(SlowRemoveCounter.build()
+                .name("test_logins").help("test").labelNames("realm", "client_id").removeDelayMillis(5).create());
+        long now = System.currentTimeMillis() / 1000;
+        for (int round = 0; round < 20; round++) {
+            LabelChildCache.advanceClock(now);
+            counter.labels("realm", "client").inc();
+            LabelChildCache.advanceClock(now + 120);
+
+            long startDelayMillis = round % 4;
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                try {
+                    // 제거가 시작된 뒤 (collector.remove 도중) 조회가 들어오도록 잠시 늦춤
+                    Thread.sleep(startDelayMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    counter.labels("realm", "client").inc();
+                }
+            });
+            writer.start();
+            counter.evictIdle(60);
+            running.set(false);
+            writer.join();
+
+            // 트리에 남은 child 는 collector 에 등록된 바로 그 child 여야 한다 (아니면 이후 증가분이 scrape 되지 않음)
+            Counter.Child child = counter.labels("realm", "client");
+            assertSame(counter.collector().labels("realm", "client"), child, "round " + round);
+            now += 240;
+        }
+    }
+}
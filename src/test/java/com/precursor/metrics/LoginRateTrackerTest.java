@@ -0,0 +1,24 @@
+package com.precursor.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoginRateTrackerTest {
+
+    @Test
+    void overflowClientsFoldIntoOther() {
+        LoginRateTracker tracker = new LoginRateTracker("demo", 2, 600);
+        tracker.record("a", false);
+        tracker.record("b", true);
+        for (int i = 0; i < 1000; i++) {
+            tracker.record("client-" + i, i % 2 == 0);
+        }
+
+        assertEquals(1000.0 / 60, tracker.attemptRate(CardinalityLimiter.OTHER, 60), 1e-9);
+        assertEquals(500.0 / 60, tracker.failureRate(CardinalityLimiter.OTHER, 60), 1e-9);
+        assertEquals(1.0 / 60, tracker.attemptRate("a", 60), 1e-9);
+        assertEquals(1002.0 / 60, tracker.attemptRate(null, 60), 1e-9);
+        assertEquals(0.0, tracker.attemptRate("client-0", 60));
+    }
+}
@@ -0,0 +1,39 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.KeycloakSession;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MetricsEventListenerProviderTest {
+
+    @Test
+    void ignoresEventsWithoutPublishedExporter() {
+        // 종료된 exporter 는 공개가 해제된다
+        PrometheusExporter exporter = new PrometheusExporter(new CollectorRegistry());
+        exporter.publish();
+        exporter.close();
+        assertNull(PrometheusExporter.instance());
+
+        // exporter 가 없으면 session 도 건드리지 않는다
+        MetricsEventListenerProvider provider = new MetricsEventListenerProvider((KeycloakSession) null);
+
+        Event event = new Event();
+        event.setType(EventType.LOGIN);
+        event.setRealmId("demo");
+        AdminEvent adminEvent = new AdminEvent();
+        adminEvent.setOperationType(OperationType.DELETE);
+        adminEvent.setResourceType(ResourceType.REALM);
+        adminEvent.setRealmId("demo");
+
+        assertDoesNotThrow(() -> provider.onEvent(event));
+        assertDoesNotThrow(() -> provider.onEvent(adminEvent, false));
+    }
+}
@@ -0,0 +1,265 @@
+package com.precursor.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 로컬 HttpServer 를 OTLP/HTTP receiver 대역으로 두고, 받은 protobuf 본문을 직접 풀어 확인
+ */
+class OtlpPusherTest {
+
+    private HttpServer server;
+    private final List<byte[]> received = new CopyOnWriteArrayList<>();
+    private final AtomicInteger status = new AtomicInteger(200);
+    private PrometheusExporter exporter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/metrics", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                received.add(in.readAllBytes());
+            }
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        exporter = new PrometheusExporter(new CollectorRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        exporter.close();
+    }
+
+    private OtlpPusher pusher(int maxBufferedBatches) {
+        return new OtlpPusher(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/metrics"),
+                60_000, maxBufferedBatches,
+                new OtlpMetricsEncoder(OtlpMetricsEncoder.Temporality.DELTA, Map.of("service.name", "keycloak")),
+                exporter);
+    }
+
+    @Test
+    void encodesDeltaAndCumulativePoints() {
+        CollectorRegistry registry = new CollectorRegistry();
+        Counter logins = Counter.build().name("test_logins_total").help("logins")
+                .labelNames("realm").register(registry);
+        Histogram duration = Histogram.build().name("test_duration_seconds").help("duration")
+                .labelNames("realm").buckets(0.1, 1.0).register(registry);
+        OtlpMetricsEncoder delta = new OtlpMetricsEncoder(OtlpMetricsEncoder.Temporality.DELTA, Map.of());
+        OtlpMetricsEncoder cumulative = new OtlpMetricsEncoder(OtlpMetricsEncoder.Temporality.CUMULATIVE, Map.of());
+
+        logins.labels("demo").inc(3);
+        duration.labels("demo").observe(0.05);
+        duration.labels("demo").observe(0.5);
+        duration.labels("demo").observe(5);
+        assertPoints(metrics(delta.encode(registry.metricFamilySamples())), 1, 3, new long[]{1, 1, 1}, 3);
+        assertPoints(metrics(cumulative.encode(registry.metricFamilySamples())), 2, 3, new long[]{1, 1, 1}, 3);
+
+        // delta 는 직전 인코딩 이후 증가분, cumulative 는 누적값
+        logins.labels("demo").inc(2);
+        duration.labels("demo").observe(0.05);
+        assertPoints(metrics(delta.encode(registry.metricFamilySamples())), 1, 2, new long[]{1, 0, 0}, 1);
+        assertPoints(metrics(cumulative.encode(registry.metricFamilySamples())), 2, 5, new long[]{2, 1, 1}, 4);
+
+        // 바뀐 시리즈가 없으면 delta 는 보낼 것이 없음
+        assertNull(delta.encode(registry.metricFamilySamples()));
+    }
+
+    private static void assertPoints(Map<String, Message> metrics, long temporality, double logins,
+                                     long[] buckets, long count) {
+        Message sum = metrics.get("test_logins").message(7);
+        assertNotNull(sum, "sum: " + metrics.keySet());
+        assertEquals(temporality, sum.varint(2));
+        assertEquals(1, sum.varint(3), "is_monotonic");
+        Message point = sum.message(1);
+        assertEquals(logins, point.double64(4));
+        Message attribute = point.message(7);
+        assertEquals("realm", attribute.string(1));
+        assertEquals("demo", attribute.message(2).string(1));
+
+        Message histogram = metrics.get("test_duration_seconds").message(9);
+        assertNotNull(histogram, "histogram: " + metrics.keySet());
+        assertEquals(temporality, histogram.varint(2));
+        Message histogramPoint = histogram.message(1);
+        assertEquals(count, histogramPoint.fixed64(4));
+        assertArrayEquals(buckets, histogramPoint.packedFixed64(6));
+        // +Inf 는 explicit_bounds 에 넣지 않음
+        assertArrayEquals(new long[]{Double.doubleToLongBits(0.1), Double.doubleToLongBits(1.0)},
+                histogramPoint.packedFixed64(7));
+    }
+
+    @Test
+    void retriesBufferedBatchAfterServiceUnavailable() {
+        OtlpPusher pusher = pusher(4);
+        exporter.recordLogin("demo", "keycloak", "account");
+
+        status.set(503);
+        assertFalse(pusher.export());
+        assertEquals(1, pusher.bufferedBatches());
+        assertEquals(1, received.size());
+        Message resourceMetrics = Message.parse(received.get(0)).message(1);
+        Message resourceAttribute = resourceMetrics.message(1).message(1);
+        assertEquals("service.name", resourceAttribute.string(1));
+        assertEquals("keycloak", resourceAttribute.message(2).string(1));
+        assertEquals(1.0, metrics(received.get(0)).get("keycloak_logins").message(7).message(1).double64(4));
+
+        // 같은 batch 를 그대로 다시 보낸 뒤 이번 주기 batch 를 보냄
+        status.set(200);
+        assertTrue(pusher.export());
+        assertEquals(0, pusher.bufferedBatches());
+        assertTrue(received.size() >= 2, "requests: " + received.size());
+        assertArrayEquals(received.get(0), received.get(1));
+        assertEquals(1.0, exporter.registry().getSampleValue("keycloak_metrics_otlp_export_failures_total"));
+        assertEquals(0.0, exporter.registry().getSampleValue("keycloak_metrics_otlp_dropped_batches_total"));
+    }
+
+    @Test
+    void dropsBatchRejectedAsBadRequest() {
+        OtlpPusher pusher = pusher(4);
+        exporter.recordLogin("demo", "keycloak", "account");
+
+        status.set(400);
+        assertTrue(pusher.export());
+        assertEquals(0, pusher.bufferedBatches());
+        assertEquals(1, received.size());
+        assertEquals(1.0, exporter.registry().getSampleValue("keycloak_metrics_otlp_dropped_batches_total"));
+    }
+
+    @Test
+    void dropsOldestBatchWhenBufferIsFull() {
+        OtlpPusher pusher = pusher(2);
+        status.set(503);
+        for (int i = 0; i < 3; i++) {
+            exporter.recordLogin("demo", "keycloak", "account");
+            assertFalse(pusher.export());
+        }
+        assertEquals(2, pusher.bufferedBatches());
+        assertEquals(1.0, exporter.registry().getSampleValue("keycloak_metrics_otlp_dropped_batches_total"));
+
+        // 이번 주기 batch 를 넣느라 두 번째 batch 도 밀려나고, 세 번째 batch 부터 오래된 순으로 보냄
+        received.clear();
+        status.set(200);
+        assertTrue(pusher.export());
+        assertEquals(2, received.size());
+        assertEquals(1.0, metrics(received.get(0)).get("keycloak_logins").message(7).message(1).double64(4));
+        assertFalse(metrics(received.get(1)).containsKey("keycloak_logins"));
+        assertEquals(2.0, exporter.registry().getSampleValue("keycloak_metrics_otlp_dropped_batches_total"));
+    }
+
+    /**
+     * ExportMetricsServiceRequest -> 이름별 Metric
+     */
+    private static Map<String, Message> metrics(byte[] request) {
+        assertNotNull(request);
+        Map<String, Message> metrics = new HashMap<>();
+        Message scopeMetrics = Message.parse(request).message(1).message(2);
+        assertEquals("com.precursor.metrics", scopeMetrics.message(1).string(1));
+        for (Message metric : scopeMetrics.messages(2)) {
+            metrics.put(metric.string(1), metric);
+        }
+        return metrics;
+    }
+
+    /**
+     * 확인에 필요한 만큼만 푸는 protobuf reader (varint, fixed64, length-delimited)
+     */
+    private record Message(Map<Integer, List<Object>> fields) {
+
+        static Message parse(byte[] bytes) {
+            Map<Integer, List<Object>> fields = new HashMap<>();
+            ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (in.hasRemaining()) {
+                long tag = readVarint(in);
+                int field = (int) (tag >>> 3);
+                Object value = switch ((int) (tag & 7)) {
+                    case 0 -> readVarint(in);
+                    case 1 -> in.getLong();
+                    case 2 -> {
+                        byte[] body = new byte[(int) readVarint(in)];
+                        in.get(body);
+                        yield body;
+                    }
+                    default -> throw new IllegalStateException("Unexpected wire type in tag " + tag);
+                };
+                fields.computeIfAbsent(field, key -> new ArrayList<>()).add(value);
+            }
+            return new Message(fields);
+        }
+
+        private static long readVarint(ByteBuffer in) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+
+        private Object first(int field) {
+            List<Object> values = fields.get(field);
+            return values == null ? null : values.get(0);
+        }
+
+        Message message(int field) {
+            Object value = first(field);
+            return value == null ? null : parse((byte[]) value);
+        }
+
+        List<Message> messages(int field) {
+            return fields.getOrDefault(field, List.of()).stream().map(value -> parse((byte[]) value)).toList();
+        }
+
+        String string(int field) {
+            return new String((byte[]) first(field), StandardCharsets.UTF_8);
+        }
+
+        long varint(int field) {
+            return (long) first(field);
+        }
+
+        long fixed64(int field) {
+            return (long) first(field);
+        }
+
+        double double64(int field) {
+            return Double.longBitsToDouble(fixed64(field));
+        }
+
+        long[] packedFixed64(int field) {
+            ByteBuffer in = ByteBuffer.wrap((byte[]) first(field)).order(ByteOrder.LITTLE_ENDIAN);
+            long[] values = new long[in.remaining() / 8];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.getLong();
+            }
+            return values;
+        }
+    }
+}
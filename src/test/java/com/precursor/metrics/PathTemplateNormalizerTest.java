@@ -0,0 +1,36 @@
+package com.precursor.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class PathTemplateNormalizerTest {
+
+    private static final int MAX_TEMPLATES = 512;
+
+    @Test
+    void collapsesStaticResourcePaths() {
+        assertEquals("/resources/{path}", PathTemplateNormalizer.toTemplate("/resources/x9k2p/login/keycloak.v2/css/login.css"));
+        assertEquals("/js/{path}", PathTemplateNormalizer.toTemplate("/js/keycloak.js"));
+        assertEquals("/welcome-content/{path}", PathTemplateNormalizer.toTemplate("/welcome-content/keycloak-logo.png"));
+        assertEquals("/realms/{realm}/clients/{id}/roles",
+                PathTemplateNormalizer.toTemplate("/realms/demo/clients/6f1c2d3e-1111-2222-3333-444455556666/roles"));
+    }
+
+    @Test
+    void themeAssetsDoNotFillTemplateCap() {
+        PathTemplateNormalizer normalizer = new PathTemplateNormalizer(10_000, MAX_TEMPLATES);
+        // 테마 / 버전 / 파일마다 다른 정적 자원 경로가 먼저 많이 들어와도 템플릿은 하나
+        for (int i = 0; i < 2_000; i++) {
+            normalizer.normalize("/resources/v" + (i % 7) + "/login/theme-" + (i % 13) + "/img/asset-" + i + ".png");
+        }
+
+        // 남은 자리는 API 경로가 쓰고, 상한을 넘는 새 템플릿부터 other 로 접힘
+        for (int i = 1; i < MAX_TEMPLATES; i++) {
+            assertNotEquals("other", normalizer.normalize("/realms/demo/endpoint-" + i), "endpoint " + i);
+        }
+        assertEquals("other", normalizer.normalize("/realms/demo/endpoint-overflow"));
+        assertEquals("/resources/{path}", normalizer.normalize("/resources/v9/common/keycloak/favicon.ico"));
+    }
+}
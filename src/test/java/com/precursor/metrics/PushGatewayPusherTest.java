@@ -0,0 +1,163 @@
+package com.precursor.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 로컬 HttpServer 를 Pushgateway 대역으로 두고 push 요청을 확인
+ */
+class PushGatewayPusherTest {
+
+    private record Push(String method, String path, String body, long nanos) {}
+
+    private HttpServer server;
+    private final List<Push> pushes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger status = new AtomicInteger(200);
+    private PrometheusExporter exporter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                pushes.add(new Push(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                        new String(in.readAllBytes(), StandardCharsets.UTF_8), System.nanoTime()));
+            }
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        exporter = new PrometheusExporter(new CollectorRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        exporter.close();
+    }
+
+    private PushGatewayPusher pusher(long intervalMillis, long maxBackoffMillis) throws IOException {
+        return new PushGatewayPusher(URI.create("http://127.0.0.1:" + server.getAddress().getPort()).toURL(),
+                "keycloak", Map.of("instance", "node-1"), intervalMillis, maxBackoffMillis, exporter);
+    }
+
+    @Test
+    void pushesAllFamiliesInOnePutPerInterval() throws Exception {
+        PushGatewayPusher pusher = pusher(200, 200);
+        pusher.start();
+        long end = System.nanoTime() + 1_100_000_000L;
+        while (System.nanoTime() < end) {
+            exporter.recordLogin("demo", "keycloak", "account");
+            Thread.sleep(5);
+        }
+        pusher.close();
+
+        // 200ms 주기로 1.1초: 예약된 push 4~5 번 + close 시 마지막 push
+        assertTrue(pushes.size() >= 4 && pushes.size() <= 7, "pushes: " + pushes.size());
+        for (int i = 0; i < pushes.size(); i++) {
+            Push push = pushes.get(i);
+            assertEquals("PUT", push.method());
+            assertEquals("/metrics/job/keycloak/instance/node-1", push.path());
+            assertTrue(push.body().contains("keycloak_logins_total{realm=\"demo\""));
+            assertTrue(push.body().contains("keycloak_metrics_push_failures_total"));
+            if (i > 0 && i < pushes.size() - 1) {
+                long gapMillis = (push.nanos() - pushes.get(i - 1).nanos()) / 1_000_000;
+                assertTrue(gapMillis >= 150, "gap: " + gapMillis + "ms");
+            }
+        }
+    }
+
+    @Test
+    void skipsPushWhenNothingChanged() throws Exception {
+        PushGatewayPusher pusher = pusher(60_000, 60_000);
+        exporter.recordLogin("demo", "keycloak", "account");
+
+        assertTrue(pusher.pushIfChanged());
+        assertFalse(pusher.pushIfChanged());
+        assertEquals(1, pushes.size());
+
+        exporter.recordLogin("demo", "keycloak", "account");
+        assertTrue(pusher.pushIfChanged());
+        assertEquals(2, pushes.size());
+    }
+
+    @Test
+    void ignoresClockDrivenFamiliesWhenComparing() throws Exception {
+        PushGatewayPusher pusher = pusher(60_000, 60_000);
+        exporter.recordLogin("demo", "keycloak", "account");
+        exporter.updateSessionStats("demo", new SessionStats.Snapshot(Map.of("account", 1L), Map.of(), 1, 1_000_000));
+
+        assertTrue(pusher.pushIfChanged());
+        assertTrue(pushes.get(0).body().contains(
+                "keycloak_session_stats_last_refresh_timestamp_seconds{realm=\"demo\",} 1000.0"));
+
+        // 갱신 시각만 바뀐 세션 통계는 push 사유가 아니다
+        exporter.updateSessionStats("demo", new SessionStats.Snapshot(Map.of("account", 1L), Map.of(), 1, 2_000_000));
+        assertFalse(pusher.pushIfChanged());
+
+        exporter.updateSessionStats("demo", new SessionStats.Snapshot(Map.of("account", 2L), Map.of(), 1, 3_000_000));
+        assertTrue(pusher.pushIfChanged());
+        assertEquals(2, pushes.size());
+    }
+
+    @Test
+    void backsOffExponentiallyOnServerErrors() throws Exception {
+        PushGatewayPusher pusher = pusher(100, 400);
+        // interval * 2^(n-1) 을 maxBackoff 로 자른 값의 [절반, 전체]
+        long[] ceilings = {100, 200, 400, 400, 400};
+        for (int failures = 1; failures <= ceilings.length; failures++) {
+            long delay = pusher.backoffMillis(failures);
+            long ceiling = ceilings[failures - 1];
+            assertTrue(delay >= ceiling / 2 && delay <= ceiling, failures + " failures: " + delay + "ms");
+        }
+
+        status.set(503);
+        exporter.recordLogin("demo", "keycloak", "account");
+        assertThrows(IOException.class, pusher::pushIfChanged);
+
+        pusher.start();
+        long end = System.nanoTime() + 1_500_000_000L;
+        while (pushes.size() < 5 && System.nanoTime() < end) {
+            Thread.sleep(10);
+        }
+        pusher.close();
+
+        // 실패한 push 는 fingerprint 를 남기지 않아 같은 값이어도 다시 시도하며, 간격은 backoff 하한 이상
+        assertTrue(pushes.size() >= 4, "pushes: " + pushes.size());
+        long[] minGaps = {100, 50, 100, 200};
+        for (int i = 1; i < Math.min(pushes.size() - 1, minGaps.length + 1); i++) {
+            long gapMillis = (pushes.get(i).nanos() - pushes.get(i - 1).nanos()) / 1_000_000;
+            assertTrue(gapMillis >= minGaps[i - 1] - 10, "gap " + i + ": " + gapMillis + "ms");
+        }
+        assertTrue(exporter.registry().getSampleValue("keycloak_metrics_push_failures_total") >= 3);
+    }
+
+    @Test
+    void pushesOnceMoreOnClose() throws Exception {
+        PushGatewayPusher pusher = pusher(3_600_000, 3_600_000);
+        pusher.start();
+        exporter.recordLogin("demo", "keycloak", "account");
+        pusher.close();
+
+        assertEquals(1, pushes.size());
+        assertTrue(pushes.get(0).body().contains("keycloak_logins_total{realm=\"demo\",provider=\"keycloak\",client_id=\"account\",} 1.0"));
+    }
+}
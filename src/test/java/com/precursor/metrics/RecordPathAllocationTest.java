@@ -0,0 +1,61 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.EventType;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 워밍업 이후 반복되는 (realm, provider, client_id, error) 조합의 이벤트 기록이 할당 없이 끝나는지 확인
+ */
+class RecordPathAllocationTest {
+
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURED_ITERATIONS = 1_000_000;
+    // ThreadMXBean 조회 자체나 드문 JIT 재컴파일로 생기는 약간의 할당은 허용 (이벤트당 0.01 byte 미만)
+    private static final long ALLOWED_BYTES = MEASURED_ITERATIONS / 100;
+
+    private static final String[] CLIENTS = {"account", "admin-cli", "web-app", "mobile-app"};
+    private static final String[] ERRORS = {"invalid_user_credentials", "user_not_found"};
+
+    @Test
+    void steadyStateRecordPathDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        Assumptions.assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported(),
+                "thread allocation accounting not available");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        PrometheusExporter exporter = new PrometheusExporter(new CollectorRegistry());
+        record(exporter, WARMUP_ITERATIONS);
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        record(exporter, MEASURED_ITERATIONS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < ALLOWED_BYTES,
+                () -> allocated + " bytes allocated over " + MEASURED_ITERATIONS + " events");
+    }
+
+    private static void record(PrometheusExporter exporter, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            String client = CLIENTS[i & 3];
+            switch (i % 3) {
+                case 0 -> exporter.recordEvent(EventType.LOGIN, "bench", "keycloak", client, "unknown",
+                        0L, 0L, null, null);
+                case 1 -> exporter.recordEvent(EventType.LOGIN_ERROR, "bench", "keycloak", client, ERRORS[i & 1],
+                        0L, 0L, null, null);
+                default -> exporter.recordEvent(EventType.LOGOUT, "bench", "keycloak", client, "unknown",
+                        0L, 0L, null, null);
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads ? threads : null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.SimpleCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * remove 가 실제로 지우기 전에 잠시 멈추는 테스트용 counter
+ * 시리즈 제거와 동시에 들어온 조회가 제거 도중의 child 를 붙잡는 경쟁을 재현할 때 사용한다.
+ */
+final class SlowRemoveCounter extends SimpleCollector<Counter.Child> {
+
+    private final long removeDelayMillis;
+
+    static final class Builder extends SimpleCollector.Builder<Builder, SlowRemoveCounter> {
+        private long removeDelayMillis;
+
+        Builder removeDelayMillis(long removeDelayMillis) {
+            this.removeDelayMillis = removeDelayMillis;
+            return this;
+        }
+
+        @Override
+        public SlowRemoveCounter create() {
+            return new SlowRemoveCounter(this);
+        }
+    }
+
+    static Builder build() {
+        return new Builder();
+    }
+
+    private SlowRemoveCounter(Builder builder) {
+        super(builder);
+        this.removeDelayMillis = builder.removeDelayMillis;
+    }
+
+    @Override
+    protected Counter.Child newChild() {
+        return new Counter.Child();
+    }
+
+    @Override
+    public void remove(String... labelValues) {
+        try {
+            Thread.sleep(removeDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        super.remove(labelValues);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<>(children.size());
+        for (Map.Entry<List<String>, Counter.Child> entry : children.entrySet()) {
+            samples.add(new MetricFamilySamples.Sample(fullname + "_total", labelNames, entry.getKey(),
+                    entry.getValue().get()));
+        }
+        return familySamplesList(Type.COUNTER, samples);
+    }
+}
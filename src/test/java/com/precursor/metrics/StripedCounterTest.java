@@ -0,0 +1,71 @@
+package com.precursor.metrics;
+
+import io.prometheus.client.Counter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StripedCounterTest {
+
+    @Test
+    void reusesSlotsOfRemovedLabelTuples() {
+        StripedCounter counter = StripedCounter.build().name("test_requests_total").help("test")
+                .labelNames("path").reuseDelayMillis(0).create();
+        for (int i = 0; i < 1000; i++) {
+            Counter.Child child = counter.labels("/path/" + i);
+            child.inc(3);
+            assertEquals(3.0, child.get());
+            counter.remove("/path/" + i);
+        }
+        // 돌아가며 생겼다 지워진 라벨 조합이 같은 id 하나를 계속 다시 쓴다 (재사용 시 값은 0 부터)
+        assertEquals(1, counter.allocatedSlots());
+
+        counter.labels("a").inc();
+        counter.labels("b").inc();
+        counter.clear();
+        counter.labels("c");
+        counter.labels("d");
+        assertEquals(2, counter.allocatedSlots());
+        assertEquals(0.0, counter.labels("c").get());
+    }
+
+    @Test
+    void keepsRemovedSlotsUntilReuseDelayPasses() {
+        StripedCounter counter = StripedCounter.build().name("test_logins_total").help("test")
+                .labelNames("realm").create();
+        counter.labels("a").inc();
+        counter.remove("a");
+        // 제거 직후에는 아직 잡고 있는 스레드가 있을 수 있어 새 id 를 붙인다
+        counter.labels("b").inc();
+        assertEquals(2, counter.allocatedSlots());
+        assertEquals(1.0, counter.labels("b").get());
+    }
+
+    @Test
+    void reattachedChildKeepsItsSlot() {
+        StripedCounter counter = StripedCounter.build().name("test_requests_total").help("test")
+                .labelNames("path").reuseDelayMillis(0).create();
+        Counter.Child a = counter.labels("/a");
+        a.inc(3);
+        counter.remove("/a");
+        counter.setChild(a, "/a");
+
+        // 다시 붙인 child 의 id 는 free list 에서 빠져 새 라벨 조합이 같은 칸을 받지 않는다
+        counter.labels("/b").inc();
+        assertEquals(2, counter.allocatedSlots());
+        assertSame(a, counter.labels("/a"));
+        assertEquals(3.0, counter.labels("/a").get());
+        assertEquals(1.0, counter.labels("/b").get());
+
+        // 이미 다른 라벨 조합이 쓰는 칸의 child 는 받지 않는다
+        assertThrows(IllegalArgumentException.class, () -> counter.setChild(a, "/c"));
+
+        // 밀려난 child 의 id 는 다시 쓰인다
+        counter.setChild(new Counter.Child(), "/b");
+        counter.labels("/d");
+        assertEquals(2, counter.allocatedSlots());
+        assertEquals(0.0, counter.labels("/d").get());
+    }
+}